@@ -0,0 +1,60 @@
+package org.example.benchmarks;
+
+import org.example.IDExtractor;
+import org.example.NativeScope;
+import org.example.RowBasedAnswerExtractor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Answer extraction from the answer section and ID extraction from the page.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractionBenchmark {
+
+    private final RowBasedAnswerExtractor rowExtractor = new RowBasedAnswerExtractor();
+    private final RowBasedAnswerExtractor contourExtractor = new RowBasedAnswerExtractor();
+    private final IDExtractor idExtractor = new IDExtractor();
+
+    @Setup
+    public void setUp() {
+        contourExtractor.setUseTemplate(false);
+    }
+
+    /**
+     * Row boxes placed from the layout's row template.
+     */
+    @Benchmark
+    public int rowBasedExtract(SheetImages images) {
+        try (NativeScope scope = new NativeScope()) {
+            int detected = rowExtractor.extract(images.answerBinary).detectedCount;
+            rowExtractor.reset();
+            return detected;
+        }
+    }
+
+    /**
+     * Row boxes found by contour detection, the path taken when the template does not fit.
+     */
+    @Benchmark
+    public int rowBasedExtractContours(SheetImages images) {
+        try (NativeScope scope = new NativeScope()) {
+            int detected = contourExtractor.extract(images.answerBinary).detectedCount;
+            contourExtractor.reset();
+            return detected;
+        }
+    }
+
+    @Benchmark
+    public boolean idExtract(SheetImages images) {
+        try (NativeScope scope = new NativeScope()) {
+            return idExtractor.extract(images.gray).success;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package org.example.benchmarks;
+
+import org.example.FiducialDetector;
+import org.example.NativeScope;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Page (L-shaped) and answer section (square) fiducial detection.
+ * Each call runs in a {@link NativeScope}, as it does in the processor.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FiducialBenchmark {
+
+    private final FiducialDetector detector = new FiducialDetector();
+
+    @Benchmark
+    public int detectLShapedFiducials(SheetImages images) {
+        try (NativeScope scope = new NativeScope()) {
+            return detector.detectLShapedFiducials(images.binary).size();
+        }
+    }
+
+    @Benchmark
+    public int detectLShapedFiducialsInCorners(SheetImages images) {
+        try (NativeScope scope = new NativeScope()) {
+            return detector.detectLShapedFiducialsInCorners(images.gray).size();
+        }
+    }
+
+    @Benchmark
+    public int detectRectFiducials(SheetImages images) {
+        try (NativeScope scope = new NativeScope()) {
+            return detector.detectRectFiducials(images.binary).size();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package org.example.benchmarks;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.example.ImagePreprocessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ImagePreprocessor} operations on a full sheet.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PreprocessorBenchmark {
+
+    private final ImagePreprocessor preprocessor = new ImagePreprocessor();
+
+    @Benchmark
+    public int toGrayscale(SheetImages images) {
+        try (Mat out = preprocessor.toGrayscale(images.sheet)) {
+            return out.rows();
+        }
+    }
+
+    @Benchmark
+    public int gaussianBlur(SheetImages images) {
+        try (Mat out = preprocessor.applyGaussianBlur(images.gray, 5)) {
+            return out.rows();
+        }
+    }
+
+    @Benchmark
+    public int adaptiveThreshold(SheetImages images) {
+        try (Mat out = preprocessor.applyAdaptiveThreshold(images.blurred, 15, 4)) {
+            return out.rows();
+        }
+    }
+
+    @Benchmark
+    public int otsuThreshold(SheetImages images) {
+        try (Mat out = preprocessor.applyOtsuThreshold(images.blurred)) {
+            return out.rows();
+        }
+    }
+}
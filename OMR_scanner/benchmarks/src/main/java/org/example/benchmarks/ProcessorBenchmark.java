@@ -0,0 +1,47 @@
+package org.example.benchmarks;
+
+import org.example.OMRSheetProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@link OMRSheetProcessor#process} on a decoded sheet.
+ * Besides throughput, reports the native memory the processor allocated and
+ * left for its scopes to free (bytes per second, from {@link NativeMemory}).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessorBenchmark {
+
+    private final OMRSheetProcessor processor = new OMRSheetProcessor();
+
+    /**
+     * Native allocation counters, reported by JMH as rates.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class NativeMemory {
+        public long nativeBytesAllocated;
+        public long nativeBytesLeaked;
+
+        @Setup(Level.Iteration)
+        public void clear() {
+            nativeBytesAllocated = 0;
+            nativeBytesLeaked = 0;
+        }
+    }
+
+    @Benchmark
+    public boolean process(SheetImages images, NativeMemory memory) {
+        OMRSheetProcessor.ProcessResult result = processor.process(images.sheet, "benchmark");
+        processor.reset();
+        memory.nativeBytesAllocated += result.nativeBytesAllocated;
+        memory.nativeBytesLeaked += result.nativeBytesLeaked;
+        return result.success;
+    }
+}
@@ -0,0 +1,21 @@
+package org.example.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Discards the diagnostic console output of the processing code.
+ *
+ * The detectors and extractors print progress for every sheet; in a benchmark
+ * that output would flood the JMH log and time the terminal instead of the code.
+ * JMH reports through its own channel, so its output is not affected.
+ */
+final class QuietConsole {
+
+    private QuietConsole() {
+    }
+
+    static void install() {
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.benchmarks;
+
+import org.example.model.AnswerKey;
+import org.example.model.OMRResult;
+import org.example.model.Scan;
+import org.example.service.DatabaseService;
+import org.example.service.ScanService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Grading a 60-question result and saving it to a temporary SQLite database.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanBenchmark {
+
+    private static final String CHOICES = "ABCD";
+
+    private Path tempDir;
+    private ScanService scanService;
+    private OMRResult result;
+    private AnswerKey answerKey;
+    private Scan gradedScan;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        QuietConsole.install();
+        tempDir = Files.createTempDirectory("omr-bench");
+        if (!DatabaseService.getInstance().initialize(tempDir.resolve("bench.db").toString())) {
+            throw new IllegalStateException("Could not create benchmark database in " + tempDir);
+        }
+        scanService = new ScanService();
+
+        // Key ABCDABCD...; detected answers agree on three questions out of four
+        StringBuilder key = new StringBuilder();
+        List<String> answers = new ArrayList<>();
+        List<Double> confidences = new ArrayList<>();
+        List<OMRResult.AnswerStatus> statuses = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            key.append(CHOICES.charAt(i % 4));
+            answers.add(String.valueOf(CHOICES.charAt(i % 4 == 3 ? 0 : i % 4)));
+            confidences.add(0.95);
+            statuses.add(OMRResult.AnswerStatus.VALID);
+        }
+        answerKey = new AnswerKey("Benchmark", "0001");
+        answerKey.parseAnswerString(key.toString());
+
+        result = new OMRResult(true, null);
+        result.setAnswers(answers);
+        result.setConfidenceScores(confidences);
+        result.setAnswerStatuses(statuses);
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("stageTimings", Map.of("decode", 10.0, "rowExtraction", 20.0));
+        result.setMetadata(metadata);
+
+        gradedScan = grade();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DatabaseService.getInstance().close();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Scan populateFromResult() {
+        return grade();
+    }
+
+    @Benchmark
+    public long save() throws SQLException {
+        gradedScan.setId(null);
+        return scanService.save(gradedScan).getId();
+    }
+
+    private Scan grade() {
+        Scan scan = new Scan();
+        scan.setImagePath("benchmark.png");
+        scan.populateFromResult(result, answerKey);
+        return scan;
+    }
+}
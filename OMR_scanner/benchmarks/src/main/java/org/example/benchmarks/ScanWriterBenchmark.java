@@ -0,0 +1,97 @@
+package org.example.benchmarks;
+
+import org.example.model.AnswerKey;
+import org.example.model.OMRResult;
+import org.example.model.Scan;
+import org.example.service.DatabaseService;
+import org.example.service.ScanService;
+import org.example.service.ScanWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Saving graded 60-question scans through {@link ScanWriter} at different group sizes.
+ * Group size 1 is one transaction per scan, like {@link ScanService#save}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScanWriterBenchmark {
+
+    private static final int SCANS_PER_INVOCATION = 128;
+    private static final String CHOICES = "ABCD";
+
+    @Param({"1", "8", "32", "128"})
+    public int groupSize;
+
+    private Path tempDir;
+    private ScanWriter writer;
+    private OMRResult result;
+    private AnswerKey answerKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        QuietConsole.install();
+        tempDir = Files.createTempDirectory("omr-bench");
+        if (!DatabaseService.getInstance().initialize(tempDir.resolve("bench.db").toString())) {
+            throw new IllegalStateException("Could not create benchmark database in " + tempDir);
+        }
+
+        StringBuilder key = new StringBuilder();
+        List<String> answers = new ArrayList<>();
+        List<Double> confidences = new ArrayList<>();
+        List<OMRResult.AnswerStatus> statuses = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            key.append(CHOICES.charAt(i % 4));
+            answers.add(String.valueOf(CHOICES.charAt(i % 4 == 3 ? 0 : i % 4)));
+            confidences.add(0.95);
+            statuses.add(OMRResult.AnswerStatus.VALID);
+        }
+        answerKey = new AnswerKey("Benchmark", "0001");
+        answerKey.parseAnswerString(key.toString());
+
+        result = new OMRResult(true, null);
+        result.setAnswers(answers);
+        result.setConfidenceScores(confidences);
+        result.setAnswerStatuses(statuses);
+
+        // Groups are closed by size (or the flush at the end), not by time
+        writer = new ScanWriter(new ScanService(), groupSize, 1000);
+        writer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        writer.close();
+        DatabaseService.getInstance().close();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SCANS_PER_INVOCATION)
+    public long save() throws Exception {
+        CompletableFuture<Scan> last = null;
+        for (int i = 0; i < SCANS_PER_INVOCATION; i++) {
+            Scan scan = new Scan();
+            scan.setImagePath("benchmark.png");
+            scan.populateFromResult(result, answerKey);
+            last = writer.submit(scan);
+        }
+        writer.flush();
+        return last.get().getId();
+    }
+}
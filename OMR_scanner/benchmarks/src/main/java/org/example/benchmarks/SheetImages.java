@@ -0,0 +1,73 @@
+package org.example.benchmarks;
+
+import org.bytedeco.opencv.opencv_core.*;
+import org.example.FiducialDetector;
+import org.example.ImagePreprocessor;
+import org.example.OMRSheetProcessorPool;
+import org.openjdk.jmh.annotations.*;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Benchmark input: a synthetic OMR sheet and its preprocessed images,
+ * rendered at a few fixed resolutions.
+ */
+@State(Scope.Benchmark)
+public class SheetImages {
+
+    /** Sheet width in pixels: the processing size, A4 at 200 dpi and A4 at 300 dpi. */
+    @Param({"1000", "1654", "2480"})
+    public int width;
+
+    public Mat sheet;          // BGR sheet
+    public Mat gray;           // Grayscale sheet
+    public Mat blurred;        // Gaussian blur (5x5) of the grayscale sheet
+    public Mat binary;         // Inverted adaptive threshold, as used for fiducial detection
+    public Mat answerBinary;   // Inverted Otsu threshold of the answer section
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        QuietConsole.install();
+        ImagePreprocessor preprocessor = new ImagePreprocessor();
+
+        Mat template = OMRSheetProcessorPool.createWarmUpSheet();
+        int height = Math.round(width * template.rows() / (float) template.cols());
+        sheet = new Mat();
+        resize(template, sheet, new Size(width, height), 0, 0, INTER_LINEAR);
+        template.release();
+
+        gray = preprocessor.toGrayscale(sheet);
+        blurred = preprocessor.applyGaussianBlur(gray, 5);
+        binary = preprocessor.applyAdaptiveThreshold(blurred, 15, 4);
+
+        // Cut out the answer section the same way the processor does
+        Rect answerRect = findAnswerSection(width, height);
+        Mat answerGray = gray.apply(answerRect).clone();
+        Mat answerBlurred = preprocessor.applyGaussianBlur(answerGray, 3);
+        answerBinary = preprocessor.applyOtsuThreshold(answerBlurred);
+        answerGray.release();
+        answerBlurred.release();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sheet.release();
+        gray.release();
+        blurred.release();
+        binary.release();
+        answerBinary.release();
+    }
+
+    private Rect findAnswerSection(int width, int height) {
+        FiducialDetector detector = new FiducialDetector();
+        FiducialDetector.AnswerSectionCorners corners =
+            detector.getAnswerSectionCorners(detector.detectRectFiducials(binary), width, height);
+        if (corners != null && corners.isValid()) {
+            Rect r = corners.getBoundingRect();
+            int x = Math.max(0, r.x()), y = Math.max(0, r.y());
+            return new Rect(x, y, Math.min(width - x, r.width()), Math.min(height - y, r.height()));
+        }
+        // Answer section of the synthetic sheet, if the fiducials were not found
+        return new Rect(0, (int) (height * 0.33), width, (int) (height * 0.6));
+    }
+}
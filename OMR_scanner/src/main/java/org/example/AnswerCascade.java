@@ -0,0 +1,286 @@
+package org.example;
+
+import org.bytedeco.javacpp.indexer.UByteIndexer;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.Arrays;
+
+/**
+ * Decides the answer of every question in cost order: a cheap check over the
+ * whole sheet, then costlier checks only for the questions it leaves open.
+ *
+ * Stage 1 measures the core of each layout bubble inside the row boxes found
+ * by {@link RowBasedAnswerExtractor} on the binary section, four table reads
+ * per bubble. A question is final after stage 1 when every bubble is clearly
+ * empty or clearly filled and the row extractor does not read a different
+ * single answer. Anything else (a fill in the ambiguity band, a row that was
+ * not found, a disagreement) is escalated to stage 2, which searches small
+ * shifts of the row and measures how dark each bubble is on the grayscale
+ * section, relative to the paper and pencil levels of this sheet. Darkness
+ * tells an erased smudge from a mark, which the binary image cannot.
+ *
+ * Per bubble, the votes of the stages are fused into one score; bubbles
+ * scoring at least 0.5 are marked, giving a blank (null), a single answer or
+ * MULTIPLE. The confidence is 0.5 plus the distance of the closest bubble
+ * score to 0.5, so clear questions get 1.0 and ones that were hard to call
+ * fall below {@code OMRProcessor}'s 0.7 review threshold. So do all questions
+ * whose row was not found on the sheet.
+ */
+public class AnswerCascade {
+
+    private static final String MULTIPLE = "MULTIPLE";
+
+    // Stage 1: fill of the bubble core on the binary section
+    private static final double CORE = 0.5;             // Central part of the bubble box (avoids the outline)
+    private static final double MARKED = 0.5;           // Score at which a bubble counts as marked
+    private static final double AMBIGUOUS_LOW = 0.2;    // Fill band that stage 1 cannot decide
+    private static final double AMBIGUOUS_HIGH = 0.8;
+
+    // Stage 2: darkness on the grayscale section
+    private static final int SHIFT = 3;                 // Pixels to search around the row box
+    private static final int[][] SHIFTS = {
+        {0, 0}, {-SHIFT, 0}, {SHIFT, 0}, {0, -SHIFT}, {0, SHIFT},
+        {-SHIFT, -SHIFT}, {SHIFT, -SHIFT}, {-SHIFT, SHIFT}, {SHIFT, SHIFT}
+    };
+    private static final int LEVEL_SAMPLES = 16;        // Clear bubbles sampled for the paper and pencil levels
+    private static final double DEFAULT_PAPER = 240;
+    private static final double DEFAULT_PENCIL = 40;
+    private static final double FILL_WEIGHT = 1;
+    private static final double DARKNESS_WEIGHT = 2;
+    private static final double UNPLACED_CONFIDENCE = 0.5; // At most, for a row the extractor did not find
+
+    private int questionsRead = 0;
+    private int questionsEscalated = 0;
+
+    // Reused between sheets, so reading a sheet only allocates its Result
+    private double[] fills = new double[0];
+    private double[] scores = new double[0];
+    private double[] darkness = new double[0];
+    private double[] bestDarkness = new double[0];
+    private int[] pixels = new int[0];
+    private final int[] row = new int[4];
+    private final int[] bubble = new int[4];
+    private final double[] paperSamples = new double[LEVEL_SAMPLES];
+    private final double[] pencilSamples = new double[LEVEL_SAMPLES];
+    private double paperLevel;
+    private double pencilLevel;
+
+    public static class Result {
+        public String[] answers;
+        public double[] confidences;
+        public boolean[] escalated;     // Questions decided by stage 2
+        public int escalatedCount = 0;
+
+        public Result(int questions) {
+            answers = new String[questions];
+            confidences = new double[questions];
+            escalated = new boolean[questions];
+        }
+    }
+
+    /**
+     * Decide all questions of a sheet.
+     *
+     * @param rows Row boxes and readings from {@link RowBasedAnswerExtractor}
+     * @param sampler Loaded with the binary answer section (non-zero = marked)
+     * @param gray The grayscale answer section, same size as the binary one
+     */
+    public Result read(SamplingPlan plan, RowBasedAnswerExtractor.Result rows, BubbleSampler sampler, Mat gray) {
+        int questions = plan.getQuestionCount();
+        int choices = plan.getChoiceCount();
+        Result result = new Result(questions);
+        if (fills.length < questions * choices) fills = new double[questions * choices];
+        if (scores.length != choices) {
+            scores = new double[choices];
+            darkness = new double[choices];
+            bestDarkness = new double[choices];
+        }
+
+        // Stage 1: every question
+        for (int q = 0; q < questions; q++) {
+            placeRow(plan, rows, sampler, q);
+            boolean clear = rows.hasRow(q);
+            for (int choice = 0; choice < choices; choice++) {
+                double fill = coreFill(plan, sampler, choice, 0, 0);
+                fills[q * choices + choice] = fill;
+                scores[choice] = fill;
+                if (fill > AMBIGUOUS_LOW && fill < AMBIGUOUS_HIGH) clear = false;
+            }
+            decide(plan, scores, result, q);
+            if (clear && conflicts(result.answers[q], rows.answers[q])) clear = false;
+            result.escalated[q] = !clear;
+            if (!clear) result.escalatedCount++;
+        }
+        questionsRead += questions;
+        questionsEscalated += result.escalatedCount;
+        if (result.escalatedCount == 0) return result;
+
+        // Stage 2: only the escalated questions
+        try (UByteIndexer indexer = gray.createIndexer()) {
+            measureLevels(plan, rows, sampler, indexer, result);
+
+            for (int q = 0; q < questions; q++) {
+                if (!result.escalated[q]) continue;
+                placeRow(plan, rows, sampler, q);
+
+                // Keep the shift whose bubbles are most clearly dark or light;
+                // the unshifted row comes first, so it wins ties
+                int bestDx = 0, bestDy = 0;
+                double bestClarity = -1;
+                for (int[] shift : SHIFTS) {
+                    double clarity = 0;
+                    for (int choice = 0; choice < choices; choice++) {
+                        double mean = coreMean(plan, indexer, sampler, choice, shift[0], shift[1]);
+                        darkness[choice] = clamp((paperLevel - mean) / (paperLevel - pencilLevel));
+                        clarity += Math.abs(darkness[choice] - MARKED);
+                    }
+                    if (clarity > bestClarity) {
+                        bestClarity = clarity;
+                        bestDx = shift[0];
+                        bestDy = shift[1];
+                        System.arraycopy(darkness, 0, bestDarkness, 0, choices);
+                    }
+                }
+
+                for (int choice = 0; choice < choices; choice++) {
+                    double fill = coreFill(plan, sampler, choice, bestDx, bestDy);
+                    scores[choice] = (FILL_WEIGHT * fill + DARKNESS_WEIGHT * bestDarkness[choice])
+                        / (FILL_WEIGHT + DARKNESS_WEIGHT);
+                }
+                decide(plan, scores, result, q);
+                if (!rows.hasRow(q)) {
+                    // Read where the layout puts the row; send it to review
+                    result.confidences[q] = Math.min(result.confidences[q], UNPLACED_CONFIDENCE);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Questions read and questions escalated to stage 2 since the cascade was created.
+     */
+    public int getQuestionsRead() { return questionsRead; }
+    public int getQuestionsEscalated() { return questionsEscalated; }
+
+    // =========================================
+    // Private Helper Methods
+    // =========================================
+
+    /**
+     * Put the row box of a question in {@link #row}: the one found on the
+     * sheet, or the layout's position if the row was not found.
+     */
+    private void placeRow(SamplingPlan plan, RowBasedAnswerExtractor.Result rows, BubbleSampler sampler, int q) {
+        if (rows.hasRow(q)) {
+            System.arraycopy(rows.rowRects, q * 4, row, 0, 4);
+        } else {
+            plan.placeRow(q, sampler.getWidth(), sampler.getHeight(), row);
+        }
+    }
+
+    /**
+     * Put the core of a bubble of the current row, shifted by (dx, dy), in {@link #bubble}.
+     */
+    private void placeCore(SamplingPlan plan, int choice, int dx, int dy) {
+        plan.placeBubbleInRow(choice, row[0] + dx, row[1] + dy, row[2], row[3], bubble);
+        int w = Math.max(1, (int) Math.round(bubble[2] * CORE));
+        int h = Math.max(1, (int) Math.round(bubble[3] * CORE));
+        bubble[0] += (bubble[2] - w) / 2;
+        bubble[1] += (bubble[3] - h) / 2;
+        bubble[2] = w;
+        bubble[3] = h;
+    }
+
+    private double coreFill(SamplingPlan plan, BubbleSampler sampler, int choice, int dx, int dy) {
+        placeCore(plan, choice, dx, dy);
+        return sampler.fillRatio(bubble[0], bubble[1], bubble[2], bubble[3]);
+    }
+
+    /**
+     * Mean gray level of a bubble core, clipped to the section (white if outside).
+     */
+    private double coreMean(SamplingPlan plan, UByteIndexer indexer, BubbleSampler sampler,
+                            int choice, int dx, int dy) {
+        placeCore(plan, choice, dx, dy);
+        int x0 = Math.max(0, bubble[0]), y0 = Math.max(0, bubble[1]);
+        int x1 = Math.min(sampler.getWidth(), bubble[0] + bubble[2]);
+        int y1 = Math.min(sampler.getHeight(), bubble[1] + bubble[3]);
+        if (x1 <= x0 || y1 <= y0) return 255;
+        int width = x1 - x0;
+        if (pixels.length < width) pixels = new int[width];
+        long sum = 0;
+        for (int y = y0; y < y1; y++) {
+            indexer.get(y, x0, pixels, 0, width);
+            for (int x = 0; x < width; x++) {
+                sum += pixels[x];
+            }
+        }
+        return (double) sum / ((long) width * (y1 - y0));
+    }
+
+    /**
+     * Set the paper and pencil gray levels of this sheet, from the median core
+     * of bubbles stage 1 found clearly empty and clearly marked.
+     */
+    private void measureLevels(SamplingPlan plan, RowBasedAnswerExtractor.Result rows,
+                                   BubbleSampler sampler, UByteIndexer indexer, Result result) {
+        int choices = plan.getChoiceCount();
+        double[] paper = paperSamples;
+        double[] pencil = pencilSamples;
+        int paperCount = 0, pencilCount = 0;
+        for (int q = 0; q < result.answers.length; q++) {
+            if (paperCount == LEVEL_SAMPLES && pencilCount == LEVEL_SAMPLES) break;
+            if (result.escalated[q]) continue;
+            placeRow(plan, rows, sampler, q);
+            for (int choice = 0; choice < choices; choice++) {
+                boolean marked = fills[q * choices + choice] >= MARKED;
+                if (marked && pencilCount < LEVEL_SAMPLES) {
+                    pencil[pencilCount++] = coreMean(plan, indexer, sampler, choice, 0, 0);
+                } else if (!marked && paperCount < LEVEL_SAMPLES) {
+                    paper[paperCount++] = coreMean(plan, indexer, sampler, choice, 0, 0);
+                }
+            }
+        }
+        paperLevel = paperCount > 0 ? median(paper, paperCount) : DEFAULT_PAPER;
+        pencilLevel = pencilCount > 0 ? median(pencil, pencilCount) : DEFAULT_PENCIL;
+        if (paperLevel - pencilLevel < 50) {
+            // Too little contrast to trust; the levels of a normal scan are safer
+            paperLevel = DEFAULT_PAPER;
+            pencilLevel = DEFAULT_PENCIL;
+        }
+    }
+
+    /**
+     * Set the answer and confidence of a question from one score per bubble.
+     */
+    private static void decide(SamplingPlan plan, double[] scores, Result result, int q) {
+        int marked = 0, markedChoice = -1;
+        double closest = 0.5;
+        for (int choice = 0; choice < plan.getChoiceCount(); choice++) {
+            if (scores[choice] >= MARKED) {
+                marked++;
+                markedChoice = choice;
+            }
+            closest = Math.min(closest, Math.abs(scores[choice] - MARKED));
+        }
+        result.answers[q] = marked == 0 ? null : marked == 1 ? plan.getChoiceLabel(markedChoice) : MULTIPLE;
+        result.confidences[q] = 0.5 + closest;
+    }
+
+    /**
+     * Whether both readings name a single answer, but different ones.
+     */
+    private static boolean conflicts(String answer, String rowAnswer) {
+        return answer != null && rowAnswer != null && !MULTIPLE.equals(answer) && !answer.equals(rowAnswer);
+    }
+
+    private static double median(double[] values, int count) {
+        Arrays.sort(values, 0, count);
+        return values[count / 2];
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+}
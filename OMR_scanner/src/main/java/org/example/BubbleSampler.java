@@ -0,0 +1,92 @@
+package org.example;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Counts marked pixels in rectangles of a binary image in constant time.
+ *
+ * {@link #load} builds a summed-area table (integral image) of the non-zero
+ * pixels once per sheet; {@link #count} then answers any rectangle with four
+ * array reads. This replaces the ROI + countNonZero pattern in the answer
+ * extractors, which allocated a native Rect and Mat header per query, so the
+ * cost of trying more alignments or fallbacks no longer depends on the sample size.
+ *
+ * Loading reads each pixel once, a row at a time, straight from the Mat's
+ * native buffer. Queries never touch native memory. The table and row buffer
+ * are reused between sheets, so a sheet of the same size allocates nothing.
+ * A sampler must not be used by two threads at once; each pooled
+ * {@link OMRSheetProcessor} has its own.
+ */
+public final class BubbleSampler {
+
+    private int width;
+    private int height;
+    private int stride;
+    private int[] sums = new int[0];        // (height + 1) x (width + 1), first row and column zero
+    private byte[] rowPixels = new byte[0];
+
+    public BubbleSampler() {
+    }
+
+    public BubbleSampler(Mat binaryImage) {
+        load(binaryImage);
+    }
+
+    /**
+     * Build the table for a single-channel 8-bit image (non-zero = marked).
+     */
+    public void load(Mat binaryImage) {
+        width = binaryImage.cols();
+        height = binaryImage.rows();
+        stride = width + 1;
+        int size = stride * (height + 1);
+        if (sums.length < size) sums = new int[size];
+        if (rowPixels.length < width) rowPixels = new byte[width];
+        Arrays.fill(sums, 0, stride, 0);
+
+        // step() also covers padded rows and ROI views
+        long step = binaryImage.step();
+        ByteBuffer pixels = binaryImage.data().capacity(step * (height - 1) + width).asByteBuffer();
+        for (int y = 0; y < height; y++) {
+            pixels.get((int) (y * step), rowPixels, 0, width);
+            int above = y * stride;
+            int current = above + stride;
+            int rowCount = 0;
+            sums[current] = 0;
+            for (int x = 0; x < width; x++) {
+                int pixel = rowPixels[x];
+                rowCount += (pixel | -pixel) >>> 31;    // 1 for any non-zero pixel, without a branch
+                sums[current + x + 1] = sums[above + x + 1] + rowCount;
+            }
+        }
+    }
+
+    /**
+     * Number of marked pixels in a rectangle, clipped to the image.
+     * Equal to countNonZero on the same ROI when it lies inside the image.
+     */
+    public int count(int x, int y, int w, int h) {
+        int x0 = clamp(x, width), y0 = clamp(y, height);
+        int x1 = clamp(x + w, width), y1 = clamp(y + h, height);
+        if (x1 <= x0 || y1 <= y0) return 0;
+        return sums[y1 * stride + x1] - sums[y0 * stride + x1]
+             - sums[y1 * stride + x0] + sums[y0 * stride + x0];
+    }
+
+    /**
+     * Fraction of the rectangle's pixels that are marked.
+     */
+    public double fillRatio(int x, int y, int w, int h) {
+        return w > 0 && h > 0 ? (double) count(x, y, w, h) / ((long) w * h) : 0;
+    }
+
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+}
@@ -29,6 +29,20 @@ public class FiducialDetector {
     private double maxRectArea = 3000;
     private double lShapeAngleTolerance = 15; // degrees
 
+    // Pyramid (coarse-to-fine) detection
+    private int pyramidFactor = 8;                 // Max downscale factor (1 = always full scan)
+    private long pyramidMinPixels = 2_000_000;     // Only use the pyramid on images at least this large
+    private static final int PYRAMID_MIN_COARSE_SIDE = 200;   // Coarse image must stay at least this big
+    private static final double PYRAMID_MIN_COARSE_AREA = 16; // Smallest fiducial must stay >= ~4x4 px
+
+    // Corner-window L search (fraction of width/height searched at each corner)
+    private double cornerWindowRatio = 0.15;
+    private int cornerBlurSize = 5;
+    private int cornerBlockSize = 15;
+    private double cornerThresholdC = 4;
+    
+    private final ImagePreprocessor preprocessor = new ImagePreprocessor();
+
     /**
      * Represents an L-shaped fiducial marker.
      */
@@ -127,14 +141,96 @@ public class FiducialDetector {
      * 
      * L-shaped markers have a distinctive shape with two perpendicular arms
      * meeting at an inner corner.
+     * 
+     * Large images are searched coarse-to-fine: candidates are found on a
+     * downscaled copy and each one is re-detected at full resolution in a
+     * small window, so the corners are identical to a full scan. If fewer
+     * than four markers are found that way, the whole image is scanned.
      */
     public List<LShapedFiducial> detectLShapedFiducials(Mat binaryImage) {
+        List<LShapedFiducial> fiducials = null;
+        
+        int factor = choosePyramidFactor(binaryImage, minLShapeArea);
+        if (factor > 1) {
+            fiducials = new ArrayList<>();
+            for (Rect window : findCoarseCandidates(binaryImage, factor, minLShapeArea, maxLShapeArea)) {
+                fiducials.addAll(scanLShapedFiducials(binaryImage, window));
+            }
+            fiducials = removeDuplicateLShapes(fiducials);
+            if (fiducials.size() < 4) {
+                fiducials = null; // Fall back to the full scan
+            }
+        }
+        
+        if (fiducials == null) {
+            fiducials = scanLShapedFiducials(binaryImage, null);
+        }
+        
+        // Assign corner positions based on location
+        assignCornerPositions(fiducials, binaryImage.cols(), binaryImage.rows());
+        
+        return fiducials;
+    }
+
+    /**
+     * Detect L-shaped fiducials by thresholding and tracing contours only inside
+     * the four corner windows of the page (see {@link #setCornerWindowRatio}).
+     * 
+     * Callers should fall back to {@link #detectLShapedFiducials} on a binary
+     * of the whole page when the result does not give all four page corners.
+     * 
+     * @param grayImage Grayscale page image (not thresholded)
+     */
+    public List<LShapedFiducial> detectLShapedFiducialsInCorners(Mat grayImage) {
+        List<LShapedFiducial> fiducials = new ArrayList<>();
+        int width = grayImage.cols();
+        int height = grayImage.rows();
+        int windowWidth = (int) (width * cornerWindowRatio);
+        int windowHeight = (int) (height * cornerWindowRatio);
+        
+        Rect[] windows = {
+            new Rect(0, 0, windowWidth, windowHeight),
+            new Rect(width - windowWidth, 0, windowWidth, windowHeight),
+            new Rect(0, height - windowHeight, windowWidth, windowHeight),
+            new Rect(width - windowWidth, height - windowHeight, windowWidth, windowHeight)
+        };
+        
+        for (Rect window : windows) {
+            // Threshold just this corner (same parameters as the full-page pass)
+            Mat blurred = preprocessor.applyGaussianBlur(grayImage.apply(window), cornerBlurSize);
+            Mat binary = preprocessor.applyAdaptiveThreshold(blurred, cornerBlockSize, cornerThresholdC);
+            fiducials.addAll(scanLShapedFiducials(binary, window, width, height));
+            blurred.release();
+            binary.release();
+        }
+        
+        assignCornerPositions(fiducials, width, height);
+        return fiducials;
+    }
+
+    /**
+     * Find L-shaped markers by tracing contours over the whole image, or only
+     * inside {@code window} (results are in full-image coordinates).
+     */
+    private List<LShapedFiducial> scanLShapedFiducials(Mat binaryImage, Rect window) {
+        if (window == null) {
+            return scanLShapedFiducials(binaryImage, null, binaryImage.cols(), binaryImage.rows());
+        }
+        return scanLShapedFiducials(binaryImage.apply(window), window, binaryImage.cols(), binaryImage.rows());
+    }
+
+    /**
+     * Find L-shaped markers in {@code windowBinary}, which holds the binary
+     * content of {@code window} (or the whole image when window is null).
+     */
+    private List<LShapedFiducial> scanLShapedFiducials(Mat windowBinary, Rect window,
+                                                       int imageWidth, int imageHeight) {
         List<LShapedFiducial> fiducials = new ArrayList<>();
         
         // Find contours
         MatVector contours = new MatVector();
         Mat hierarchy = new Mat();
-        findContours(binaryImage.clone(), contours, hierarchy, RETR_EXTERNAL, CHAIN_APPROX_SIMPLE);
+        findContoursIn(windowBinary, window, contours, hierarchy);
         
         for (int i = 0; i < contours.size(); i++) {
             Mat contour = contours.get(i);
@@ -145,6 +241,11 @@ public class FiducialDetector {
                 continue;
             }
             
+            // Skip shapes cut off by the search window
+            if (window != null && isClippedByWindow(boundingRect(contour), window, imageWidth, imageHeight)) {
+                continue;
+            }
+            
             // Approximate to polygon
             Mat approx = new Mat();
             double peri = arcLength(contour, true);
@@ -154,7 +255,7 @@ public class FiducialDetector {
             // (outer corner, two arm ends, inner corner, two more points)
             int vertices = approx.rows();
             if (vertices >= 5 && vertices <= 8) {
-                LShapedFiducial fid = analyzeLShape(approx, binaryImage);
+                LShapedFiducial fid = analyzeLShape(approx, windowBinary);
                 if (fid != null) {
                     fiducials.add(fid);
                 }
@@ -164,10 +265,6 @@ public class FiducialDetector {
         }
         
         hierarchy.release();
-        
-        // Assign corner positions based on location
-        assignCornerPositions(fiducials, binaryImage.cols(), binaryImage.rows());
-        
         return fiducials;
     }
 
@@ -233,13 +330,34 @@ public class FiducialDetector {
 
     /**
      * Detect small rectangular fiducial markers for answer section isolation.
+     * Large images are searched coarse-to-fine, like {@link #detectLShapedFiducials}.
      */
     public List<RectFiducial> detectRectFiducials(Mat binaryImage) {
+        int factor = choosePyramidFactor(binaryImage, minRectArea);
+        if (factor > 1) {
+            List<RectFiducial> fiducials = new ArrayList<>();
+            for (Rect window : findCoarseCandidates(binaryImage, factor, minRectArea, maxRectArea)) {
+                fiducials.addAll(scanRectFiducials(binaryImage, window));
+            }
+            fiducials = removeDuplicateRects(fiducials);
+            if (fiducials.size() >= 4) {
+                return fiducials;
+            }
+            // Fall back to the full scan
+        }
+        
+        return scanRectFiducials(binaryImage, null);
+    }
+
+    /**
+     * Find rectangular markers over the whole image, or only inside {@code window}.
+     */
+    private List<RectFiducial> scanRectFiducials(Mat binaryImage, Rect window) {
         List<RectFiducial> fiducials = new ArrayList<>();
         
         MatVector contours = new MatVector();
         Mat hierarchy = new Mat();
-        findContours(binaryImage.clone(), contours, hierarchy, RETR_EXTERNAL, CHAIN_APPROX_SIMPLE);
+        findContoursIn(window != null ? binaryImage.apply(window) : binaryImage, window, contours, hierarchy);
         
         for (int i = 0; i < contours.size(); i++) {
             Mat contour = contours.get(i);
@@ -250,6 +368,12 @@ public class FiducialDetector {
                 continue;
             }
             
+            // Skip shapes cut off by the search window
+            if (window != null && isClippedByWindow(boundingRect(contour), window,
+                    binaryImage.cols(), binaryImage.rows())) {
+                continue;
+            }
+            
             // Approximate to polygon
             Mat approx = new Mat();
             double peri = arcLength(contour, true);
@@ -279,6 +403,128 @@ public class FiducialDetector {
         return fiducials;
     }
 
+    // =========================================
+    // Pyramid Helpers
+    // =========================================
+
+    /**
+     * Pick the downscale factor for a coarse search, or 1 for a full scan.
+     * The factor is clamped so that the coarse image and the smallest
+     * accepted marker stay large enough to be traced reliably.
+     */
+    private int choosePyramidFactor(Mat binaryImage, double minArea) {
+        if (pyramidFactor <= 1 || (long) binaryImage.cols() * binaryImage.rows() < pyramidMinPixels) {
+            return 1;
+        }
+        
+        int factor = pyramidFactor;
+        while (factor > 1) {
+            boolean bigEnough = Math.min(binaryImage.cols(), binaryImage.rows()) / factor >= PYRAMID_MIN_COARSE_SIDE;
+            boolean markersVisible = minArea / ((double) factor * factor) >= PYRAMID_MIN_COARSE_AREA;
+            if (bigEnough && markersVisible) break;
+            factor /= 2;
+        }
+        return factor;
+    }
+
+    /**
+     * Find candidate marker regions on a downscaled copy of the binary image.
+     * Area limits are scaled to the coarse level and loosened, since only the
+     * full-resolution pass decides what is a marker.
+     * 
+     * @return Full-resolution search windows around each candidate
+     */
+    private List<Rect> findCoarseCandidates(Mat binaryImage, int factor, double minArea, double maxArea) {
+        List<Rect> windows = new ArrayList<>();
+        
+        // Downscale (area averaging) and re-threshold
+        Mat coarse = new Mat();
+        resize(binaryImage, coarse, new Size(binaryImage.cols() / factor, binaryImage.rows() / factor),
+            0, 0, INTER_AREA);
+        threshold(coarse, coarse, 127, 255, THRESH_BINARY);
+        
+        MatVector contours = new MatVector();
+        Mat hierarchy = new Mat();
+        findContours(coarse, contours, hierarchy, RETR_EXTERNAL, CHAIN_APPROX_SIMPLE);
+        
+        double scale = (double) factor * factor;
+        double coarseMin = minArea / scale * 0.5;
+        double coarseMax = maxArea / scale * 1.5;
+        int margin = 2 * factor + 4;
+        
+        for (int i = 0; i < contours.size(); i++) {
+            Mat contour = contours.get(i);
+            double area = contourArea(contour);
+            if (area < coarseMin || area > coarseMax) continue;
+            
+            // Map the bounding box back to full resolution with a safety margin
+            Rect bbox = boundingRect(contour);
+            int x = Math.max(0, bbox.x() * factor - margin);
+            int y = Math.max(0, bbox.y() * factor - margin);
+            int x2 = Math.min(binaryImage.cols(), (bbox.x() + bbox.width()) * factor + margin);
+            int y2 = Math.min(binaryImage.rows(), (bbox.y() + bbox.height()) * factor + margin);
+            windows.add(new Rect(x, y, x2 - x, y2 - y));
+        }
+        
+        hierarchy.release();
+        contours.close();
+        coarse.release();
+        return windows;
+    }
+
+    /**
+     * Run findContours over {@code content}, the binary pixels of {@code window}
+     * (or of the whole image when window is null). Contours from a window are
+     * offset back into full-image coordinates.
+     */
+    private void findContoursIn(Mat content, Rect window, MatVector contours, Mat hierarchy) {
+        Mat copy = content.clone();
+        if (window == null) {
+            findContours(copy, contours, hierarchy, RETR_EXTERNAL, CHAIN_APPROX_SIMPLE);
+        } else {
+            findContours(copy, contours, hierarchy, RETR_EXTERNAL, CHAIN_APPROX_SIMPLE,
+                new Point(window.x(), window.y()));
+        }
+        copy.release();
+    }
+
+    /**
+     * Check whether a contour touches a window edge that is not also an image edge,
+     * i.e. whether the shape may continue outside the window.
+     */
+    private boolean isClippedByWindow(Rect bbox, Rect window, int imageWidth, int imageHeight) {
+        boolean left = bbox.x() <= window.x() && window.x() > 0;
+        boolean top = bbox.y() <= window.y() && window.y() > 0;
+        boolean right = bbox.x() + bbox.width() >= window.x() + window.width()
+            && window.x() + window.width() < imageWidth;
+        boolean bottom = bbox.y() + bbox.height() >= window.y() + window.height()
+            && window.y() + window.height() < imageHeight;
+        return left || top || right || bottom;
+    }
+
+    /**
+     * Drop markers found twice through overlapping search windows.
+     */
+    private List<LShapedFiducial> removeDuplicateLShapes(List<LShapedFiducial> fiducials) {
+        List<LShapedFiducial> unique = new ArrayList<>();
+        for (LShapedFiducial fid : fiducials) {
+            boolean duplicate = unique.stream().anyMatch(u ->
+                Math.abs(u.corner.x() - fid.corner.x()) < 1 && Math.abs(u.corner.y() - fid.corner.y()) < 1);
+            if (!duplicate) unique.add(fid);
+        }
+        return unique;
+    }
+
+    private List<RectFiducial> removeDuplicateRects(List<RectFiducial> fiducials) {
+        List<RectFiducial> unique = new ArrayList<>();
+        for (RectFiducial fid : fiducials) {
+            boolean duplicate = unique.stream().anyMatch(u ->
+                Math.abs(u.center.x() - fid.center.x()) < 1 && Math.abs(u.center.y() - fid.center.y()) < 1);
+            if (!duplicate) unique.add(fid);
+        }
+        return unique;
+    }
+
     /**
      * Extract page corners from detected L-shaped fiducials.
      */
@@ -603,5 +849,20 @@ public class FiducialDetector {
     public void setMaxLShapeArea(double area) { this.maxLShapeArea = area; }
     public void setMinRectArea(double area) { this.minRectArea = area; }
     public void setMaxRectArea(double area) { this.maxRectArea = area; }
+    public void setPyramidFactor(int factor) { this.pyramidFactor = Math.max(1, factor); }
+    public void setPyramidMinPixels(long pixels) { this.pyramidMinPixels = pixels; }
+    public int getPyramidFactor() { return pyramidFactor; }
+    public void setCornerWindowRatio(double ratio) { this.cornerWindowRatio = Math.max(0.05, Math.min(0.5, ratio)); }
+    public double getCornerWindowRatio() { return cornerWindowRatio; }
+    
+    /**
+     * Set the blur and adaptive threshold parameters used inside the corner windows.
+     * They should match the full-page pass so both find the same shapes.
+     */
+    public void setCornerThreshold(int blurSize, int blockSize, double c) {
+        this.cornerBlurSize = blurSize;
+        this.cornerBlockSize = blockSize;
+        this.cornerThresholdC = c;
+    }
 }
 
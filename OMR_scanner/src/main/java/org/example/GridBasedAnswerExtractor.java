@@ -3,7 +3,6 @@ package org.example;
 import org.bytedeco.opencv.opencv_core.*;
 
 import static org.bytedeco.opencv.global.opencv_core.*;
-import static org.bytedeco.opencv.global.opencv_core.countNonZero;
 import static org.bytedeco.opencv.global.opencv_imgproc.*;
 import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
 
@@ -48,6 +47,13 @@ public class GridBasedAnswerExtractor {
      * @return Extracted answers
      */
     public GridResult extractAnswers(Mat answerSection) {
+        return extractAnswers(answerSection, new BubbleSampler(answerSection));
+    }
+
+    /**
+     * Extract answers, measuring cell fill with a sampler already loaded with answerSection.
+     */
+    public GridResult extractAnswers(Mat answerSection, BubbleSampler sampler) {
         GridResult result = new GridResult();
         
         int width = answerSection.cols();
@@ -124,12 +130,8 @@ public class GridBasedAnswerExtractor {
                     
                     if (bubbleW <= 0 || bubbleH <= 0) continue;
                     
-                    // Sample the region
-                    Rect roi = new Rect(bubbleX, bubbleY, bubbleW, bubbleH);
-                    Mat bubbleRegion = answerSection.apply(roi);
-                    
                     // Calculate fill ratio (white pixels / total pixels)
-                    int whitePixels = countNonZero(bubbleRegion);
+                    int whitePixels = sampler.count(bubbleX, bubbleY, bubbleW, bubbleH);
                     int totalPixels = bubbleW * bubbleH;
                     double fillRatio = (double) whitePixels / totalPixels;
                     fillRatios[choice] = fillRatio;
@@ -149,7 +151,7 @@ public class GridBasedAnswerExtractor {
                         } else {
                             color = new Scalar(100, 100, 100, 0); // Gray for empty
                         }
-                        rectangle(debugImage, roi, color, 1, LINE_8, 0);
+                        rectangle(debugImage, new Rect(bubbleX, bubbleY, bubbleW, bubbleH), color, 1, LINE_8, 0);
                     }
                 }
                 
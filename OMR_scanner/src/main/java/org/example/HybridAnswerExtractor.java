@@ -44,6 +44,13 @@ public class HybridAnswerExtractor {
      * Extract answers using hybrid bubble detection + grid mapping.
      */
     public ExtractionResult extract(Mat answerSection) {
+        return extract(answerSection, new BubbleSampler(answerSection));
+    }
+
+    /**
+     * Extract answers, measuring bubble fill with a sampler already loaded with answerSection.
+     */
+    public ExtractionResult extract(Mat answerSection, BubbleSampler sampler) {
         ExtractionResult result = new ExtractionResult();
         
         int width = answerSection.cols();
@@ -52,7 +59,7 @@ public class HybridAnswerExtractor {
         System.out.println("  Hybrid extraction from: " + width + "x" + height);
         
         // Step 1: Detect all bubbles
-        List<BubbleInfo> allBubbles = detectAllBubbles(answerSection);
+        List<BubbleInfo> allBubbles = detectAllBubbles(answerSection, sampler);
         result.bubblesDetected = allBubbles.size();
         // Remove duplicate/overlapping bubbles
         allBubbles = removeOverlappingBubbles(allBubbles);
@@ -219,7 +226,7 @@ public class HybridAnswerExtractor {
     /**
      * Detect all circular bubbles in the image.
      */
-    private List<BubbleInfo> detectAllBubbles(Mat binaryImage) {
+    private List<BubbleInfo> detectAllBubbles(Mat binaryImage, BubbleSampler sampler) {
         List<BubbleInfo> bubbles = new ArrayList<>();
         
         // Find contours
@@ -248,18 +255,15 @@ public class HybridAnswerExtractor {
             int radius = (bbox.width() + bbox.height()) / 4;
             
             // Calculate fill ratio using bounding box sampling (simpler and more reliable)
-            Rect sampleArea = new Rect(
-                Math.max(0, cx - radius/2),
-                Math.max(0, cy - radius/2),
-                Math.min(radius, binaryImage.cols() - cx + radius/2),
-                Math.min(radius, binaryImage.rows() - cy + radius/2)
-            );
+            int sampleX = Math.max(0, cx - radius/2);
+            int sampleY = Math.max(0, cy - radius/2);
+            int sampleW = Math.min(radius, sampler.getWidth() - cx + radius/2);
+            int sampleH = Math.min(radius, sampler.getHeight() - cy + radius/2);
             
-            if (sampleArea.width() <= 0 || sampleArea.height() <= 0) continue;
+            if (sampleW <= 0 || sampleH <= 0) continue;
             
-            Mat bubbleRegion = binaryImage.apply(sampleArea);
-            int filledPixels = countNonZero(bubbleRegion);
-            int totalPixels = sampleArea.width() * sampleArea.height();
+            int filledPixels = sampler.count(sampleX, sampleY, sampleW, sampleH);
+            int totalPixels = sampleW * sampleH;
             double fillRatio = (double) filledPixels / totalPixels;
             
             BubbleInfo bubble = new BubbleInfo();
@@ -25,6 +25,9 @@ public class Main extends Application {
         if (!dbInitialized) {
             System.err.println("Warning: Database initialization failed. Some features may not work.");
         }
+
+        // Build and warm up the OMR processors in the background
+        OMRSheetProcessorPool.getInstance().warmUpAsync();
     }
 
     @Override
@@ -0,0 +1,112 @@
+package org.example;
+
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerScope;
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Native-memory scope for one processing stage of one sheet.
+ *
+ * Every JavaCPP object (Mat, MatVector, Rect, Point, Scalar, ...) created on
+ * the current thread while the scope is open is attached to it and deallocated
+ * when the scope closes, including temporaries the code never frees itself.
+ * Objects that must outlive the stage are handed on with {@link #keep(Mat)}.
+ *
+ * The scope also keeps per-sheet counters: native objects created, bytes of
+ * Mat data allocated, and bytes still held when the scope closed (memory that
+ * would otherwise have stayed allocated until the garbage collector ran).
+ * Mat sizes are sampled whenever a new Mat is attached and at close, so data
+ * that is allocated and freed between two samples is not counted.
+ */
+public class NativeScope extends PointerScope {
+
+    private final List<TrackedMat> mats = new ArrayList<>();
+    private int objectCount = 0;
+    private long allocatedBytes = 0;
+    private long leakedBytes = 0;
+    private boolean closed = false;
+
+    @Override
+    public PointerScope attach(Pointer pointer) {
+        super.attach(pointer);
+        objectCount++;
+        if (pointer instanceof Mat mat) {
+            sample();
+            mats.add(new TrackedMat(mat));
+        }
+        return this;
+    }
+
+    /**
+     * Hand a Mat on to a later stage. It stays allocated after this scope
+     * closes and must be freed by its new owner with {@link Mat#close()}.
+     */
+    public Mat keep(Mat mat) {
+        for (int i = 0; i < mats.size(); i++) {
+            TrackedMat tracked = mats.get(i);
+            if (tracked.mat == mat) {
+                tracked.sample();
+                allocatedBytes += tracked.maxBytes;
+                mats.remove(i);
+                break;
+            }
+        }
+        mat.retainReference();
+        detach(mat);
+        return mat;
+    }
+
+    /**
+     * Deallocate everything still attached and finalize the counters.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (TrackedMat tracked : mats) {
+            tracked.sample();
+            allocatedBytes += tracked.maxBytes;
+            if (!tracked.mat.isNull()) {
+                leakedBytes += dataBytes(tracked.mat);
+            }
+        }
+        mats.clear();
+        super.close();
+    }
+
+    public int getObjectCount() { return objectCount; }
+    public long getAllocatedBytes() { return allocatedBytes; }
+    public long getLeakedBytes() { return leakedBytes; }
+
+    private void sample() {
+        for (TrackedMat tracked : mats) {
+            tracked.sample();
+        }
+    }
+
+    /**
+     * Bytes of pixel data owned by a Mat; views into another Mat count as zero.
+     */
+    private static long dataBytes(Mat mat) {
+        if (mat.isNull() || mat.empty() || mat.isSubmatrix()) {
+            return 0;
+        }
+        return mat.total() * mat.elemSize();
+    }
+
+    private static class TrackedMat {
+        final Mat mat;
+        long maxBytes;
+
+        TrackedMat(Mat mat) {
+            this.mat = mat;
+        }
+
+        void sample() {
+            maxBytes = Math.max(maxBytes, dataBytes(mat));
+        }
+    }
+}
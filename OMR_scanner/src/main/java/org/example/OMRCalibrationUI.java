@@ -619,40 +619,73 @@ public class OMRCalibrationUI extends Application {
         return threshold;
     }
     
+    /**
+     * Save the calibrated answer grid as a layout file (see {@link SheetLayout}).
+     * The loaded image is taken as the deskewed page; the answer section is the
+     * grid plus half a row of margin. ID grids are not calibrated here.
+     */
     private void exportTemplate() {
-        StringBuilder template = new StringBuilder();
-        template.append("// OMR Template Configuration\n");
-        template.append("// Generated by OMR Calibration Tool\n\n");
-        template.append("// Answer Grid\n");
-        template.append("ANSWER_X = ").append(answerX).append(";\n");
-        template.append("ANSWER_Y = ").append(answerY).append(";\n");
-        template.append("ANSWER_OPTION_SPACING = ").append(optionSpacing).append(";\n");
-        template.append("ANSWER_ROW_SPACING = ").append(rowSpacing).append(";\n");
-        template.append("ANSWER_COL_SPACING = ").append(colSpacing).append(";\n");
-        template.append("ANSWER_BUBBLE_W = ").append(bubbleW).append(";\n");
-        template.append("ANSWER_BUBBLE_H = ").append(bubbleH).append(";\n");
-        template.append("REVERSE_OPTIONS = ").append(reverseOptions).append(";\n\n");
-        template.append("// Student ID Grid\n");
-        template.append("STUDENT_ID_X = ").append(studentIdX).append(";\n");
-        template.append("STUDENT_ID_Y = ").append(studentIdY).append(";\n\n");
-        template.append("// Test ID Grid\n");
-        template.append("TEST_ID_X = ").append(testIdX).append(";\n");
-        template.append("TEST_ID_Y = ").append(testIdY).append(";\n");
-        
-        // Show in dialog
-        Alert alert = new Alert(Alert.AlertType.INFORMATION);
-        alert.setTitle("Template Export");
-        alert.setHeaderText("Copy these values to your code:");
-        
-        TextArea textArea = new TextArea(template.toString());
-        textArea.setEditable(false);
-        textArea.setWrapText(true);
-        textArea.setMaxWidth(Double.MAX_VALUE);
-        textArea.setMaxHeight(Double.MAX_VALUE);
-        
-        alert.getDialogPane().setContent(textArea);
-        alert.getDialogPane().setMinWidth(500);
-        alert.showAndWait();
+        if (processedImage == null) {
+            showError("Please load an image first");
+            return;
+        }
+        
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Save Sheet Layout");
+        fileChooser.setInitialFileName("custom-60.properties");
+        fileChooser.getExtensionFilters().add(
+            new FileChooser.ExtensionFilter("Layout Files", "*.properties"));
+        File file = fileChooser.showSaveDialog(imageView.getScene().getWindow());
+        if (file == null) return;
+        
+        try {
+            SheetLayout layout = buildLayout(file.getName().replaceFirst("\\.properties$", ""));
+            layout.store(file);
+            statusLabel.setText("Saved layout " + layout.id + " to " + file.getName());
+            
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Template Export");
+            alert.setHeaderText("Layout saved");
+            alert.setContentText("Use it with --layout " + file.getAbsolutePath() +
+                " or copy it to the layouts folder as " + layout.id + ".properties");
+            alert.showAndWait();
+        } catch (IllegalArgumentException | IOException e) {
+            showError("Could not save layout: " + e.getMessage());
+        }
+    }
+    
+    private SheetLayout buildLayout(String id) {
+        int columns = 4, rows = 15, choices = 4;
+        
+        // Row box around the bubbles of one question (no question number area)
+        double boxW = choices * optionSpacing;
+        double boxH = Math.min(rowSpacing, bubbleH * 1.5);
+        double boxX = answerX + bubbleW / 2.0 - optionSpacing / 2.0;
+        double boxY = answerY + bubbleH / 2.0 - boxH / 2.0;
+        
+        // Answer section: the grid plus a margin, within the image
+        double margin = rowSpacing / 2.0;
+        double left = Math.max(0, boxX - margin);
+        double top = Math.max(0, boxY - margin);
+        double right = Math.min(actualImageWidth, boxX + (columns - 1) * colSpacing + boxW + margin);
+        double bottom = Math.min(actualImageHeight, boxY + (rows - 1) * rowSpacing + boxH + margin);
+        double sectionW = right - left, sectionH = bottom - top;
+        
+        SheetLayout layout = new SheetLayout();
+        layout.id = id;
+        layout.name = "Calibrated from " + new File(currentImagePath).getName();
+        layout.answerRegion = new double[] {left / actualImageWidth, top / actualImageHeight,
+            sectionW / actualImageWidth, sectionH / actualImageHeight};
+        layout.columns = columns;
+        layout.rowsPerColumn = rows;
+        layout.choiceLabels = reverseOptions ? new String[] {"D", "C", "B", "A"} : new String[] {"A", "B", "C", "D"};
+        layout.firstBox = new double[] {(boxX - left) / sectionW, (boxY - top) / sectionH};
+        layout.pitch = new double[] {colSpacing / sectionW, rowSpacing / sectionH};
+        layout.boxSize = new double[] {boxW / sectionW, boxH / sectionH};
+        layout.labelWidth = 0;
+        layout.bubbleSize = new double[] {bubbleW / boxW, bubbleH / boxH};
+        layout.validate();
+        return layout;
     }
     
     private void showError(String message) {
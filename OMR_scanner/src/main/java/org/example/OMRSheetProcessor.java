@@ -2,10 +2,14 @@ package org.example;
 
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.javacpp.BytePointer;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.bytedeco.opencv.global.opencv_core.*;
 import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
@@ -26,15 +30,19 @@ import static org.bytedeco.opencv.global.opencv_imgproc.*;
  */
 public class OMRSheetProcessor {
 
+    /**
+     * Version of the extraction pipeline. Part of every scan's content hash, so
+     * bump it whenever a change alters extracted results to invalidate cached scans.
+     */
+    public static final int PIPELINE_VERSION = 4;
+
     private ImagePreprocessor preprocessor;
     private FiducialDetector fiducialDetector;
     private BubbleDetector bubbleDetector;
     private PerspectiveCorrector perspectiveCorrector;
-    private GridBasedAnswerExtractor gridExtractor;
-    private HybridAnswerExtractor hybridExtractor;
-    private StructuredAnswerExtractor structuredExtractor;
-    private MorphologicalAnswerExtractor morphExtractor;
     private RowBasedAnswerExtractor rowExtractor;
+    private final AnswerCascade answerCascade = new AnswerCascade();
+    private final BubbleSampler bubbleSampler = new BubbleSampler();   // Reused across sheets
     private IDExtractor idExtractor;
     
     // Configuration
@@ -48,10 +56,6 @@ public class OMRSheetProcessor {
         this.fiducialDetector = new FiducialDetector();
         this.bubbleDetector = new BubbleDetector();
         this.perspectiveCorrector = new PerspectiveCorrector();
-        this.gridExtractor = new GridBasedAnswerExtractor();
-        this.hybridExtractor = new HybridAnswerExtractor();
-        this.structuredExtractor = new StructuredAnswerExtractor();
-        this.morphExtractor = new MorphologicalAnswerExtractor();
         this.rowExtractor = new RowBasedAnswerExtractor();
         this.idExtractor = new IDExtractor();
     }
@@ -67,7 +71,7 @@ public class OMRSheetProcessor {
         public String studentId;  // 10 digits
         public String testId;     // 4 digits
         
-        // Detected answers (60 questions, values: A/B/C/D/null/MULTIPLE)
+        // Detected answers (one per layout question, values: A/B/C/D/null/MULTIPLE)
         public String[] answers = new String[60];
         
         // Confidence scores for each answer
@@ -77,6 +81,26 @@ public class OMRSheetProcessor {
         public long processingTimeMs;
         public int lFiducialsFound;
         public int rectFiducialsFound;
+        public int escalatedQuestions;  // Questions the answer cascade re-examined
+        
+        // Native memory stats (summed over all stages, see NativeScope)
+        public int nativeObjects;
+        public long nativeBytesAllocated;
+        public long nativeBytesLeaked;
+        
+        // Wall time per processing step in milliseconds, in pipeline order
+        public final Map<String, Double> stageTimings = new LinkedHashMap<>();
+        
+        /**
+         * Record the wall time of a step that started at {@code startNanos}.
+         * 
+         * @return The current {@link System#nanoTime()}, to time the next step from
+         */
+        public long recordStage(String stage, long startNanos) {
+            long now = System.nanoTime();
+            stageTimings.merge(stage, (now - startNanos) / 1_000_000.0, Double::sum);
+            return now;
+        }
         
         @Override
         public String toString() {
@@ -86,59 +110,237 @@ public class OMRSheetProcessor {
             sb.append("  studentId: ").append(studentId).append("\n");
             sb.append("  testId: ").append(testId).append("\n");
             sb.append("  answers: ");
-            for (int i = 0; i < 10; i++) {
+            for (int i = 0; i < Math.min(10, answers.length); i++) {
                 sb.append(answers[i] != null ? answers[i] : "-");
             }
             sb.append("... (showing first 10)\n");
             sb.append("  processingTime: ").append(processingTimeMs).append("ms\n");
+            sb.append("  nativeBytes: ").append(nativeBytesAllocated)
+              .append(" allocated, ").append(nativeBytesLeaked).append(" leaked\n");
             sb.append("}");
             return sb.toString();
         }
     }
 
+    /**
+     * Per-sheet working state passed between the processing stages.
+     * Holds the decoded page and the answer section produced by
+     * {@link #runGeometryStage} until {@link #runExtractionStage} consumes it.
+     * Both are {@link PreprocessedImage}s, so each derived image is built once.
+     * The layout the sheet is read with travels with it, so pooled processors
+     * hold no per-job configuration.
+     */
+    public static class SheetContext {
+        public final String name;
+        public final long startTime;
+        public final ProcessResult result = new ProcessResult();
+        
+        private PreprocessedImage page;
+        private PreprocessedImage answerSection;
+        private SamplingPlan samplingPlan;   // null = the default layout (SheetLayouts)
+        
+        public SheetContext(Mat original, String name, boolean ownsOriginal) {
+            this(original, name, ownsOriginal, System.currentTimeMillis());
+        }
+        
+        private SheetContext(Mat original, String name, boolean ownsOriginal, long startTime) {
+            this.page = new PreprocessedImage(original, ownsOriginal);
+            this.name = name;
+            this.startTime = startTime;
+            this.result.success = true;
+        }
+        
+        /**
+         * The layout this sheet is read with: the one set on the context, or the default.
+         */
+        public SamplingPlan getSamplingPlan() {
+            return samplingPlan != null ? samplingPlan : SheetLayouts.getInstance().getDefaultPlan();
+        }
+        
+        public void setSamplingPlan(SamplingPlan plan) { this.samplingPlan = plan; }
+        
+        /**
+         * Whether an earlier stage has failed.
+         */
+        public boolean isFailed() {
+            return !result.success;
+        }
+        
+        void fail(String message) {
+            result.success = false;
+            result.errorMessage = message;
+            release();
+        }
+        
+        /**
+         * Add the counters of a closed stage scope to the result.
+         */
+        void recordNativeUsage(NativeScope scope) {
+            result.nativeObjects += scope.getObjectCount();
+            result.nativeBytesAllocated += scope.getAllocatedBytes();
+            result.nativeBytesLeaked += scope.getLeakedBytes();
+        }
+        
+        /**
+         * Release all native images still held by this context.
+         */
+        public void release() {
+            if (page != null) page.release();
+            page = null;
+            if (answerSection != null) answerSection.release();
+            answerSection = null;
+        }
+    }
+
     /**
      * Process an OMR sheet image.
      */
     public ProcessResult process(File imageFile) {
-        ProcessResult result = new ProcessResult();
+        return process(decode(imageFile));
+    }
+
+    /**
+     * Process an already decoded OMR sheet image.
+     * The caller keeps ownership of {@code original}; it is not released here.
+     * 
+     * @param original The decoded sheet (BGR or grayscale)
+     * @param name Display name used in debug output
+     */
+    public ProcessResult process(Mat original, String name) {
+        return process(new SheetContext(original, name, false));
+    }
+
+    /**
+     * Run the geometry and extraction stages on a decoded sheet.
+     * The context is released afterwards.
+     */
+    public ProcessResult process(SheetContext context) {
+        if (!context.isFailed()) {
+            runGeometryStage(context);
+        }
+        if (!context.isFailed()) {
+            runExtractionStage(context);
+        }
+        context.release();
+        return context.result;
+    }
+
+    /**
+     * Decode stage: load the image from disk into a new context.
+     * Needs no processor state, so it can run on I/O threads.
+     */
+    public static SheetContext decode(File imageFile) {
         long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        NativeScope scope = new NativeScope();
+        SheetContext context;
+        try {
+            Mat original = scope.keep(imread(imageFile.getAbsolutePath()));
+            context = new SheetContext(original, imageFile.getName(), true, startTime);
+        } finally {
+            scope.close();
+        }
+        context.recordNativeUsage(scope);
+        context.result.recordStage("decode", startNanos);
+        if (context.page.source().empty()) {
+            context.fail("Failed to load image: " + imageFile.getAbsolutePath());
+        }
+        return context;
+    }
+
+    /**
+     * Decode stage for in-memory data: decode the encoded image (JPEG, PNG,
+     * TIFF, ...) between the buffer's position and limit straight into a Mat.
+     * Direct and memory-mapped buffers are decoded in place; heap buffers are
+     * copied once into native memory. The buffer's position is not changed.
+     */
+    public static SheetContext decode(ByteBuffer imageData, String name) {
+        long startTime = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        ByteBuffer data = imageData.slice();
+        int length = data.remaining();
+        
+        NativeScope scope = new NativeScope();
+        SheetContext context;
+        try {
+            BytePointer pointer;
+            if (data.isDirect()) {
+                pointer = new BytePointer(data);
+            } else {
+                // Heap buffers (also read-only ones) have no native address; copy exactly length bytes
+                pointer = new BytePointer(length);
+                if (data.hasArray()) {
+                    pointer.put(data.array(), data.arrayOffset() + data.position(), length);
+                } else {
+                    byte[] bytes = new byte[length];
+                    data.get(bytes);
+                    pointer.put(bytes, 0, length);
+                }
+            }
+            Mat encoded = new Mat(1, length, CV_8UC1, pointer);
+            Mat original = scope.keep(imdecode(encoded, IMREAD_COLOR));
+            context = new SheetContext(original, name, true, startTime);
+        } finally {
+            scope.close();
+        }
+        context.recordNativeUsage(scope);
+        context.result.recordStage("decode", startNanos);
+        if (context.page.source().empty()) {
+            context.fail("Failed to decode image: " + name);
+        }
+        return context;
+    }
+
+    /**
+     * Geometry stage: threshold, find fiducials, deskew the page and cut out
+     * the answer section (steps 2-7).
+     * Native objects created here are freed when the stage ends; only the
+     * answer section is kept for the extraction stage.
+     */
+    public void runGeometryStage(SheetContext context) {
+        ProcessResult result = context.result;
+        PreprocessedImage page = context.page;
+        Mat original = page.source();
+        NativeScope scope = new NativeScope();
+        long stageStart = System.nanoTime();
         
         try {
             // Only print verbose output if debug images are enabled
             if (saveDebugImages) {
                 System.out.println("\n" + "=".repeat(60));
-                System.out.println("Processing: " + imageFile.getName());
+                System.out.println("Processing: " + context.name);
                 System.out.println("=".repeat(60));
+                System.out.println("  ✓ Loaded: " + original.cols() + "x" + original.rows());
             }
             
-            // Step 1: Load image
-            if (saveDebugImages) System.out.println("\n[Step 1] Loading image...");
-            Mat original = imread(imageFile.getAbsolutePath());
-            if (original.empty()) {
-                result.success = false;
-                result.errorMessage = "Failed to load image: " + imageFile.getAbsolutePath();
-                return result;
-            }
-            if (saveDebugImages) System.out.println("  ✓ Loaded: " + original.cols() + "x" + original.rows());
-            
             // Step 2: Preprocess
             if (saveDebugImages) System.out.println("\n[Step 2] Preprocessing...");
-            Mat gray = preprocessor.toGrayscale(original);
-            Mat blurred = preprocessor.applyGaussianBlur(gray, 5);
-            // Use larger block size and C value for scanned images
-            Mat binary = preprocessor.applyAdaptiveThreshold(blurred, 15, 4);
-            if (saveDebugImages) System.out.println("  ✓ Grayscale, blur, threshold applied");
+            Mat gray = page.gray();
+            if (saveDebugImages) System.out.println("  ✓ Grayscale applied");
             
             if (saveDebugImages) {
                 imwrite(debugOutputDir + "/01_original.png", original);
-                imwrite(debugOutputDir + "/02_binary.png", binary);
             }
             
             // Step 3: Detect L-shaped fiducials
+            // Search the four page corners first; they are thresholded on their own
             if (saveDebugImages) System.out.println("\n[Step 3] Detecting L-shaped fiducials...");
             List<FiducialDetector.LShapedFiducial> lFiducials = 
-                fiducialDetector.detectLShapedFiducials(binary);
+                fiducialDetector.detectLShapedFiducialsInCorners(gray);
+            
+            if (!fiducialDetector.getPageCorners(lFiducials).isValid()) {
+                // Fall back to thresholding and scanning the whole page
+                if (saveDebugImages) System.out.println("  ⚠ Corner search incomplete, scanning whole page");
+                // Use larger block size and C value for scanned images
+                Mat binary = page.adaptiveBinary(5, 15, 4);
+                lFiducials = fiducialDetector.detectLShapedFiducials(binary);
+                
+                if (saveDebugImages) {
+                    imwrite(debugOutputDir + "/02_binary.png", binary);
+                }
+            }
             result.lFiducialsFound = lFiducials.size();
+            stageStart = result.recordStage("pageFiducials", stageStart);
             if (saveDebugImages) {
                 System.out.println("  ✓ Found " + lFiducials.size() + " L-shaped fiducials");
                 for (var fid : lFiducials) {
@@ -148,17 +350,20 @@ public class OMRSheetProcessor {
             
             // Step 4: Deskew using L-fiducials
             if (saveDebugImages) System.out.println("\n[Step 4] Deskewing page...");
-            Mat deskewed;
+            PreprocessedImage deskewedPage;
             FiducialDetector.PageCorners pageCorners = fiducialDetector.getPageCorners(lFiducials);
             
             if (pageCorners.isValid()) {
                 if (saveDebugImages) pageCorners.print();
-                deskewed = applyPerspectiveTransform(original, pageCorners);
+                // Warp the grayscale page; every later step works on gray data
+                deskewedPage = new PreprocessedImage(applyPerspectiveTransform(gray, pageCorners), true);
                 if (saveDebugImages) System.out.println("  ✓ Deskewed using L-fiducials");
             } else {
                 if (saveDebugImages) System.out.println("  ⚠ Not all L-fiducials found, using original image");
-                deskewed = original.clone();
+                deskewedPage = page;
             }
+            Mat deskewed = deskewedPage.gray();
+            stageStart = result.recordStage("deskew", stageStart);
             
             if (saveDebugImages) {
                 imwrite(debugOutputDir + "/03_deskewed.png", deskewed);
@@ -166,15 +371,14 @@ public class OMRSheetProcessor {
             
             // Step 5: Reprocess deskewed image
             if (saveDebugImages) System.out.println("\n[Step 5] Reprocessing deskewed image...");
-            Mat deskewedGray = preprocessor.toGrayscale(deskewed);
-            Mat deskewedBinary = preprocessor.applyAdaptiveThreshold(
-                preprocessor.applyGaussianBlur(deskewedGray, 5), 11, 2);
+            Mat deskewedBinary = deskewedPage.adaptiveBinary(5, 11, 2);
             
             // Step 6: Detect rectangular fiducials for answer section
             if (saveDebugImages) System.out.println("\n[Step 6] Detecting answer section fiducials...");
             List<FiducialDetector.RectFiducial> rectFiducials = 
                 fiducialDetector.detectRectFiducials(deskewedBinary);
             result.rectFiducialsFound = rectFiducials.size();
+            stageStart = result.recordStage("answerFiducials", stageStart);
             if (saveDebugImages) System.out.println("  ✓ Found " + rectFiducials.size() + " rectangular fiducials");
             
             // Step 7: Extract and deskew answer section using rectangular fiducials
@@ -220,17 +424,53 @@ public class OMRSheetProcessor {
                 
                 if (answerSection == null) {
                     if (saveDebugImages) System.out.println("  ⚠ Border detection failed, using heuristics...");
-                    answerSection = extractAnswerSectionByHeuristics(deskewed);
+                    answerSection = extractAnswerSectionByHeuristics(deskewed, context.getSamplingPlan());
                 }
             }
             
+            result.recordStage("answerSection", stageStart);
+            
             if (saveDebugImages && answerSection != null) {
                 imwrite(debugOutputDir + "/04_answer_section.png", answerSection);
             }
             
+            // Cleanup geometry intermediates; the answer section moves to the next stage
+            if (deskewedPage != page) deskewedPage.release();
+            page.release();
+            context.page = null;
+            if (answerSection != null) {
+                context.answerSection = new PreprocessedImage(scope.keep(answerSection), true);
+            }
+            
+        } catch (Exception e) {
+            context.fail(e.getMessage());
+            e.printStackTrace();
+        } finally {
+            scope.close();
+            context.recordNativeUsage(scope);
+        }
+    }
+
+    /**
+     * Extraction stage: read the answers from the answer section produced by
+     * {@link #runGeometryStage} (steps 8-10).
+     */
+    public void runExtractionStage(SheetContext context) {
+        ProcessResult result = context.result;
+        PreprocessedImage answerSection = context.answerSection;
+        NativeScope scope = new NativeScope();
+        long stageStart = System.nanoTime();
+        
+        try {
+            // One answer per question of the layout, even if no section was found
+            SamplingPlan plan = context.getSamplingPlan();
+            if (result.answers.length != plan.getQuestionCount()) {
+                result.answers = new String[plan.getQuestionCount()];
+                result.confidences = new double[plan.getQuestionCount()];
+            }
+            
             // Step 8: Skip ID section detection (not needed for manual input)
             if (saveDebugImages) System.out.println("\n[Step 8] Skipping ID section detection...");
-            Mat idSection = null;
             
             // Step 9: Skip ID extraction (user will enter manually)
             if (saveDebugImages) System.out.println("\n[Step 9] Skipping ID extraction (manual input required)...");
@@ -241,58 +481,54 @@ public class OMRSheetProcessor {
             if (saveDebugImages) System.out.println("\n[Step 10] Extracting answers (row-based)...");
             if (answerSection != null) {
                 // Configure row-based extractor
+                rowExtractor.setSamplingPlan(plan);
                 rowExtractor.setSaveDebugImages(saveDebugImages);
                 rowExtractor.setDebugOutputDir(debugOutputDir);
                 
                 // Preprocess answer section - use inverted binary
                 // so filled bubbles (dark on original) become white
-                Mat ansGray = preprocessor.toGrayscale(answerSection);
-                Mat ansBlurred = preprocessor.applyGaussianBlur(ansGray, 3);
-                Mat ansBinary = new Mat();
-                org.bytedeco.opencv.global.opencv_imgproc.threshold(
-                    ansBlurred, ansBinary, 0, 255,
-                    org.bytedeco.opencv.global.opencv_imgproc.THRESH_BINARY_INV |
-                    org.bytedeco.opencv.global.opencv_imgproc.THRESH_OTSU);
+                Mat ansBinary = answerSection.otsuBinary(3);
+                stageStart = result.recordStage("threshold", stageStart);
                 
                 if (saveDebugImages) {
                     org.bytedeco.opencv.global.opencv_imgcodecs.imwrite(
                         debugOutputDir + "/07_answer_binary.png", ansBinary);
                 }
                 
+                // One integral image per sheet answers every bubble fill query
+                bubbleSampler.load(ansBinary);
+                
                 // Extract using row-based method (detect rows first, then bubbles)
-                RowBasedAnswerExtractor.Result rowResult = rowExtractor.extract(ansBinary);
+                RowBasedAnswerExtractor.Result rowResult = rowExtractor.extract(ansBinary, bubbleSampler);
+                stageStart = result.recordStage("rowExtraction", stageStart);
                 
-                // Copy results
-                result.answers = rowResult.answers;
-                result.confidences = rowResult.confidences;
+                // Decide each question from its row, re-examining only the unclear ones
+                AnswerCascade.Result decided = answerCascade.read(plan, rowResult, bubbleSampler, answerSection.gray());
+                result.recordStage("cascade", stageStart);
+                if (saveDebugImages) {
+                    System.out.println("  ✓ Cascade re-examined " + decided.escalatedCount + " of " +
+                        decided.answers.length + " questions");
+                }
                 
-                ansGray.release();
-                ansBlurred.release();
-                ansBinary.release();
+                result.answers = decided.answers;
+                result.confidences = decided.confidences;
+                result.escalatedQuestions = decided.escalatedCount;
             }
             
             // Print first 20 answers as sample (only if debug enabled)
             if (saveDebugImages) {
                 System.out.println("  First 20 answers:");
-                for (int i = 0; i < 20; i++) {
+                for (int i = 0; i < Math.min(20, result.answers.length); i++) {
                     System.out.print("  Q" + (i+1) + ":" + (result.answers[i] != null ? result.answers[i] : "-") + " ");
                     if ((i + 1) % 5 == 0) System.out.println();
                 }
             }
             
             // Cleanup
-            original.release();
-            gray.release();
-            blurred.release();
-            binary.release();
-            deskewed.release();
-            deskewedGray.release();
-            deskewedBinary.release();
-            if (answerSection != null) answerSection.release();
-            if (idSection != null) idSection.release();
+            context.release();
             
             result.success = true;
-            result.processingTimeMs = System.currentTimeMillis() - startTime;
+            result.processingTimeMs = System.currentTimeMillis() - context.startTime;
             
             if (saveDebugImages) {
                 System.out.println("\n" + "=".repeat(60));
@@ -301,12 +537,12 @@ public class OMRSheetProcessor {
             }
             
         } catch (Exception e) {
-            result.success = false;
-            result.errorMessage = e.getMessage();
+            context.fail(e.getMessage());
             e.printStackTrace();
+        } finally {
+            scope.close();
+            context.recordNativeUsage(scope);
         }
-        
-        return result;
     }
 
     /**
@@ -539,19 +775,14 @@ public class OMRSheetProcessor {
     /**
      * Extract answer section using heuristics when border detection fails.
      */
-    private Mat extractAnswerSectionByHeuristics(Mat image) {
+    private Mat extractAnswerSectionByHeuristics(Mat image, SamplingPlan plan) {
         int width = image.cols();
         int height = image.rows();
         
-        // Based on the OMR template with borders and fiducials
-        int x = (int) (width * 0.02);
-        int y = (int) (height * 0.315);  // After ID section  
-        int w = (int) (width * 0.96);
-        int h = (int) (height * 0.635);
+        // Where the layout puts the answer section on the deskewed page
+        int[] region = plan.placeAnswerRegion(width, height);
         
-            // Heuristic bounds calculated (debug output removed)
-        
-        return extractRegion(image, new Rect(x, y, w, h));
+        return extractRegion(image, new Rect(region[0], region[1], region[2], region[3]));
     }
 
     /**
@@ -652,6 +883,18 @@ public class OMRSheetProcessor {
         binary.release();
     }
 
+    /**
+     * Restore default configuration and clear per-sheet state so a pooled
+     * instance behaves like a freshly constructed one.
+     */
+    public void reset() {
+        targetWidth = 1000;
+        targetHeight = 1400;
+        saveDebugImages = false;
+        debugOutputDir = "output";
+        rowExtractor.reset();
+    }
+
     // Setters
     public void setTargetWidth(int width) { this.targetWidth = width; }
     public void setTargetHeight(int height) { this.targetHeight = height; }
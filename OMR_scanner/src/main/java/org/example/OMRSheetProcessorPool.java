@@ -0,0 +1,188 @@
+package org.example;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+
+import java.io.File;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of fully constructed {@link OMRSheetProcessor} instances.
+ *
+ * Building a processor creates all of its detectors and extractors, so instead
+ * of one per image the pool keeps up to one instance per core, or one per worker
+ * thread of a pipeline that asks for more (see {@link #ensureCapacity}). Each
+ * instance is checked out by a single thread, used for one sheet, reset and returned.
+ * Instances are created lazily and can be warmed up at startup by running a
+ * synthetic sheet through them.
+ */
+public class OMRSheetProcessorPool {
+
+    private static final long WARM_UP_SEED = 1;
+
+    private static OMRSheetProcessorPool instance;
+
+    private volatile int maxSize;
+    private final LinkedBlockingDeque<OMRSheetProcessor> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger created = new AtomicInteger();
+    private volatile boolean warmedUp = false;
+
+    /**
+     * Create a pool holding at most {@code maxSize} processors.
+     */
+    public OMRSheetProcessorPool(int maxSize) {
+        this.maxSize = Math.max(1, maxSize);
+    }
+
+    /**
+     * Get the shared pool, sized to the number of available cores.
+     */
+    public static synchronized OMRSheetProcessorPool getInstance() {
+        if (instance == null) {
+            instance = new OMRSheetProcessorPool(Runtime.getRuntime().availableProcessors());
+        }
+        return instance;
+    }
+
+    /**
+     * Let the pool grow to at least {@code size} processors, so that many
+     * threads can hold one at the same time without waiting.
+     */
+    public synchronized void ensureCapacity(int size) {
+        if (size > maxSize) {
+            maxSize = size;
+        }
+    }
+
+    // =========================================
+    // Checkout / Return
+    // =========================================
+
+    /**
+     * Check out a processor, creating one if the pool is not yet full.
+     * Blocks when all processors are in use.
+     */
+    public OMRSheetProcessor acquire() throws InterruptedException {
+        OMRSheetProcessor processor = idle.pollFirst();
+        if (processor != null) {
+            return processor;
+        }
+
+        // Grow the pool up to maxSize
+        while (true) {
+            int current = created.get();
+            if (current >= maxSize) break;
+            if (created.compareAndSet(current, current + 1)) {
+                return new OMRSheetProcessor();
+            }
+        }
+
+        return idle.takeFirst();
+    }
+
+    /**
+     * Return a processor to the pool. The processor is reset first.
+     */
+    public void release(OMRSheetProcessor processor) {
+        if (processor == null) return;
+        processor.reset();
+        // LIFO: the most recently used instance is handed out next
+        idle.offerFirst(processor);
+    }
+
+    /**
+     * Process a sheet using a pooled processor.
+     */
+    public OMRSheetProcessor.ProcessResult process(File imageFile) throws InterruptedException {
+        // Decode before checking out a processor; it needs no processor state
+        return process(OMRSheetProcessor.decode(imageFile));
+    }
+
+    /**
+     * Process an already decoded sheet using a pooled processor.
+     * The context is released afterwards.
+     */
+    public OMRSheetProcessor.ProcessResult process(OMRSheetProcessor.SheetContext context)
+            throws InterruptedException {
+        if (context.isFailed()) {
+            context.release();
+            return context.result;
+        }
+        OMRSheetProcessor processor;
+        try {
+            processor = acquire();
+        } catch (InterruptedException e) {
+            context.release();
+            throw e;
+        }
+        try {
+            return processor.process(context);
+        } finally {
+            release(processor);
+        }
+    }
+
+    // =========================================
+    // Warm-up
+    // =========================================
+
+    /**
+     * Create every processor in the pool and run a synthetic sheet through each,
+     * so class initialization and JIT compilation happen before the first real scan.
+     */
+    public void warmUp() {
+        long start = System.currentTimeMillis();
+        Mat sheet = createWarmUpSheet();
+        int size = maxSize;
+        OMRSheetProcessor[] processors = new OMRSheetProcessor[size];
+        int count = 0;
+
+        try {
+            // Check out every instance so each one gets exercised
+            while (count < size) {
+                OMRSheetProcessor processor = idle.pollFirst();
+                if (processor == null) {
+                    int current = created.get();
+                    if (current >= size) break;
+                    if (!created.compareAndSet(current, current + 1)) continue;
+                    processor = new OMRSheetProcessor();
+                }
+                processors[count++] = processor;
+                processor.process(sheet, "warm-up");
+            }
+        } catch (Exception e) {
+            System.err.println("⚠ Processor warm-up failed: " + e.getMessage());
+        } finally {
+            for (int i = 0; i < count; i++) {
+                release(processors[i]);
+            }
+            sheet.release();
+        }
+
+        warmedUp = true;
+        System.out.println("✓ Warmed up " + count + " OMR processors in " +
+            (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Run {@link #warmUp()} on a background daemon thread.
+     */
+    public void warmUpAsync() {
+        Thread thread = new Thread(this::warmUp, "omr-pool-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public boolean isWarmedUp() { return warmedUp; }
+    public int getMaxSize() { return maxSize; }
+    public int getCreatedCount() { return created.get(); }
+    public int getIdleCount() { return idle.size(); }
+
+    /**
+     * Render a clean synthetic sheet with known answers, so the warm-up run goes
+     * through the same code paths as a scan. Also used as the input of the benchmarks.
+     */
+    public static Mat createWarmUpSheet() {
+        return new SyntheticSheetGenerator().generate(WARM_UP_SEED).image;
+    }
+}
@@ -0,0 +1,126 @@
+package org.example;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Lazily derived versions of one image (grayscale, blurred, thresholded).
+ *
+ * Each derived image is computed the first time it is asked for and then
+ * reused, so a sheet never converts, blurs or thresholds the same data twice.
+ * Derived images depend on each other (binary -> blurred -> gray -> source),
+ * so asking for a binary also caches the gray and blurred images it was built from.
+ *
+ * All derived Mats are owned by this object and freed by {@link #release()};
+ * callers must not release them. The source is released only if it was
+ * handed over with {@code ownsSource = true}.
+ */
+public class PreprocessedImage {
+
+    private static final ImagePreprocessor PREPROCESSOR = new ImagePreprocessor();
+
+    private Mat source;
+    private final boolean ownsSource;
+    private final Map<String, Mat> derived = new LinkedHashMap<>();
+
+    /**
+     * @param source The image to derive from (BGR or single-channel)
+     * @param ownsSource Whether {@link #release()} should also release the source
+     */
+    public PreprocessedImage(Mat source, boolean ownsSource) {
+        this.source = source;
+        this.ownsSource = ownsSource;
+    }
+
+    public Mat source() {
+        return source;
+    }
+
+    public int cols() {
+        return source.cols();
+    }
+
+    public int rows() {
+        return source.rows();
+    }
+
+    /**
+     * Grayscale version. A single-channel source is returned as is, without a copy.
+     */
+    public Mat gray() {
+        if (source.channels() == 1) {
+            return source;
+        }
+        Mat cached = derived.get("gray");
+        if (cached == null) {
+            cached = new Mat();
+            cvtColor(source, cached, COLOR_BGR2GRAY);
+            derived.put("gray", cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Gaussian-blurred grayscale image.
+     */
+    public Mat blurred(int kernelSize) {
+        String key = "blur:" + kernelSize;
+        Mat cached = derived.get(key);
+        if (cached == null) {
+            cached = PREPROCESSOR.applyGaussianBlur(gray(), kernelSize);
+            derived.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Inverted adaptive-threshold binary of the blurred image (marks are white).
+     */
+    public Mat adaptiveBinary(int blurSize, int blockSize, double c) {
+        String key = "adaptive:" + blurSize + ":" + blockSize + ":" + c;
+        Mat cached = derived.get(key);
+        if (cached == null) {
+            cached = PREPROCESSOR.applyAdaptiveThreshold(blurred(blurSize), blockSize, c);
+            derived.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Inverted Otsu binary of the blurred image (marks are white).
+     */
+    public Mat otsuBinary(int blurSize) {
+        String key = "otsu:" + blurSize;
+        Mat cached = derived.get(key);
+        if (cached == null) {
+            cached = PREPROCESSOR.applyOtsuThreshold(blurred(blurSize));
+            derived.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Number of derived images computed so far (for debugging/profiling).
+     */
+    public int getDerivedCount() {
+        return derived.size();
+    }
+
+    /**
+     * Free all derived images, and the source if owned.
+     */
+    public void release() {
+        for (Mat mat : derived.values()) {
+            mat.close();
+        }
+        derived.clear();
+        if (ownsSource && source != null) {
+            source.close();
+        }
+        source = null;
+    }
+}
@@ -2,7 +2,10 @@ package org.example;
 
 import org.bytedeco.opencv.opencv_core.*;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 import static org.bytedeco.opencv.global.opencv_core.*;
 import static org.bytedeco.opencv.global.opencv_imgproc.*;
@@ -14,13 +17,18 @@ import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
  * 2. Within each row, detect which bubble (A/B/C/D) is filled
  * 
  * This is more robust because it uses the actual structure of the OMR sheet.
+ * The grid (columns, questions per column, choices) comes from a {@link SamplingPlan}.
+ * When the row template fits, a sheet is scored from the shared {@link BubbleSampler}
+ * with reused scratch arrays, so the only allocation is the {@link Result}.
  */
 public class RowBasedAnswerExtractor {
 
-    private static final int COLUMNS = 4;
-    private static final int ROWS_PER_COLUMN = 15;
-    private static final int CHOICES = 4;
-    private static final String[] CHOICE_LABELS = {"A", "B", "C", "D"};
+    // Sheet layout
+    private SamplingPlan plan;
+    private int columns;
+    private int rowsPerColumn;
+    private int choices;
+    private String[] choiceLabels;
     
     // Row detection parameters
     private int minRowWidth = 150;      // Minimum width for a row rectangle
@@ -30,70 +38,130 @@ public class RowBasedAnswerExtractor {
     private int minRowArea = 3000;      // Minimum area for a row
     private int maxRowArea = 100000;    // Maximum area for a row
     
-    // Bubble detection within row
-    private double fillThreshold = 0.40; // 40% filled = marked
+    // Bubble detection within row: where the bubbles start, as a fraction of
+    // the row width, tried in turn (narrow rows have less room for the number)
+    private static final double[] WIDE_ROW_OFFSETS = {0.08, 0.10, 0.12, 0.14};
+    private static final double[] NARROW_ROW_OFFSETS = {0.05, 0.08, 0.10, 0.12};
+    private int[] choiceCounts = new int[0];    // Scratch for detectAnswerInRow
     
-    // Auto-calibration
-    private BubblePositionCalibrator calibrator = new BubblePositionCalibrator();
+    // Template fast path
+    private static final int TEMPLATE_MAX_SHIFT = 8;          // Search +/- pixels when the template is off
+    private static final double TEMPLATE_EDGE_COVERAGE = 0.7; // Fraction of a border that must be marked
+    private static final double TEMPLATE_MIN_ROWS = 0.95;     // Fraction of rows whose borders must match
+    private static final double TEMPLATE_MAX_INK = 0.5;       // More marked than this is not a clean sheet
+    private boolean useTemplate = true;
+    private RowTemplate template;                             // Row boxes of the layout
+    private int templateHits = 0;
+    private int templateMisses = 0;
     
     private boolean saveDebugImages = false;
     private String debugOutputDir = "output";
 
     public static class Result {
-        public String[] answers = new String[60];
-        public double[] confidences = new double[60];
+        public String[] answers;
+        public double[] confidences;
         public int detectedCount = 0;
+        public int[] rowRects;          // x, y, w, h per question; width 0 if the row was not found
+
+        public Result(int questions) {
+            answers = new String[questions];
+            confidences = new double[questions];
+            rowRects = new int[questions * 4];
+        }
+
+        public boolean hasRow(int question) {
+            return rowRects[question * 4 + 2] > 0;
+        }
+    }
+
+    /**
+     * Extractor for the default layout (see {@link SheetLayouts#getDefaultPlan}).
+     */
+    public RowBasedAnswerExtractor() {
+        this(SheetLayouts.getInstance().getDefaultPlan());
+    }
+
+    public RowBasedAnswerExtractor(SamplingPlan plan) {
+        applyPlan(plan);
+    }
+
+    /**
+     * Switch to another layout. Its row boxes replace the current row template.
+     */
+    public void setSamplingPlan(SamplingPlan plan) {
+        if (plan != this.plan) applyPlan(plan);
+    }
+
+    public SamplingPlan getSamplingPlan() {
+        return plan;
+    }
+
+    private void applyPlan(SamplingPlan plan) {
+        this.plan = plan;
+        columns = plan.getColumns();
+        rowsPerColumn = plan.getRowsPerColumn();
+        choices = plan.getChoiceCount();
+        choiceLabels = new String[choices];
+        for (int i = 0; i < choices; i++) {
+            choiceLabels[i] = plan.getChoiceLabel(i);
+        }
+        choiceCounts = new int[choices];
+        template = new RowTemplate(plan.getRowFractions());
     }
 
     /**
      * Extract answers by first detecting rows, then bubbles within each row.
      */
     public Result extract(Mat binaryImage) {
-        Result result = new Result();
+        return extract(binaryImage, new BubbleSampler(binaryImage));
+    }
+
+    /**
+     * Extract answers, measuring bubble fill with a sampler already loaded
+     * with binaryImage (shared with other extractors of the same sheet).
+     */
+    public Result extract(Mat binaryImage, BubbleSampler sampler) {
+        Result result = new Result(plan.getQuestionCount());
         
         int width = binaryImage.cols();
         int height = binaryImage.rows();
         
-        System.out.println("  Row-based extraction from: " + width + "x" + height);
+        if (saveDebugImages) System.out.println("  Row-based extraction from: " + width + "x" + height);
+        
+        // Fast path: sample the template's row positions directly if their borders are where expected
+        if (useTemplate) {
+            if (template.fit(sampler, width, height, result.rowRects)) {
+                templateHits++;
+                extractWithTemplate(result.rowRects, sampler, result);
+                if (saveDebugImages) {
+                    System.out.println("  ✓ Row template matched, detected " + result.detectedCount + " answers");
+                }
+                return result;
+            }
+            templateMisses++;
+            if (saveDebugImages) System.out.println("  ⚠ Row template did not match, detecting rows");
+        }
         
         // Step 1: Detect horizontal row rectangles
         List<RowInfo> rows = detectRows(binaryImage);
-        System.out.println("  Detected " + rows.size() + " row rectangles");
-        
-        // Debug: show X distribution
-        if (!rows.isEmpty()) {
-            int minX = rows.stream().mapToInt(r -> r.rect.x()).min().orElse(0);
-            int maxX = rows.stream().mapToInt(r -> r.rect.x() + r.rect.width()).max().orElse(0);
-            System.out.println("  Row X range: " + minX + " to " + maxX + " (image width: " + width + ")");
-        }
+        if (saveDebugImages) System.out.println("  Detected " + rows.size() + " row rectangles");
         
         if (rows.isEmpty()) {
-            System.out.println("  ⚠ No rows detected!");
+            if (saveDebugImages) System.out.println("  ⚠ No rows detected!");
             return result;
         }
         
         // Step 2: Deduplicate overlapping rows
         rows = deduplicateRows(rows);
-        System.out.println("  After deduplication: " + rows.size() + " unique rows");
+        if (saveDebugImages) System.out.println("  After deduplication: " + rows.size() + " unique rows");
         
         // Step 3: Sort rows by Y position (top to bottom)
-        rows.sort(Comparator.comparingInt(r -> r.rect.y()));
-        
-        // Step 3.5: Auto-calibrate from first few rows
-        if (rows.size() >= 3) {
-            List<BubblePositionCalibrator.RowInfo> sampleRows = new ArrayList<>();
-            int sampleCount = Math.min(5, rows.size());
-            for (int i = 0; i < sampleCount; i++) {
-                RowInfo row = rows.get(i);
-                sampleRows.add(new BubblePositionCalibrator.RowInfo(row.rect));
-            }
-            calibrator.calibrate(sampleRows, binaryImage);
-        }
+        rows.sort(BY_Y);
         
         // Step 4: Map rows to questions and detect answers
-        mapRowsToQuestions(rows, binaryImage, result, width, height);
+        mapRowsToQuestions(rows, sampler, result, width);
         
-        System.out.println("  Detected " + result.detectedCount + " answers");
+        if (saveDebugImages) System.out.println("  Detected " + result.detectedCount + " answers");
         
         // Debug visualization
         if (saveDebugImages) {
@@ -103,6 +171,9 @@ public class RowBasedAnswerExtractor {
         return result;
     }
 
+    private static final Comparator<RowInfo> BY_Y = Comparator.comparingInt(r -> r.rect.y());
+    private static final Comparator<RowInfo> BY_X = Comparator.comparingInt(r -> r.rect.x());
+
     /**
      * Information about a detected row.
      */
@@ -200,89 +271,52 @@ public class RowBasedAnswerExtractor {
 
     /**
      * Map detected rows to question positions and extract answers.
+     * Rows must be sorted by Y; rows less than 20 px below the previous one
+     * form one question row across the columns.
      */
-    private void mapRowsToQuestions(List<RowInfo> rows, Mat binaryImage, 
-                                   Result result, int imageWidth, int imageHeight) {
-        if (rows.isEmpty()) return;
-        
-        // Account for header
-        int headerHeight = (int)(imageHeight * 0.05);
-        int contentHeight = imageHeight - headerHeight;
-        double rowHeight = contentHeight / (double) ROWS_PER_COLUMN;
-        
-        // Determine column width
-        double colWidth = imageWidth / (double) COLUMNS;
-        
-        // Group rows by Y position (rows at similar Y are in the same question row across columns)
-        // Sort by Y first, then group with dynamic tolerance
-        rows.sort(Comparator.comparingInt(r -> r.rect.y()));
-        
-        List<List<RowInfo>> yGroups = new ArrayList<>();
-        List<RowInfo> currentGroup = new ArrayList<>();
-        int lastY = -100;
-        
-        for (RowInfo row : rows) {
-            int y = row.rect.y();
-            // Start new group if Y differs by more than 20 pixels from last
-            if (y - lastY > 20 && !currentGroup.isEmpty()) {
-                yGroups.add(currentGroup);
-                currentGroup = new ArrayList<>();
-            }
-            currentGroup.add(row);
-            lastY = y;
-        }
-        if (!currentGroup.isEmpty()) {
-            yGroups.add(currentGroup);
-        }
-        
-        // Convert to map for compatibility
-        Map<Integer, List<RowInfo>> rowsByY = new HashMap<>();
-        for (List<RowInfo> group : yGroups) {
-            int avgY = (int) group.stream().mapToInt(r -> r.rect.y()).average().orElse(0);
-            rowsByY.put(avgY, group);
-        }
-        
-        List<Integer> sortedYKeys = new ArrayList<>(rowsByY.keySet());
-        sortedYKeys.sort(Integer::compareTo);
-        
-        System.out.println("  Grouped into " + sortedYKeys.size() + " Y-levels");
+    private void mapRowsToQuestions(List<RowInfo> rows, BubbleSampler sampler,
+                                   Result result, int imageWidth) {
+        double colWidth = imageWidth / (double) columns;
         
         int globalRowIndex = 0;
-        for (int yKey : sortedYKeys) {
-            List<RowInfo> rowGroup = rowsByY.get(yKey);
+        int groupStart = 0;
+        while (groupStart < rows.size() && globalRowIndex < rowsPerColumn) {
+            int groupEnd = groupStart + 1;
+            while (groupEnd < rows.size()
+                    && rows.get(groupEnd).rect.y() - rows.get(groupEnd - 1).rect.y() <= 20) {
+                groupEnd++;
+            }
             
             // Sort by X position (left to right = column 0 to 3)
-            rowGroup.sort(Comparator.comparingInt(r -> r.rect.x()));
-            
-            System.out.println("    Y-level " + yKey + ": " + rowGroup.size() + " rows at X positions: " +
-                rowGroup.stream().map(r -> String.valueOf(r.rect.x())).collect(java.util.stream.Collectors.joining(", ")));
+            List<RowInfo> rowGroup = rows.subList(groupStart, groupEnd);
+            rowGroup.sort(BY_X);
+            if (saveDebugImages) {
+                System.out.println("    Y-level " + rowGroup.get(0).rect.y() + ": " + rowGroup.size() + " rows");
+            }
             
             // Assign to columns based on X position
             for (RowInfo row : rowGroup) {
-                // Determine column from X position
                 int col = (int)(row.rect.x() / colWidth);
-                if (col >= COLUMNS) col = COLUMNS - 1;
+                if (col >= columns) col = columns - 1;
                 if (col < 0) col = 0;
                 
                 row.colIndex = col;
                 row.rowIndex = globalRowIndex;
                 
-                if (globalRowIndex <= 2 && rowGroup.size() >= 2) {
-                    System.out.println("      DEBUG: row at X=" + row.rect.x() + 
-                        ", colWidth=" + String.format("%.0f", colWidth) + 
-                        ", calculated col=" + col);
-                }
-                
                 // Extract answer from this row
-                String answer = detectAnswerInRow(binaryImage, row.rect);
+                String answer = detectAnswerInRow(sampler, row.rect);
                 
-                int qNum = col * ROWS_PER_COLUMN + globalRowIndex + 1;
-                if (qNum <= 17) {
+                int qNum = col * rowsPerColumn + globalRowIndex + 1;
+                if (saveDebugImages) {
                     System.out.println("      " + row + " answer=" + (answer != null ? answer : "null") + " → Q" + qNum);
                 }
                 
                 // Always set the answer (even if null) for all valid question numbers
-                if (qNum >= 1 && qNum <= 60) {
+                if (qNum >= 1 && qNum <= result.answers.length) {
+                    result.rowRects[(qNum - 1) * 4] = row.rect.x();
+                    result.rowRects[(qNum - 1) * 4 + 1] = row.rect.y();
+                    result.rowRects[(qNum - 1) * 4 + 2] = row.rect.width();
+                    result.rowRects[(qNum - 1) * 4 + 3] = row.rect.height();
                     result.answers[qNum - 1] = answer;
                     if (answer != null) {
                         result.confidences[qNum - 1] = 0.9;
@@ -294,7 +328,24 @@ public class RowBasedAnswerExtractor {
             }
             
             globalRowIndex++;
-            if (globalRowIndex >= ROWS_PER_COLUMN) break;
+            groupStart = groupEnd;
+        }
+    }
+
+    /**
+     * Read every question from template row rectangles (x, y, w, h per question).
+     */
+    private void extractWithTemplate(int[] rects, BubbleSampler sampler, Result result) {
+        for (int q = 0; q < result.answers.length; q++) {
+            int i = q * 4;
+            String answer = detectAnswerInRow(sampler, rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+            result.answers[q] = answer;
+            if (answer != null) {
+                result.confidences[q] = 0.9;
+                result.detectedCount++;
+            } else {
+                result.confidences[q] = 0.0;
+            }
         }
     }
 
@@ -304,13 +355,12 @@ public class RowBasedAnswerExtractor {
      * Approach: Try multiple alignments and pick the one with the clearest winner.
      * This handles slight drift in row rectangles across the page.
      */
-    private String detectAnswerInRow(Mat binaryImage, Rect rowRect) {
-        // Extract the row region
-        Mat rowRegion = binaryImage.apply(rowRect);
-        
-        int rowWidth = rowRect.width();
-        int rowHeight = rowRect.height();
-        
+    private String detectAnswerInRow(BubbleSampler sampler, Rect rowRect) {
+        return detectAnswerInRow(sampler, rowRect.x(), rowRect.y(), rowRect.width(), rowRect.height());
+    }
+
+    private String detectAnswerInRow(BubbleSampler sampler, int rowX, int rowY, int rowWidth, int rowHeight) {
+
         // Sample vertical center (avoid row borders)
         int padY = rowHeight / 4;
         int sampleStartY = padY;
@@ -319,14 +369,8 @@ public class RowBasedAnswerExtractor {
         
         // For narrower rows (columns 1-3), use different ratios
         // Columns 1-3 have less space for question numbers, so bubbles start earlier
-        double[] qNumRatios;
-        if (rowWidth < 200) {
-            // Narrower rows (columns 1-3) - bubbles start earlier
-            qNumRatios = new double[]{0.05, 0.08, 0.10, 0.12};
-        } else {
-            // Wider rows (column 0) - has question number area
-            qNumRatios = new double[]{0.08, 0.10, 0.12, 0.14};
-        }
+        double[] qNumRatios = rowWidth < 200 ? NARROW_ROW_OFFSETS : WIDE_ROW_OFFSETS;
+        int[] counts = choiceCounts;
         
         double bestOverallRatio = 0;
         int bestOverallChoice = -1;
@@ -335,13 +379,13 @@ public class RowBasedAnswerExtractor {
         for (double qNumRatio : qNumRatios) {
             int bubbleAreaStart = (int)(rowWidth * qNumRatio);
             int bubbleAreaWidth = rowWidth - bubbleAreaStart;
-            int sectionWidth = bubbleAreaWidth / CHOICES;
+            int sectionWidth = bubbleAreaWidth / choices;
             
-            int[] counts = new int[CHOICES];
+            Arrays.fill(counts, 0);
             int maxCount = 0;
             int bestChoice = -1;
             
-            for (int choice = 0; choice < CHOICES; choice++) {
+            for (int choice = 0; choice < choices; choice++) {
                 int sectionStartX = bubbleAreaStart + (choice * sectionWidth);
                 
                 // Sample center of each section
@@ -355,23 +399,18 @@ public class RowBasedAnswerExtractor {
                 }
                 if (sampleWidth <= 0) continue;
                 
-                Rect sampleRect = new Rect(sampleStartX, sampleStartY, sampleWidth, sampleHeight);
-                Mat sampleRegion = rowRegion.apply(sampleRect);
-                
-                int whitePixels = countNonZero(sampleRegion);
+                int whitePixels = sampler.count(rowX + sampleStartX, rowY + sampleStartY, sampleWidth, sampleHeight);
                 counts[choice] = whitePixels;
                 
                 if (whitePixels > maxCount) {
                     maxCount = whitePixels;
                     bestChoice = choice;
                 }
-                
-                sampleRegion.release();
             }
             
             // Find second best for this alignment
             int secondBest = 0;
-            for (int i = 0; i < CHOICES; i++) {
+            for (int i = 0; i < choices; i++) {
                 if (i != bestChoice && counts[i] > secondBest) {
                     secondBest = counts[i];
                 }
@@ -388,8 +427,6 @@ public class RowBasedAnswerExtractor {
             }
         }
         
-        rowRegion.release();
-        
         if (bestOverallChoice < 0) return null;
         
         // Require clear winner with minimum pixel count
@@ -408,96 +445,16 @@ public class RowBasedAnswerExtractor {
         }
         
         if (bestOverallRatio > minRatio && bestOverallMax > minPixelsStrong) {
-            return CHOICE_LABELS[bestOverallChoice];
+            return choiceLabels[bestOverallChoice];
         }
         
         if (bestOverallRatio > minRatioWeak && bestOverallMax > minPixels) {
-            return CHOICE_LABELS[bestOverallChoice];
+            return choiceLabels[bestOverallChoice];
         }
         
         return null;
     }
     
-    /**
-     * Fallback method: sample expected bubble positions.
-     * Uses calibrated positions if available.
-     */
-    private String detectAnswerBySampling(Mat binaryImage, Rect rowRect) {
-        Mat rowRegion = binaryImage.apply(rowRect);
-        int rowWidth = rowRect.width();
-        int rowHeight = rowRect.height();
-        
-        double qNumRatio;
-        double[] bubblePos;
-        
-        // Use calibrated positions if available
-        if (calibrator.isCalibrated()) {
-            qNumRatio = calibrator.getQuestionNumberRatio();
-            bubblePos = calibrator.getBubblePositions();
-        } else {
-            // Default positions
-            qNumRatio = 0.30;
-            bubblePos = new double[]{0.125, 0.375, 0.625, 0.875};
-        }
-        
-        int bubbleAreaStart = (int)(rowWidth * qNumRatio);
-        int bubbleAreaWidth = rowWidth - bubbleAreaStart;
-        
-        int padY = rowHeight / 5;
-        int sampleH = rowHeight - 2 * padY;
-        int sampleY = padY;
-        int sampleSize = Math.min(bubbleAreaWidth / 6, sampleH);  // Sample size based on bubble area
-        
-        double[] fillRatios = new double[CHOICES];
-        
-        for (int choice = 0; choice < CHOICES; choice++) {
-            // Calculate bubble center using calibrated position
-            int bubbleCenterX = bubbleAreaStart + (int)(bubbleAreaWidth * bubblePos[choice]);
-            
-            int sampleX = bubbleCenterX - sampleSize / 2;
-            if (sampleX < 0) sampleX = 0;
-            if (sampleX + sampleSize > rowWidth) sampleSize = rowWidth - sampleX;
-            if (sampleSize <= 0 || sampleH <= 0) continue;
-            
-            Rect sampleRect = new Rect(sampleX, sampleY, sampleSize, sampleH);
-            Mat sampleRegion = rowRegion.apply(sampleRect);
-            
-            int whitePixels = countNonZero(sampleRegion);
-            int totalPixels = sampleSize * sampleH;
-            double fillRatio = (double) whitePixels / totalPixels;
-            fillRatios[choice] = fillRatio;
-        }
-        
-        rowRegion.release();
-        
-        // Find best choice
-        int bestIndex = -1;
-        double bestFill = 0;
-        for (int i = 0; i < CHOICES; i++) {
-            if (fillRatios[i] > bestFill) {
-                bestFill = fillRatios[i];
-                bestIndex = i;
-            }
-        }
-        
-        if (bestIndex < 0) return null;
-        
-        // Find second best
-        double secondBest = 0;
-        for (int i = 0; i < CHOICES; i++) {
-            if (i != bestIndex && fillRatios[i] > secondBest) {
-                secondBest = fillRatios[i];
-            }
-        }
-        
-        // Return if best is significantly higher than second
-        if (bestFill > fillThreshold * 0.7 && bestFill > secondBest * 1.15) {
-            return CHOICE_LABELS[bestIndex];
-        }
-        
-        return null;
-    }
-
     /**
      * Save debug visualization.
      */
@@ -514,7 +471,7 @@ public class RowBasedAnswerExtractor {
             
             // Draw label
             if (row.rowIndex >= 0) {
-                int qNum = row.colIndex * ROWS_PER_COLUMN + row.rowIndex + 1;
+                int qNum = row.colIndex * rowsPerColumn + row.rowIndex + 1;
                 String label = "Q" + qNum + ":" + (result.answers[qNum - 1] != null ? result.answers[qNum - 1] : "-");
                 putText(debug, label, new Point(row.rect.x() + 5, row.rect.y() + 15),
                     FONT_HERSHEY_SIMPLEX, 0.4, new Scalar(255, 255, 0, 0), 1, LINE_AA, false);
@@ -525,10 +482,113 @@ public class RowBasedAnswerExtractor {
         debug.release();
     }
 
+    /**
+     * Clear per-sheet state (debug settings) so the extractor can be reused
+     * for the next sheet. Nothing learned from a sheet is kept, so the result
+     * of a sheet does not depend on the sheets read before it.
+     */
+    public void reset() {
+        saveDebugImages = false;
+        debugOutputDir = "output";
+    }
+
+    public int getTemplateHits() { return templateHits; }
+    public int getTemplateMisses() { return templateMisses; }
+
+    // =========================================
+    // Row Template
+    // =========================================
+
+    /**
+     * Row rectangles of all questions, relative to the answer section size.
+     *
+     * After deskewing, every answer section shows the same printed grid, so the
+     * row boxes from the layout only need a check that the row borders
+     * are where the template puts them. {@link #fit} looks
+     * for the top, bottom, left and right border of each row with the sampler,
+     * first at the template position and then at small shifts, and gives up
+     * (returning false) unless nearly all rows match at one offset.
+     */
+    private static class RowTemplate {
+        final double[] rects;   // x, y, w, h per question, as fractions of the section size
+
+        RowTemplate(double[] rects) {
+            this.rects = rects;
+        }
+
+        /**
+         * Place the template on a section of the given size.
+         *
+         * @param placed Receives x, y, w, h per question in pixels (zeros if no match)
+         * @return false if the borders do not match
+         */
+        boolean fit(BubbleSampler sampler, int width, int height, int[] placed) {
+            // Borders are found anywhere on a section that is mostly marked
+            if (sampler.fillRatio(0, 0, width, height) > TEMPLATE_MAX_INK) return false;
+
+            for (int i = 0; i < rects.length; i += 4) {
+                placed[i] = (int) Math.round(rects[i] * width);
+                placed[i + 1] = (int) Math.round(rects[i + 1] * height);
+                placed[i + 2] = (int) Math.round(rects[i + 2] * width);
+                placed[i + 3] = (int) Math.round(rects[i + 3] * height);
+            }
+
+            int rows = rects.length / 4;
+            int required = (int) Math.ceil(rows * TEMPLATE_MIN_ROWS);
+            int bestDx = 0, bestDy = 0;
+            int bestRows = matchingRows(sampler, placed, 0, 0);
+            for (int dy = -TEMPLATE_MAX_SHIFT; dy <= TEMPLATE_MAX_SHIFT && bestRows < rows; dy++) {
+                for (int dx = -TEMPLATE_MAX_SHIFT; dx <= TEMPLATE_MAX_SHIFT && bestRows < rows; dx++) {
+                    int matching = matchingRows(sampler, placed, dx, dy);
+                    if (matching > bestRows) {
+                        bestRows = matching;
+                        bestDx = dx;
+                        bestDy = dy;
+                    }
+                }
+            }
+            if (bestRows < required) {
+                Arrays.fill(placed, 0);
+                return false;
+            }
+
+            for (int i = 0; i < placed.length; i += 4) {
+                placed[i] += bestDx;
+                placed[i + 1] += bestDy;
+            }
+            return true;
+        }
+
+        /**
+         * Number of rows whose four borders are all marked at the given offset.
+         */
+        private static int matchingRows(BubbleSampler sampler, int[] placed, int dx, int dy) {
+            int matching = 0;
+            for (int i = 0; i < placed.length; i += 4) {
+                int x = placed[i] + dx, y = placed[i + 1] + dy;
+                int w = placed[i + 2], h = placed[i + 3];
+                // Bands 5 px thick over the middle of each border line
+                int spanX = w * 3 / 4, spanY = h / 2;
+                int bandX = x + w / 8, bandY = y + h / 4;
+                if (edgeMarked(sampler.count(bandX, y - 1, spanX, 5), spanX)
+                        && edgeMarked(sampler.count(bandX, y + h - 4, spanX, 5), spanX)
+                        && edgeMarked(sampler.count(x - 1, bandY, 5, spanY), spanY)
+                        && edgeMarked(sampler.count(x + w - 4, bandY, 5, spanY), spanY)) {
+                    matching++;
+                }
+            }
+            return matching;
+        }
+
+        private static boolean edgeMarked(int count, int length) {
+            return count >= length * TEMPLATE_EDGE_COVERAGE;
+        }
+    }
+
     // Setters
-    public void setFillThreshold(double threshold) { this.fillThreshold = threshold; }
     public void setSaveDebugImages(boolean save) { this.saveDebugImages = save; }
     public void setDebugOutputDir(String dir) { this.debugOutputDir = dir; }
+    public void setUseTemplate(boolean use) { this.useTemplate = use; }
 }
 
 
@@ -0,0 +1,146 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * A {@link SheetLayout} compiled for processing: the row box of every
+ * question and the bubble rectangles inside a row box, computed once as
+ * fractions of their section. The layout's ID grids are not compiled;
+ * IDs are entered by hand (see {@link OMRSheetProcessor}).
+ *
+ * Plans are immutable and shared by all processing threads; placing them on
+ * a section of a given size is a multiply per coordinate. Get them from
+ * {@link SheetLayouts}, which compiles each layout once.
+ */
+public final class SamplingPlan {
+
+    private final String layoutId;
+    private final String layoutName;
+    private final String fingerprint;
+    private final int columns;
+    private final int rowsPerColumn;
+    private final String[] choiceLabels;
+    private final double[] answerRegion;
+    private final double[] rows;        // x, y, w, h per question, fractions of the answer section
+    private final double[] bubblesInBox; // x, y, w, h per choice, fractions of the row box
+
+    private SamplingPlan(SheetLayout layout) {
+        layoutId = layout.id;
+        layoutName = layout.name;
+        fingerprint = fingerprint(layout);
+        columns = layout.columns;
+        rowsPerColumn = layout.rowsPerColumn;
+        choiceLabels = layout.choiceLabels.clone();
+        answerRegion = layout.answerRegion.clone();
+
+        int questions = layout.getQuestionCount();
+        int choices = choiceLabels.length;
+        rows = new double[questions * 4];
+        double boxW = layout.boxSize[0], boxH = layout.boxSize[1];
+
+        bubblesInBox = new double[choices * 4];
+        for (int choice = 0; choice < choices; choice++) {
+            double centerX = layout.labelWidth + (1 - layout.labelWidth) / choices * (choice + 0.5);
+            bubblesInBox[choice * 4] = centerX - layout.bubbleSize[0] / 2;
+            bubblesInBox[choice * 4 + 1] = (1 - layout.bubbleSize[1]) / 2;
+            bubblesInBox[choice * 4 + 2] = layout.bubbleSize[0];
+            bubblesInBox[choice * 4 + 3] = layout.bubbleSize[1];
+        }
+
+        for (int q = 0; q < questions; q++) {
+            double boxX = layout.firstBox[0] + (q / rowsPerColumn) * layout.pitch[0];
+            double boxY = layout.firstBox[1] + (q % rowsPerColumn) * layout.pitch[1];
+            rows[q * 4] = boxX;
+            rows[q * 4 + 1] = boxY;
+            rows[q * 4 + 2] = boxW;
+            rows[q * 4 + 3] = boxH;
+        }
+    }
+
+    /**
+     * Compile a validated layout.
+     */
+    public static SamplingPlan compile(SheetLayout layout) {
+        layout.validate();
+        return new SamplingPlan(layout);
+    }
+
+    // =========================================
+    // Layout Information
+    // =========================================
+
+    public String getLayoutId() { return layoutId; }
+    public String getLayoutName() { return layoutName; }
+    public int getQuestionCount() { return columns * rowsPerColumn; }
+    public int getColumns() { return columns; }
+    public int getRowsPerColumn() { return rowsPerColumn; }
+    public int getChoiceCount() { return choiceLabels.length; }
+    public String getChoiceLabel(int choice) { return choiceLabels[choice]; }
+
+    /**
+     * Identifies the layout and all of its values, e.g. for content hashes of
+     * results that depend on the layout.
+     */
+    public String getFingerprint() { return fingerprint; }
+
+    // =========================================
+    // Placement
+    // =========================================
+
+    /**
+     * Row box rectangles (x, y, w, h per question) as fractions of the answer section.
+     */
+    public double[] getRowFractions() {
+        return rows.clone();
+    }
+
+    /**
+     * Answer section rectangle (x, y, w, h) on a deskewed page of the given size.
+     */
+    public int[] placeAnswerRegion(int pageWidth, int pageHeight) {
+        return place(answerRegion, 0, pageWidth, pageHeight, new int[4]);
+    }
+
+    /**
+     * Row box of a question on an answer section of the given size.
+     *
+     * @param out Receives x, y, w, h in pixels
+     */
+    public int[] placeRow(int question, int sectionWidth, int sectionHeight, int[] out) {
+        return place(rows, question * 4, sectionWidth, sectionHeight, out);
+    }
+
+    /**
+     * Rectangle of a choice bubble inside a row box found on the sheet.
+     *
+     * @param out Receives x, y, w, h in pixels
+     */
+    public int[] placeBubbleInRow(int choice, int rowX, int rowY, int rowW, int rowH, int[] out) {
+        int i = choice * 4;
+        out[0] = rowX + (int) Math.round(bubblesInBox[i] * rowW);
+        out[1] = rowY + (int) Math.round(bubblesInBox[i + 1] * rowH);
+        out[2] = Math.max(1, (int) Math.round(bubblesInBox[i + 2] * rowW));
+        out[3] = Math.max(1, (int) Math.round(bubblesInBox[i + 3] * rowH));
+        return out;
+    }
+
+    private static int[] place(double[] fractions, int offset, int width, int height, int[] out) {
+        out[0] = (int) Math.round(fractions[offset] * width);
+        out[1] = (int) Math.round(fractions[offset + 1] * height);
+        out[2] = Math.max(1, (int) Math.round(fractions[offset + 2] * width));
+        out[3] = Math.max(1, (int) Math.round(fractions[offset + 3] * height));
+        return out;
+    }
+
+    private static String fingerprint(SheetLayout layout) {
+        // Sorted so the same values always give the same fingerprint
+        StringBuilder canonical = new StringBuilder();
+        new TreeMap<>(layout.toProperties()).forEach((key, value) ->
+            canonical.append(key).append('=').append(value).append('\n'));
+        CRC32 crc = new CRC32();
+        crc.update(canonical.toString().getBytes(StandardCharsets.UTF_8));
+        return layout.id + "@" + String.format("%08x", crc.getValue());
+    }
+}
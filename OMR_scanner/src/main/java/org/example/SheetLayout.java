@@ -0,0 +1,277 @@
+package org.example;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Definition of a sheet layout, read from a {@code .properties} file.
+ *
+ * A layout describes the printed form: where the answer and ID sections are on
+ * the deskewed page, how the question rows are laid out inside the answer
+ * section, and the ID digit grids. All positions are fractions, so the same
+ * file works at any processing resolution:
+ * <pre>
+ * id=standard-60
+ * name=Standard 60 questions
+ * # Regions of the deskewed page: x, y, width, height
+ * region.answers=0.02,0.315,0.96,0.635
+ * region.id=0.03,0.08,0.65,0.18
+ * # Answer grid, relative to the answer section. Questions are numbered
+ * # down each column; first = top-left corner of question 1's row box,
+ * # pitch = distance between columns and rows, labelWidth = part of the
+ * # box holding the question number, bubble = size relative to the box
+ * answers.columns=4
+ * answers.rows=15
+ * answers.choices=A,B,C,D
+ * answers.first=0.0498,0.0778
+ * answers.pitch=0.2386,0.05875
+ * answers.box=0.2064,0.0443
+ * answers.labelWidth=0.10
+ * answers.bubble=0.113,0.61
+ * # ID grids, relative to the page: one column per digit, one row per value;
+ * # first = center of the first bubble
+ * id.grids=student,test
+ * id.student.digits=10
+ * id.student.values=1,2,3,4,5,6,7,8,9,0
+ * id.student.first=0.09,0.1143
+ * id.student.pitch=0.04,0.01857
+ * id.student.bubble=0.018,0.0129
+ * </pre>
+ *
+ * Layouts are compiled into a {@link SamplingPlan} for processing; use
+ * {@link SheetLayouts} to get the cached plan for a layout id.
+ */
+public class SheetLayout {
+
+    public String id;
+    public String name;
+
+    // Regions of the deskewed page (x, y, width, height)
+    public double[] answerRegion;
+    public double[] idRegion;
+
+    // Answer grid, relative to the answer section
+    public int columns;
+    public int rowsPerColumn;
+    public String[] choiceLabels;
+    public double[] firstBox;       // x, y
+    public double[] pitch;          // column, row
+    public double[] boxSize;        // width, height
+    public double labelWidth;
+    public double[] bubbleSize;     // width, height relative to the row box
+
+    public final List<IdGrid> idGrids = new ArrayList<>();
+
+    /**
+     * A grid of digit bubbles (Student ID, Test ID), relative to the page.
+     */
+    public static class IdGrid {
+        public String name;
+        public int digits;
+        public String[] values;
+        public double[] first;      // center of the first bubble
+        public double[] pitch;      // column, row
+        public double[] bubbleSize; // width, height
+    }
+
+    public int getQuestionCount() {
+        return columns * rowsPerColumn;
+    }
+
+    // =========================================
+    // Loading and Saving
+    // =========================================
+
+    public static SheetLayout load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return load(in);
+        }
+    }
+
+    public static SheetLayout load(InputStream in) throws IOException {
+        Properties props = new Properties();
+        props.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+        return fromProperties(props);
+    }
+
+    /**
+     * Parse and validate a layout.
+     *
+     * @throws IllegalArgumentException for a missing or invalid value
+     */
+    public static SheetLayout fromProperties(Properties props) {
+        SheetLayout layout = new SheetLayout();
+        layout.id = required(props, "id");
+        layout.name = props.getProperty("name", layout.id).trim();
+        layout.answerRegion = numbers(props, "region.answers", 4);
+        layout.idRegion = props.containsKey("region.id") ? numbers(props, "region.id", 4) : null;
+
+        layout.columns = integer(props, "answers.columns");
+        layout.rowsPerColumn = integer(props, "answers.rows");
+        layout.choiceLabels = labels(props, "answers.choices");
+        layout.firstBox = numbers(props, "answers.first", 2);
+        layout.pitch = numbers(props, "answers.pitch", 2);
+        layout.boxSize = numbers(props, "answers.box", 2);
+        layout.labelWidth = numbers(props, "answers.labelWidth", 1)[0];
+        layout.bubbleSize = numbers(props, "answers.bubble", 2);
+
+        String grids = props.getProperty("id.grids", "").trim();
+        if (!grids.isEmpty()) {
+            for (String gridName : grids.split(",")) {
+                String prefix = "id." + gridName.trim() + ".";
+                IdGrid grid = new IdGrid();
+                grid.name = gridName.trim();
+                grid.digits = integer(props, prefix + "digits");
+                grid.values = labels(props, prefix + "values");
+                grid.first = numbers(props, prefix + "first", 2);
+                grid.pitch = numbers(props, prefix + "pitch", 2);
+                grid.bubbleSize = numbers(props, prefix + "bubble", 2);
+                layout.idGrids.add(grid);
+            }
+        }
+
+        layout.validate();
+        return layout;
+    }
+
+    /**
+     * Write the layout in the format read by {@link #load}.
+     */
+    public void store(File file) throws IOException {
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            toProperties().store(writer, "OMR sheet layout: " + name);
+        }
+    }
+
+    public Properties toProperties() {
+        Properties props = new Properties();
+        props.setProperty("id", id);
+        props.setProperty("name", name);
+        props.setProperty("region.answers", join(answerRegion));
+        if (idRegion != null) props.setProperty("region.id", join(idRegion));
+        props.setProperty("answers.columns", String.valueOf(columns));
+        props.setProperty("answers.rows", String.valueOf(rowsPerColumn));
+        props.setProperty("answers.choices", String.join(",", choiceLabels));
+        props.setProperty("answers.first", join(firstBox));
+        props.setProperty("answers.pitch", join(pitch));
+        props.setProperty("answers.box", join(boxSize));
+        props.setProperty("answers.labelWidth", join(new double[] {labelWidth}));
+        props.setProperty("answers.bubble", join(bubbleSize));
+        if (!idGrids.isEmpty()) {
+            List<String> names = new ArrayList<>();
+            for (IdGrid grid : idGrids) {
+                String prefix = "id." + grid.name + ".";
+                names.add(grid.name);
+                props.setProperty(prefix + "digits", String.valueOf(grid.digits));
+                props.setProperty(prefix + "values", String.join(",", grid.values));
+                props.setProperty(prefix + "first", join(grid.first));
+                props.setProperty(prefix + "pitch", join(grid.pitch));
+                props.setProperty(prefix + "bubble", join(grid.bubbleSize));
+            }
+            props.setProperty("id.grids", String.join(",", names));
+        }
+        return props;
+    }
+
+    // =========================================
+    // Validation
+    // =========================================
+
+    /**
+     * @throws IllegalArgumentException if the grid is empty or does not fit its section
+     */
+    public void validate() {
+        if (id == null || !id.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Invalid layout id: " + id);
+        }
+        if (columns < 1 || rowsPerColumn < 1) {
+            throw new IllegalArgumentException("Layout " + id + " has no questions");
+        }
+        if (getQuestionCount() > 0xFFFF) {
+            throw new IllegalArgumentException("Layout " + id + " has too many questions: " + getQuestionCount());
+        }
+        // Stored answers are coded A-D (see PackedAnswers)
+        List<String> labels = Arrays.asList(choiceLabels);
+        if (labels.size() < 2 || labels.size() > 4 || new HashSet<>(labels).size() != labels.size()
+                || !List.of("A", "B", "C", "D").containsAll(labels)) {
+            throw new IllegalArgumentException("Layout " + id + ": answers.choices must be 2 to 4 distinct of A, B, C, D");
+        }
+        if (labelWidth < 0 || labelWidth >= 1) {
+            throw new IllegalArgumentException("Layout " + id + ": answers.labelWidth must be in [0, 1)");
+        }
+        checkRegion(answerRegion, "region.answers");
+        if (idRegion != null) checkRegion(idRegion, "region.id");
+
+        double right = firstBox[0] + (columns - 1) * pitch[0] + boxSize[0];
+        double bottom = firstBox[1] + (rowsPerColumn - 1) * pitch[1] + boxSize[1];
+        if (firstBox[0] < 0 || firstBox[1] < 0 || right > 1 || bottom > 1) {
+            throw new IllegalArgumentException("Layout " + id + ": answer grid does not fit the answer section");
+        }
+        for (IdGrid grid : idGrids) {
+            if (grid.digits < 1 || grid.values.length < 2) {
+                throw new IllegalArgumentException("Layout " + id + ": ID grid " + grid.name + " is empty");
+            }
+        }
+    }
+
+    private void checkRegion(double[] region, String key) {
+        if (region[0] < 0 || region[1] < 0 || region[2] <= 0 || region[3] <= 0
+                || region[0] + region[2] > 1 || region[1] + region[3] > 1) {
+            throw new IllegalArgumentException("Layout " + id + ": " + key + " is outside the page");
+        }
+    }
+
+    // =========================================
+    // Private Helper Methods
+    // =========================================
+
+    private static String required(Properties props, String key) {
+        String value = props.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Missing layout property: " + key);
+        }
+        return value.trim();
+    }
+
+    private static int integer(Properties props, String key) {
+        String value = required(props, key);
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value);
+        }
+    }
+
+    private static double[] numbers(Properties props, String key, int count) {
+        String[] parts = required(props, key).split(",");
+        if (parts.length != count) {
+            throw new IllegalArgumentException(key + " needs " + count + " values");
+        }
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            try {
+                values[i] = Double.parseDouble(parts[i].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid number for " + key + ": " + parts[i].trim());
+            }
+        }
+        return values;
+    }
+
+    private static String[] labels(Properties props, String key) {
+        String[] labels = required(props, key).split(",");
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = labels[i].trim();
+        }
+        return labels;
+    }
+
+    private static String join(double[] values) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (double value : values) {
+            joiner.add(String.valueOf(value));
+        }
+        return joiner.toString();
+    }
+}
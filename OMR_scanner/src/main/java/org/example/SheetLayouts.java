@@ -0,0 +1,147 @@
+package org.example;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of compiled {@link SamplingPlan}s by layout id, and the layout used
+ * for processing when none is chosen explicitly.
+ *
+ * A layout id is looked up as {@code <id>.properties} in the layout directory
+ * ({@code layouts/} in the working directory), then among the layouts bundled
+ * with the application ({@code /layouts/} on the classpath). Each layout is
+ * parsed and compiled on first use; later lookups return the same plan, so
+ * switching between forms costs nothing per sheet.
+ */
+public class SheetLayouts {
+
+    public static final String DEFAULT_LAYOUT_ID = "standard-60";
+
+    private static final String RESOURCE_DIR = "/layouts/";
+    private static final String EXTENSION = ".properties";
+
+    private static SheetLayouts instance;
+
+    private final Map<String, SamplingPlan> plans = new ConcurrentHashMap<>();
+    private volatile File layoutDirectory = new File("layouts");
+    private volatile SamplingPlan defaultPlan;
+
+    private SheetLayouts() {
+    }
+
+    public static synchronized SheetLayouts getInstance() {
+        if (instance == null) {
+            instance = new SheetLayouts();
+        }
+        return instance;
+    }
+
+    // =========================================
+    // Plans
+    // =========================================
+
+    /**
+     * The compiled plan for a layout id, loading the layout on first use.
+     *
+     * @throws IOException if the layout cannot be found or read
+     * @throws IllegalArgumentException if the layout file is invalid
+     */
+    public SamplingPlan getPlan(String layoutId) throws IOException {
+        SamplingPlan plan = plans.get(layoutId);
+        if (plan != null) return plan;
+
+        SheetLayout layout = findLayout(layoutId);
+        if (!layoutId.equals(layout.id)) {
+            throw new IllegalArgumentException("Layout file for " + layoutId + " declares id " + layout.id);
+        }
+        // Another thread may have compiled it meanwhile; keep the first
+        return plans.computeIfAbsent(layoutId, id -> SamplingPlan.compile(layout));
+    }
+
+    /**
+     * Load a layout file and cache its plan, replacing an earlier plan with the same id.
+     */
+    public SamplingPlan load(File file) throws IOException {
+        return register(SheetLayout.load(file));
+    }
+
+    /**
+     * Compile a layout and cache its plan, replacing an earlier plan with the same id.
+     */
+    public SamplingPlan register(SheetLayout layout) {
+        SamplingPlan plan = SamplingPlan.compile(layout);
+        plans.put(plan.getLayoutId(), plan);
+        SamplingPlan current = defaultPlan;
+        if (current != null && current.getLayoutId().equals(plan.getLayoutId())) {
+            defaultPlan = plan;
+        }
+        System.out.println("✓ Layout " + plan.getLayoutId() + ": " + plan.getQuestionCount() +
+            " questions, " + plan.getChoiceCount() + " choices");
+        return plan;
+    }
+
+    // =========================================
+    // Default Layout
+    // =========================================
+
+    /**
+     * The plan processors use unless they are given one.
+     */
+    public SamplingPlan getDefaultPlan() {
+        SamplingPlan plan = defaultPlan;
+        if (plan == null) {
+            try {
+                plan = getPlan(DEFAULT_LAYOUT_ID);
+            } catch (IOException e) {
+                throw new IllegalStateException("Bundled layout " + DEFAULT_LAYOUT_ID + " is missing", e);
+            }
+            defaultPlan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Choose the default layout by id, or by path for a layout file.
+     *
+     * @return The plan now used by default
+     */
+    public SamplingPlan setDefaultLayout(String layoutIdOrFile) throws IOException {
+        SamplingPlan plan = resolve(layoutIdOrFile);
+        defaultPlan = plan;
+        return plan;
+    }
+
+    /**
+     * Plan of a layout given by id, or by path for a layout file.
+     */
+    public SamplingPlan resolve(String layoutIdOrFile) throws IOException {
+        File file = new File(layoutIdOrFile);
+        return file.isFile() ? load(file) : getPlan(layoutIdOrFile);
+    }
+
+    public void setLayoutDirectory(File directory) { this.layoutDirectory = directory; }
+    public File getLayoutDirectory() { return layoutDirectory; }
+
+    // =========================================
+    // Private Helper Methods
+    // =========================================
+
+    private SheetLayout findLayout(String layoutId) throws IOException {
+        if (!layoutId.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Invalid layout id: " + layoutId);
+        }
+        File file = new File(layoutDirectory, layoutId + EXTENSION);
+        if (file.isFile()) {
+            return SheetLayout.load(file);
+        }
+        try (InputStream in = SheetLayouts.class.getResourceAsStream(RESOURCE_DIR + layoutId + EXTENSION)) {
+            if (in == null) {
+                throw new IOException("Layout not found: " + layoutId);
+            }
+            return SheetLayout.load(in);
+        }
+    }
+}
@@ -39,6 +39,13 @@ public class StructuredAnswerExtractor {
      * Only detects solid white circles (filled answers).
      */
     public Result extract(Mat answerSection) {
+        return extract(answerSection, new BubbleSampler(answerSection));
+    }
+
+    /**
+     * Extract answers, measuring bubble fill with a sampler already loaded with answerSection.
+     */
+    public Result extract(Mat answerSection, BubbleSampler sampler) {
         Result result = new Result();
         
         int width = answerSection.cols();
@@ -80,7 +87,7 @@ public class StructuredAnswerExtractor {
                 int rowY = contentStartY + (int)(row * rowHeight);
                 
                 // Find marked answer in this row
-                RowResult rowResult = analyzeRow(answerSection, colX, rowY, 
+                RowResult rowResult = analyzeRow(sampler, colX, rowY, 
                     (int)colWidth, (int)rowHeight, qNum);
                 
                 result.answers[qNum - 1] = rowResult.answer;
@@ -135,7 +142,7 @@ public class StructuredAnswerExtractor {
      * Analyze a single row to find the marked bubble.
      * Scans across the row to find regions with high white pixel density.
      */
-    private RowResult analyzeRow(Mat image, int colX, int rowY, int colWidth, int rowHeight, int qNum) {
+    private RowResult analyzeRow(BubbleSampler sampler, int colX, int rowY, int colWidth, int rowHeight, int qNum) {
         RowResult result = new RowResult();
         
         // Scan the bubble area of the row (excluding left margin for question number + borders)
@@ -165,16 +172,13 @@ public class StructuredAnswerExtractor {
             
             // Bounds check
             if (sampleX < 0) sampleX = 0;
-            if (sampleX + sampleSize > image.cols()) sampleSize = image.cols() - sampleX;
+            if (sampleX + sampleSize > sampler.getWidth()) sampleSize = sampler.getWidth() - sampleX;
             if (sampleY < 0) sampleY = 0;
-            if (sampleY + sampleSize > image.rows()) sampleSize = image.rows() - sampleY;
+            if (sampleY + sampleSize > sampler.getHeight()) sampleSize = sampler.getHeight() - sampleY;
             if (sampleSize <= 0) continue;
             
-            // Extract region and calculate fill ratio
-            Rect sampleRect = new Rect(sampleX, sampleY, sampleSize, sampleSize);
-            Mat sampleRegion = image.apply(sampleRect);
-            
-            int whitePixels = countNonZero(sampleRegion);
+            // Calculate fill ratio of the sample square
+            int whitePixels = sampler.count(sampleX, sampleY, sampleSize, sampleSize);
             int totalPixels = sampleSize * sampleSize;
             double fillRatio = (double) whitePixels / totalPixels;
             
@@ -0,0 +1,533 @@
+package org.example;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.bytedeco.opencv.global.opencv_core.*;
+import static org.bytedeco.opencv.global.opencv_imgcodecs.*;
+import static org.bytedeco.opencv.global.opencv_imgproc.*;
+
+/**
+ * Renders synthetic OMR sheets with known answers, for load and accuracy testing.
+ *
+ * Sheets follow the {@link OMRSheetConfig} layout: L-shaped fiducials at the
+ * page corners, square fiducials at the answer section corners, a 10-digit
+ * Student ID and 4-digit Test ID grid, and 60 questions with 4 bubbles each.
+ * Marks are random (including blank and double-marked questions), and each
+ * sheet can be distorted like a real scan: resolution, rotation, perspective,
+ * blur, sensor noise and partially erased marks.
+ *
+ * Every sheet is reproducible from its seed. {@link #generateTo} writes each
+ * image together with a ground-truth file of the same name ({@code .properties}).
+ *
+ * Usage: {@code SyntheticSheetGenerator <outputDir> <count> [--seed=N] [--dpi=N]
+ * [--rotation=DEG] [--perspective=FRACTION] [--blur=SIGMA] [--noise=STDDEV]
+ * [--erasures=PROBABILITY] [--format=png|jpg]}
+ */
+public class SyntheticSheetGenerator {
+
+    // =========================================
+    // Layout (page units; A4 page is 1080 x 1527)
+    // =========================================
+
+    private static final double PAGE_WIDTH = 1080;
+    private static final double PAGE_HEIGHT = 1527;
+    private static final double A4_WIDTH_INCHES = 8.27;
+
+    // Frame spanned by the centers of the L fiducials; maps onto the deskewed image
+    private static final double FRAME_X = 40;
+    private static final double FRAME_Y = 63;
+    private static final double FRAME_WIDTH = OMRSheetConfig.TARGET_WIDTH;
+    private static final double FRAME_HEIGHT = OMRSheetConfig.TARGET_HEIGHT;
+
+    private static final double L_SIZE = 60;
+    private static final double L_BAR = 18;
+    private static final double SQUARE_SIZE = 20;
+
+    // ID section (frame coordinates)
+    private static final double ID_TOP = 80;
+    private static final double ID_BOTTOM = 420;
+    private static final double ID_FIRST_ROW_Y = 160;
+    private static final double ID_ROW_PITCH = 26;
+    private static final double ID_COLUMN_PITCH = 40;
+    private static final double STUDENT_ID_X = 90;
+    private static final double TEST_ID_X = 590;
+    private static final double ID_BUBBLE_RADIUS = 9;
+
+    // Answer section: square fiducial centers (frame coordinates)
+    private static final double ANSWER_LEFT = 40;
+    private static final double ANSWER_RIGHT = 960;
+    private static final double ANSWER_TOP = 462;
+    private static final double ANSWER_BOTTOM = 1320;
+    private static final double FIRST_ROW_Y = 512;
+    private static final double ROW_PITCH = 53;
+    private static final double ROW_HEIGHT = 36;
+    private static final double COLUMN_PITCH = 230;
+    private static final double ROW_BOX_OFFSET = 28;
+    private static final double ROW_BOX_WIDTH = 195;
+    private static final double QUESTION_NUMBER_RATIO = 0.10;
+    private static final double BUBBLE_RADIUS = 11;
+
+    private static final String MULTIPLE = "MULTIPLE";
+
+    // =========================================
+    // Settings
+    // =========================================
+
+    private int dpi = 150;
+    private double maxRotationDegrees = 0;
+    private double maxPerspective = 0;      // Corner displacement as a fraction of the page width
+    private double blurSigma = 0;
+    private double noiseStdDev = 0;
+    private double erasureProbability = 0;  // Chance per question of an erased extra mark
+    private double blankProbability = 0.05;
+    private double multipleProbability = 0.02;
+    private String imageFormat = "png";
+
+    // =========================================
+    // Generation
+    // =========================================
+
+    /**
+     * Render one sheet. The same seed and settings always give the same sheet.
+     */
+    public GeneratedSheet generate(long seed) {
+        Random random = new Random(seed);
+        GroundTruth truth = randomTruth(random);
+        truth.seed = seed;
+        truth.dpi = dpi;
+
+        double scale = dpi * A4_WIDTH_INCHES / PAGE_WIDTH;
+        Mat page = render(truth, random, scale);
+
+        if (maxRotationDegrees > 0 || maxPerspective > 0) {
+            truth.rotationDegrees = (random.nextDouble() * 2 - 1) * maxRotationDegrees;
+            Mat warped = warpPage(page, truth.rotationDegrees, random);
+            page.release();
+            page = warped;
+        }
+        if (blurSigma > 0) {
+            GaussianBlur(page, page, new Size(0, 0), blurSigma);
+        }
+        if (noiseStdDev > 0) {
+            addNoise(page, random);
+        }
+
+        GeneratedSheet sheet = new GeneratedSheet();
+        sheet.image = page;
+        sheet.truth = truth;
+        return sheet;
+    }
+
+    /**
+     * Render {@code count} sheets into a directory, in parallel. Sheet {@code i}
+     * uses seed {@code firstSeed + i} and is written as {@code sheet_NNNNN.<format>}
+     * with its ground truth in {@code sheet_NNNNN.properties}.
+     *
+     * @return The written image files, in order
+     */
+    public List<File> generateTo(File outputDir, int count, long firstSeed) throws IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Cannot create output directory: " + outputDir);
+        }
+
+        File[] images = new File[count];
+        IntStream.range(0, count).parallel().forEach(i -> {
+            String name = String.format("sheet_%05d", i + 1);
+            File imageFile = new File(outputDir, name + "." + imageFormat);
+            NativeScope scope = new NativeScope();
+            try {
+                GeneratedSheet sheet = generate(firstSeed + i);
+                if (!imwrite(imageFile.getAbsolutePath(), sheet.image)) {
+                    throw new IllegalStateException("Failed to write " + imageFile);
+                }
+                sheet.truth.write(new File(outputDir, name + ".properties"));
+                sheet.release();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to write ground truth for " + imageFile, e);
+            } finally {
+                scope.close();
+            }
+            images[i] = imageFile;
+        });
+        return List.of(images);
+    }
+
+    // =========================================
+    // Rendering
+    // =========================================
+
+    private GroundTruth randomTruth(Random random) {
+        GroundTruth truth = new GroundTruth();
+        truth.studentId = randomDigits(random, OMRSheetConfig.STUDENT_ID_DIGITS);
+        truth.testId = randomDigits(random, OMRSheetConfig.TEST_ID_DIGITS);
+        for (int q = 0; q < OMRSheetConfig.TOTAL_QUESTIONS; q++) {
+            double roll = random.nextDouble();
+            if (roll < blankProbability) {
+                truth.answers[q] = "";
+            } else if (roll < blankProbability + multipleProbability) {
+                truth.answers[q] = MULTIPLE;
+            } else {
+                truth.answers[q] = OMRSheetConfig.CHOICE_LABELS[random.nextInt(OMRSheetConfig.CHOICES_PER_QUESTION)];
+            }
+        }
+        return truth;
+    }
+
+    private static String randomDigits(Random random, int count) {
+        StringBuilder digits = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            digits.append(random.nextInt(10));
+        }
+        return digits.toString();
+    }
+
+    private Mat render(GroundTruth truth, Random random, double scale) {
+        int width = (int) Math.round(PAGE_WIDTH * scale);
+        int height = (int) Math.round(PAGE_HEIGHT * scale);
+        int paper = 235 + random.nextInt(21);
+        Mat page = new Mat(height, width, CV_8UC1, new Scalar(paper));
+        Canvas canvas = new Canvas(page, scale);
+
+        drawPageFiducials(canvas);
+        drawIdSection(canvas, truth, random);
+        drawAnswerSection(canvas, truth, random);
+        return page;
+    }
+
+    private void drawPageFiducials(Canvas canvas) {
+        double[][] corners = {{0, 0, 1, 1}, {FRAME_WIDTH, 0, -1, 1}, {0, FRAME_HEIGHT, 1, -1}, {FRAME_WIDTH, FRAME_HEIGHT, -1, -1}};
+        for (double[] c : corners) {
+            // Outer corner of the L points away from the frame; its bounding box is centered on the frame corner
+            double outerX = FRAME_X + c[0] - c[2] * L_SIZE / 2;
+            double outerY = FRAME_Y + c[1] - c[3] * L_SIZE / 2;
+            canvas.fillRect(outerX, outerY, outerX + c[2] * L_SIZE, outerY + c[3] * L_BAR, 0);
+            canvas.fillRect(outerX, outerY, outerX + c[2] * L_BAR, outerY + c[3] * L_SIZE, 0);
+        }
+    }
+
+    private void drawIdSection(Canvas canvas, GroundTruth truth, Random random) {
+        canvas.strokeRect(FRAME_X + 30, FRAME_Y + ID_TOP, FRAME_X + FRAME_WIDTH - 30, FRAME_Y + ID_BOTTOM, 2, 0);
+        canvas.text("STUDENT ID", FRAME_X + STUDENT_ID_X - 10, FRAME_Y + ID_TOP + 40, 0.6);
+        canvas.text("TEST ID", FRAME_X + TEST_ID_X - 10, FRAME_Y + ID_TOP + 40, 0.6);
+
+        drawDigitGrid(canvas, FRAME_X + STUDENT_ID_X, truth.studentId, random);
+        drawDigitGrid(canvas, FRAME_X + TEST_ID_X, truth.testId, random);
+    }
+
+    private void drawDigitGrid(Canvas canvas, double left, String digits, Random random) {
+        for (int row = 0; row < OMRSheetConfig.STUDENT_ID_ROWS; row++) {
+            double y = FRAME_Y + ID_FIRST_ROW_Y + row * ID_ROW_PITCH;
+            canvas.text(OMRSheetConfig.getDigitLabel(row), left - 30, y + 5, 0.4);
+            for (int col = 0; col < digits.length(); col++) {
+                double x = left + col * ID_COLUMN_PITCH;
+                canvas.strokeCircle(x, y, ID_BUBBLE_RADIUS, 1.5, 0);
+                if (OMRSheetConfig.getDigitValue(row) == digits.charAt(col) - '0') {
+                    drawMark(canvas, x, y, ID_BUBBLE_RADIUS, random);
+                }
+            }
+        }
+    }
+
+    private void drawAnswerSection(Canvas canvas, GroundTruth truth, Random random) {
+        // Border around the section, with the square fiducials just inside it
+        canvas.strokeRect(FRAME_X + ANSWER_LEFT - 25, FRAME_Y + ANSWER_TOP - 25,
+            FRAME_X + ANSWER_RIGHT + 25, FRAME_Y + ANSWER_BOTTOM + 25, 2, 0);
+        double[][] squares = {{ANSWER_LEFT, ANSWER_TOP}, {ANSWER_RIGHT, ANSWER_TOP},
+            {ANSWER_LEFT, ANSWER_BOTTOM}, {ANSWER_RIGHT, ANSWER_BOTTOM}};
+        for (double[] s : squares) {
+            canvas.fillRect(FRAME_X + s[0] - SQUARE_SIZE / 2, FRAME_Y + s[1] - SQUARE_SIZE / 2,
+                FRAME_X + s[0] + SQUARE_SIZE / 2, FRAME_Y + s[1] + SQUARE_SIZE / 2, 0);
+        }
+        canvas.text("ANSWER SECTION", FRAME_X + 400, FRAME_Y + ANSWER_TOP + 5, 0.6);
+
+        double sectionWidth = ROW_BOX_WIDTH * (1 - QUESTION_NUMBER_RATIO) / OMRSheetConfig.CHOICES_PER_QUESTION;
+        for (int q = 0; q < OMRSheetConfig.TOTAL_QUESTIONS; q++) {
+            int col = OMRSheetConfig.getColumnForQuestion(q + 1);
+            int row = OMRSheetConfig.getRowForQuestion(q + 1);
+            double boxX = FRAME_X + ANSWER_LEFT + col * COLUMN_PITCH + ROW_BOX_OFFSET;
+            double boxY = FRAME_Y + FIRST_ROW_Y + row * ROW_PITCH;
+            double centerY = boxY + ROW_HEIGHT / 2;
+
+            canvas.text(String.valueOf(q + 1), boxX - ROW_BOX_OFFSET + 2, centerY + 5, 0.4);
+            canvas.strokeRect(boxX, boxY, boxX + ROW_BOX_WIDTH, boxY + ROW_HEIGHT, 2, 0);
+
+            double[] centersX = new double[OMRSheetConfig.CHOICES_PER_QUESTION];
+            for (int choice = 0; choice < centersX.length; choice++) {
+                centersX[choice] = boxX + ROW_BOX_WIDTH * QUESTION_NUMBER_RATIO + sectionWidth * (choice + 0.5);
+                canvas.strokeCircle(centersX[choice], centerY, BUBBLE_RADIUS, 1.5, 0);
+            }
+
+            String answer = truth.answers[q];
+            List<Integer> marked = new ArrayList<>();
+            if (MULTIPLE.equals(answer)) {
+                int first = random.nextInt(4);
+                marked.add(first);
+                marked.add((first + 1 + random.nextInt(3)) % 4);
+            } else if (!answer.isEmpty()) {
+                marked.add(answer.charAt(0) - 'A');
+            }
+            for (int choice : marked) {
+                drawMark(canvas, centersX[choice], centerY, BUBBLE_RADIUS, random);
+            }
+
+            // An erased mark leaves a faint, partial smudge on another bubble
+            if (erasureProbability > 0 && random.nextDouble() < erasureProbability) {
+                int erased = random.nextInt(4);
+                if (!marked.contains(erased)) {
+                    int shade = 170 + random.nextInt(40);
+                    double coverage = 0.5 + random.nextDouble() * 0.5;
+                    canvas.fillEllipse(centersX[erased], centerY, BUBBLE_RADIUS * coverage,
+                        BUBBLE_RADIUS * (0.6 + random.nextDouble() * 0.4), random.nextInt(180), shade);
+                }
+            }
+        }
+    }
+
+    /**
+     * A pencil mark: a dark, slightly off-center fill of the bubble.
+     */
+    private static void drawMark(Canvas canvas, double x, double y, double radius, Random random) {
+        int shade = random.nextInt(70);
+        double dx = (random.nextDouble() - 0.5) * radius * 0.3;
+        double dy = (random.nextDouble() - 0.5) * radius * 0.3;
+        double r = radius * (0.8 + random.nextDouble() * 0.2);
+        canvas.fillEllipse(x + dx, y + dy, r, r * (0.85 + random.nextDouble() * 0.15), random.nextInt(180), shade);
+    }
+
+    // =========================================
+    // Distortions
+    // =========================================
+
+    private Mat warpPage(Mat page, double rotationDegrees, Random random) {
+        double width = page.cols(), height = page.rows();
+        double cx = width / 2, cy = height / 2;
+        double angle = Math.toRadians(rotationDegrees);
+        double cos = Math.cos(angle), sin = Math.sin(angle);
+        double jitter = maxPerspective * width;
+        // Shrink slightly so the rotated page stays inside the image
+        double shrink = 0.96;
+
+        double[][] src = {{0, 0}, {width, 0}, {width, height}, {0, height}};
+        Mat srcPoints = new Mat(4, 1, CV_32FC2);
+        Mat dstPoints = new Mat(4, 1, CV_32FC2);
+        for (int i = 0; i < 4; i++) {
+            double x = (src[i][0] - cx) * shrink, y = (src[i][1] - cy) * shrink;
+            double dx = cx + x * cos - y * sin + (random.nextDouble() * 2 - 1) * jitter;
+            double dy = cy + x * sin + y * cos + (random.nextDouble() * 2 - 1) * jitter;
+            srcPoints.ptr(i).putFloat((float) src[i][0]).putFloat(4, (float) src[i][1]);
+            dstPoints.ptr(i).putFloat((float) dx).putFloat(4, (float) dy);
+        }
+
+        Mat transform = getPerspectiveTransform(srcPoints, dstPoints);
+        Mat warped = new Mat();
+        Scalar background = new Scalar(page.ptr(0, 0).get() & 0xFF);
+        warpPerspective(page, warped, transform, page.size(), INTER_LINEAR, BORDER_CONSTANT, background);
+        srcPoints.release();
+        dstPoints.release();
+        transform.release();
+        return warped;
+    }
+
+    private void addNoise(Mat page, Random random) {
+        Mat noise = new Mat(page.rows(), page.cols(), CV_16SC1);
+        theRNG().state(random.nextLong());
+        randn(noise, new Mat(1, 1, CV_64F, new Scalar(0)), new Mat(1, 1, CV_64F, new Scalar(noiseStdDev)));
+        Mat wide = new Mat();
+        page.convertTo(wide, CV_16SC1);
+        add(wide, noise, wide);
+        wide.convertTo(page, CV_8UC1);
+        noise.release();
+        wide.release();
+    }
+
+    // =========================================
+    // Settings
+    // =========================================
+
+    public void setDpi(int dpi) { this.dpi = Math.max(50, dpi); }
+    public int getDpi() { return dpi; }
+    public void setMaxRotationDegrees(double degrees) { this.maxRotationDegrees = Math.abs(degrees); }
+    public void setMaxPerspective(double fraction) { this.maxPerspective = Math.max(0, Math.min(0.05, fraction)); }
+    public void setBlurSigma(double sigma) { this.blurSigma = Math.max(0, sigma); }
+    public void setNoiseStdDev(double stdDev) { this.noiseStdDev = Math.max(0, stdDev); }
+    public void setErasureProbability(double probability) { this.erasureProbability = clamp01(probability); }
+    public void setBlankProbability(double probability) { this.blankProbability = clamp01(probability); }
+    public void setMultipleProbability(double probability) { this.multipleProbability = clamp01(probability); }
+    public void setImageFormat(String format) { this.imageFormat = format; }
+
+    private static double clamp01(double value) {
+        return Math.max(0, Math.min(1, value));
+    }
+
+    // =========================================
+    // Inner Classes
+    // =========================================
+
+    /**
+     * A rendered sheet (single-channel) and what was marked on it.
+     */
+    public static class GeneratedSheet {
+        public Mat image;
+        public GroundTruth truth;
+
+        public void release() {
+            if (image != null) image.release();
+            image = null;
+        }
+    }
+
+    /**
+     * What was actually marked on a synthetic sheet.
+     * Answers are "A"-"D", "" for a blank question or "MULTIPLE".
+     */
+    public static class GroundTruth {
+        public String studentId;
+        public String testId;
+        public String[] answers = new String[OMRSheetConfig.TOTAL_QUESTIONS];
+        public long seed;
+        public int dpi;
+        public double rotationDegrees;
+
+        /**
+         * Count the questions whose detected answer matches the ground truth.
+         * A blank question matches a null or empty detection.
+         */
+        public int countCorrect(List<String> detected) {
+            int correct = 0;
+            for (int q = 0; q < answers.length && q < detected.size(); q++) {
+                String found = detected.get(q) != null ? detected.get(q) : "";
+                if (answers[q].equals(found)) {
+                    correct++;
+                }
+            }
+            return correct;
+        }
+
+        public void write(File file) throws IOException {
+            Properties props = new Properties();
+            props.setProperty("studentId", studentId);
+            props.setProperty("testId", testId);
+            props.setProperty("seed", String.valueOf(seed));
+            props.setProperty("dpi", String.valueOf(dpi));
+            props.setProperty("rotationDegrees", String.format("%.3f", rotationDegrees));
+            for (int q = 0; q < answers.length; q++) {
+                props.setProperty("q" + (q + 1), answers[q]);
+            }
+            try (Writer writer = new FileWriter(file)) {
+                props.store(writer, "Synthetic OMR sheet ground truth");
+            }
+        }
+
+        public static GroundTruth read(File file) throws IOException {
+            Properties props = new Properties();
+            try (Reader reader = new FileReader(file)) {
+                props.load(reader);
+            }
+            GroundTruth truth = new GroundTruth();
+            truth.studentId = props.getProperty("studentId");
+            truth.testId = props.getProperty("testId");
+            truth.seed = Long.parseLong(props.getProperty("seed", "0"));
+            truth.dpi = Integer.parseInt(props.getProperty("dpi", "0"));
+            truth.rotationDegrees = Double.parseDouble(props.getProperty("rotationDegrees", "0"));
+            for (int q = 0; q < truth.answers.length; q++) {
+                truth.answers[q] = props.getProperty("q" + (q + 1), "");
+            }
+            return truth;
+        }
+    }
+
+    /**
+     * Draws in page units on a scaled image.
+     */
+    private static class Canvas {
+        private final Mat image;
+        private final double scale;
+
+        Canvas(Mat image, double scale) {
+            this.image = image;
+            this.scale = scale;
+        }
+
+        private Point point(double x, double y) {
+            return new Point((int) Math.round(x * scale), (int) Math.round(y * scale));
+        }
+
+        private int size(double value) {
+            return Math.max(1, (int) Math.round(value * scale));
+        }
+
+        void fillRect(double x1, double y1, double x2, double y2, int shade) {
+            rectangle(image, point(Math.min(x1, x2), Math.min(y1, y2)), point(Math.max(x1, x2), Math.max(y1, y2)),
+                new Scalar(shade), -1, LINE_8, 0);
+        }
+
+        void strokeRect(double x1, double y1, double x2, double y2, double thickness, int shade) {
+            rectangle(image, point(x1, y1), point(x2, y2), new Scalar(shade), size(thickness), LINE_8, 0);
+        }
+
+        void strokeCircle(double x, double y, double radius, double thickness, int shade) {
+            circle(image, point(x, y), size(radius), new Scalar(shade), size(thickness), LINE_AA, 0);
+        }
+
+        void fillEllipse(double x, double y, double rx, double ry, double angle, int shade) {
+            ellipse(image, point(x, y), new Size(size(rx), size(ry)), angle, 0, 360, new Scalar(shade), -1, LINE_AA, 0);
+        }
+
+        void text(String text, double x, double y, double fontScale) {
+            putText(image, text, point(x, y), FONT_HERSHEY_SIMPLEX, fontScale * scale, new Scalar(40),
+                size(1.2), LINE_AA, false);
+        }
+    }
+
+    // =========================================
+    // Command Line
+    // =========================================
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticSheetGenerator <outputDir> <count> [--seed=N] [--dpi=N] " +
+                "[--rotation=DEG] [--perspective=FRACTION] [--blur=SIGMA] [--noise=STDDEV] " +
+                "[--erasures=PROBABILITY] [--format=png|jpg]");
+            System.exit(1);
+        }
+
+        SyntheticSheetGenerator generator = new SyntheticSheetGenerator();
+        long seed = 1;
+        for (int i = 2; i < args.length; i++) {
+            String[] option = args[i].replaceFirst("^--", "").split("=", 2);
+            String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "seed" -> seed = Long.parseLong(value);
+                case "dpi" -> generator.setDpi(Integer.parseInt(value));
+                case "rotation" -> generator.setMaxRotationDegrees(Double.parseDouble(value));
+                case "perspective" -> generator.setMaxPerspective(Double.parseDouble(value));
+                case "blur" -> generator.setBlurSigma(Double.parseDouble(value));
+                case "noise" -> generator.setNoiseStdDev(Double.parseDouble(value));
+                case "erasures" -> generator.setErasureProbability(Double.parseDouble(value));
+                case "format" -> generator.setImageFormat(value);
+                default -> {
+                    System.err.println("✗ Unknown option: " + args[i]);
+                    System.exit(1);
+                }
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int count = Integer.parseInt(args[1]);
+        generator.generateTo(new File(args[0]), count, seed);
+        System.out.println("✓ Generated " + count + " sheets in " + args[0] + " (" +
+            (System.currentTimeMillis() - start) + "ms)");
+    }
+}
@@ -0,0 +1,467 @@
+package org.example.cli;
+
+import org.example.SamplingPlan;
+import org.example.SheetLayouts;
+import org.example.model.AnswerKey;
+import org.example.model.Batch;
+import org.example.model.Scan;
+import org.example.service.AnswerKeyService;
+import org.example.service.BatchProcessingService;
+import org.example.service.BatchProcessingService.BatchResult;
+import org.example.service.BatchService;
+import org.example.service.DatabaseService;
+import org.example.service.ExportService;
+import org.example.service.HotFolderService;
+import org.example.service.ScanWriter;
+import org.example.service.ScanService;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless entry point for unattended grading (servers, cron jobs).
+ *
+ * Uses the same services as the desktop application but never touches the
+ * JavaFX toolkit; the {@code cli} build profile packages it without the
+ * JavaFX modules.
+ *
+ * Usage:
+ * <pre>
+ * omr batch &lt;dir&gt; [--test-id ID] [--threads N] [--csv FILE] [--db PATH] [--no-save] [--no-resume] [--force]
+ *           [--group-size N] [--layout ID|FILE] [--verbose]
+ * omr watch &lt;dir&gt; [--test-id ID] [--threads N] [--db PATH] [--stable-ms N] [--force] [--layout ID|FILE]
+ *           [--verbose]
+ * </pre>
+ *
+ * {@code batch} continues an unfinished batch of the same folder (e.g. after a crash)
+ * unless {@code --no-resume} is given; it refuses to if the folder's images or the
+ * {@code --test-id} key differ from the batch's. {@code watch} runs a {@link HotFolderService}
+ * until the process is terminated.
+ *
+ * Exit codes: 0 = all sheets processed, 1 = usage or setup error,
+ * 2 = some sheets failed.
+ */
+public class OMRCommandLine {
+
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".bmp", ".tiff", ".tif"};
+
+    private static final int EXIT_OK = 0;
+    private static final int EXIT_ERROR = 1;
+    private static final int EXIT_FAILURES = 2;
+
+    // Progress goes here; the processing code's own logging goes to System.out
+    private final PrintStream console;
+
+    public OMRCommandLine(PrintStream console) {
+        this.console = console;
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        OMRCommandLine cli = new OMRCommandLine(System.out);
+        System.exit(cli.run(args));
+    }
+
+    /**
+     * Run a command and return the process exit code.
+     */
+    public int run(String[] args) {
+        if (args.length == 0 || args[0].equals("--help") || args[0].equals("help")) {
+            printUsage();
+            return args.length == 0 ? EXIT_ERROR : EXIT_OK;
+        }
+
+        try {
+            switch (args[0]) {
+                case "batch":
+                    return runBatch(Options.parse(Arrays.copyOfRange(args, 1, args.length)));
+                case "watch":
+                    return runWatch(Options.parse(Arrays.copyOfRange(args, 1, args.length)));
+                default:
+                    System.err.println("✗ Unknown command: " + args[0]);
+                    printUsage();
+                    return EXIT_ERROR;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ " + e.getMessage());
+            printUsage();
+            return EXIT_ERROR;
+        }
+    }
+
+    // =========================================
+    // Batch Command
+    // =========================================
+
+    private int runBatch(Options options) {
+        List<File> files = listImages(options.directory);
+        if (files.isEmpty()) {
+            System.err.println("✗ No image files in " + options.directory);
+            return EXIT_ERROR;
+        }
+
+        PrintStream stdout = System.out;
+        if (!options.verbose) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        DatabaseService database = DatabaseService.getInstance();
+        try {
+            if (!selectLayout(options) || !openDatabase(database, options)) {
+                return EXIT_ERROR;
+            }
+            Optional<AnswerKey> answerKey = findAnswerKey(options);
+
+            ScanService scanService = new ScanService();
+            BatchProcessingService batchService = new BatchProcessingService(scanService, options.threads);
+            batchService.setForceReprocess(options.force);
+            batchService.setSamplingPlan(options.plan);
+            batchService.setGroupCommitSize(options.groupSize);
+            BatchProcessingService.BatchListener listener = new BatchProcessingService.BatchListener() {
+                @Override
+                public void onItemCompleted(int index, BatchResult result, int completed, int total) {
+                    console.println(formatProgress(result, completed, total));
+                }
+            };
+            long start = System.currentTimeMillis();
+
+            Optional<Batch> unfinished = options.save && options.resume
+                ? batchService.getBatchService().findResumable(
+                    options.directory.toPath().toAbsolutePath().normalize().toString())
+                : Optional.empty();
+            if (unfinished.isPresent()) {
+                Batch batch = unfinished.get();
+                String conflict = resumeConflict(batchService, batch, files, answerKey);
+                if (conflict != null) {
+                    System.err.println("✗ Cannot resume batch " + batch.getId() + ": " + conflict +
+                        " (use --no-resume to start over)");
+                    return EXIT_ERROR;
+                }
+                console.println("Resuming batch " + batch.getId() + ": " + batch.getRemainingFiles() + " of " +
+                    batch.getTotalFiles() + " files left, on " + batchService.getThreadCount() + " threads");
+                batchService.resumeBatch(batch.getId(), listener);
+            } else {
+                console.println("Processing " + files.size() + " files from " + options.directory +
+                    " on " + batchService.getThreadCount() + " threads");
+                batchService.start(files, answerKey.orElse(null), options.save, listener);
+            }
+            batchService.awaitCompletion(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+            return report(batchService.getResults(), batchService.getCacheHitCount(), options,
+                System.currentTimeMillis() - start);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("✗ Interrupted");
+            return EXIT_ERROR;
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ " + e.getMessage());
+            return EXIT_ERROR;
+        } catch (Exception e) {
+            System.err.println("✗ Batch failed: " + e.getMessage());
+            return EXIT_ERROR;
+        } finally {
+            database.close();
+            System.setOut(stdout);
+        }
+    }
+
+    // =========================================
+    // Watch Command
+    // =========================================
+
+    private int runWatch(Options options) {
+        PrintStream stdout = System.out;
+        if (!options.verbose) {
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        }
+
+        DatabaseService database = DatabaseService.getInstance();
+        try {
+            if (!selectLayout(options) || !openDatabase(database, options)) {
+                return EXIT_ERROR;
+            }
+            Optional<AnswerKey> answerKey = findAnswerKey(options);
+
+            HotFolderService hotFolder = new HotFolderService(new ScanService(), options.directory, options.threads);
+            hotFolder.setStableMillis(options.stableMillis);
+            hotFolder.setForceReprocess(options.force);
+            hotFolder.setSamplingPlan(options.plan);
+            AtomicInteger completed = new AtomicInteger();
+            hotFolder.start(answerKey.orElse(null), new HotFolderService.HotFolderListener() {
+                @Override
+                public void onFileCompleted(File original, File movedTo, Scan scan, String error) {
+                    BatchResult result = new BatchResult(original);
+                    result.scan = scan;
+                    result.error = error;
+                    result.status = error != null || scan == null ? BatchResult.Status.FAILED
+                        : scan.needsReview() ? BatchResult.Status.REVIEW : BatchResult.Status.SUCCESS;
+                    console.println(formatProgress(result, completed.incrementAndGet(), 0));
+                }
+            });
+            console.println("Watching " + options.directory + " (Ctrl+C to stop)");
+
+            // Finish the sheets in flight when the process is terminated
+            CountDownLatch stopped = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    hotFolder.stop(30, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    database.close();
+                    stopped.countDown();
+                }
+            }, "omr-watch-shutdown"));
+            stopped.await();
+            return EXIT_OK;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return EXIT_ERROR;
+        } catch (IllegalArgumentException e) {
+            System.err.println("✗ " + e.getMessage());
+            database.close();
+            return EXIT_ERROR;
+        } catch (Exception e) {
+            System.err.println("✗ Watch failed: " + e.getMessage());
+            database.close();
+            return EXIT_ERROR;
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    // =========================================
+    // Helpers
+    // =========================================
+
+    /**
+     * Load the --layout layout into options.plan, which the run passes to its pipeline.
+     */
+    private boolean selectLayout(Options options) {
+        if (options.layout == null) {
+            return true;
+        }
+        try {
+            SamplingPlan plan = SheetLayouts.getInstance().resolve(options.layout);
+            options.plan = plan;
+            console.println("Layout " + plan.getLayoutName() + ": " + plan.getQuestionCount() + " questions");
+            return true;
+        } catch (Exception e) {
+            System.err.println("✗ Could not load layout " + options.layout + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static boolean openDatabase(DatabaseService database, Options options) {
+        boolean connected = options.dbPath != null
+            ? database.initialize(options.dbPath)
+            : database.initialize();
+        if (!connected) {
+            System.err.println("✗ Could not open the database");
+        }
+        return connected;
+    }
+
+    /**
+     * The answer key for --test-id, or empty if none was given.
+     *
+     * @throws IllegalArgumentException if there is no key with that test ID
+     */
+    private static Optional<AnswerKey> findAnswerKey(Options options) throws SQLException {
+        if (options.testId == null) {
+            return Optional.empty();
+        }
+        Optional<AnswerKey> key = new AnswerKeyService().findByTestId(options.testId);
+        if (key.isEmpty()) {
+            throw new IllegalArgumentException("No answer key for test ID " + options.testId);
+        }
+        return key;
+    }
+
+    /**
+     * Why an unfinished batch cannot be resumed with this command, or null if
+     * it can: a resumed batch keeps its answer key and file list, so a
+     * different --test-id or images added or removed since would be ignored.
+     */
+    private static String resumeConflict(BatchProcessingService batchService, Batch batch, List<File> files,
+                                         Optional<AnswerKey> answerKey) throws SQLException {
+        if (answerKey.isPresent() && !answerKey.get().getId().equals(batch.getAnswerKeyId())) {
+            return "it was started with a different answer key";
+        }
+        Set<Path> stored = new HashSet<>();
+        for (BatchService.BatchFile file : batchService.getBatchService().findFiles(batch.getId())) {
+            stored.add(file.file.getAbsoluteFile().toPath().normalize());
+        }
+        Set<Path> current = new HashSet<>();
+        for (File file : files) {
+            current.add(file.getAbsoluteFile().toPath().normalize());
+        }
+        if (!stored.equals(current)) {
+            return "the folder's images changed since it was started";
+        }
+        return null;
+    }
+
+    private String formatProgress(BatchResult result, int completed, int total) {
+        String detail;
+        if (result.status == BatchResult.Status.FAILED) {
+            detail = "✗ " + result.error;
+        } else {
+            Scan scan = result.scan;
+            String score = scan.getAnswerKeyId() != null ? " " + scan.getScoreDisplay() : "";
+            detail = (result.status == BatchResult.Status.REVIEW ? "⚠ review " : "✓ ") +
+                (scan.getStudentId() != null ? scan.getStudentId() : "-") + score;
+        }
+        String position = total > 0 ? completed + "/" + total : String.valueOf(completed);
+        return "[" + position + "] " + result.file.getName() + " " + detail;
+    }
+
+    private int report(List<BatchResult> results, int cached, Options options, long elapsedMs) throws Exception {
+        List<Scan> scans = new ArrayList<>();
+        int failed = 0, review = 0;
+        for (BatchResult result : results) {
+            if (result.status == BatchResult.Status.FAILED || result.scan == null) {
+                failed++;
+            } else {
+                if (result.status == BatchResult.Status.REVIEW) review++;
+                scans.add(result.scan);
+            }
+        }
+
+        if (options.csvFile != null) {
+            if (scans.isEmpty()) {
+                System.err.println("⚠ Nothing to export to " + options.csvFile);
+            } else {
+                new ExportService().exportScans(scans, options.csvFile);
+                console.println("✓ Exported " + scans.size() + " scans to " + options.csvFile);
+            }
+        }
+
+        console.println((failed == 0 ? "✓" : "⚠") + " Done: " + scans.size() + " processed (" +
+            review + " need review, " + cached + " reused from earlier scans), " + failed + " failed in " +
+            elapsedMs + "ms");
+        return failed == 0 ? EXIT_OK : EXIT_FAILURES;
+    }
+
+    private static List<File> listImages(File directory) {
+        File[] files = directory.listFiles(file -> {
+            if (!file.isFile()) return false;
+            String name = file.getName().toLowerCase();
+            return Arrays.stream(IMAGE_EXTENSIONS).anyMatch(name::endsWith);
+        });
+        if (files == null) return List.of();
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        return List.of(files);
+    }
+
+    private void printUsage() {
+        System.err.println("Usage: omr batch <dir> [options]   Process every image in a folder");
+        System.err.println("       omr watch <dir> [options]   Process images as they arrive (hot folder)");
+        System.err.println("  --test-id ID   Grade every sheet with the answer key for this test ID");
+        System.err.println("  --threads N    CPU threads (default: number of cores)");
+        System.err.println("  --csv FILE     Export the processed scans to a CSV file");
+        System.err.println("  --db PATH      SQLite database file (default: the application database)");
+        System.err.println("  --no-save      Do not save scans to the database (batch only)");
+        System.err.println("  --group-size N Sheets saved per database commit (batch only, default " +
+            ScanWriter.DEFAULT_GROUP_SIZE + ")");
+        System.err.println("  --force        Reprocess images even if they were processed before");
+        System.err.println("  --no-resume    Start over even if an earlier batch of this folder did not finish");
+        System.err.println("  --stable-ms N  Wait until a new file is unchanged for N ms (watch only, default 2000)");
+        System.err.println("  --layout L     Sheet layout id or .properties file (default " +
+            SheetLayouts.DEFAULT_LAYOUT_ID + ")");
+        System.err.println("  --verbose      Show the processing log");
+    }
+
+    // =========================================
+    // Options
+    // =========================================
+
+    static class Options {
+        File directory;
+        String testId;
+        int threads = Runtime.getRuntime().availableProcessors();
+        File csvFile;
+        String dbPath;
+        boolean save = true;
+        boolean resume = true;
+        boolean force = false;
+        int groupSize = ScanWriter.DEFAULT_GROUP_SIZE;
+        boolean verbose = false;
+        long stableMillis = 2000;
+        String layout;
+        SamplingPlan plan;   // Loaded from layout, null for the default
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--test-id" -> options.testId = value(args, ++i, arg);
+                    case "--threads" -> options.threads = parsePositive(value(args, ++i, arg), arg);
+                    case "--csv" -> options.csvFile = new File(value(args, ++i, arg));
+                    case "--db" -> options.dbPath = value(args, ++i, arg);
+                    case "--no-save" -> options.save = false;
+                    case "--no-resume" -> options.resume = false;
+                    case "--force" -> options.force = true;
+                    case "--group-size" -> options.groupSize = parsePositive(value(args, ++i, arg), arg);
+                    case "--verbose" -> options.verbose = true;
+                    case "--stable-ms" -> options.stableMillis = parseMillis(value(args, ++i, arg));
+                    case "--layout" -> options.layout = value(args, ++i, arg);
+                    default -> {
+                        if (arg.startsWith("--") || options.directory != null) {
+                            throw new IllegalArgumentException("Unexpected argument: " + arg);
+                        }
+                        options.directory = new File(arg);
+                    }
+                }
+            }
+            if (options.directory == null) {
+                throw new IllegalArgumentException("Missing input directory");
+            }
+            if (!options.directory.isDirectory()) {
+                throw new IllegalArgumentException("Not a directory: " + options.directory);
+            }
+            return options;
+        }
+
+        private static String value(String[] args, int index, String option) {
+            if (index >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            return args[index];
+        }
+
+        private static long parseMillis(String value) {
+            try {
+                long millis = Long.parseLong(value);
+                if (millis < 0) throw new NumberFormatException();
+                return millis;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid time: " + value);
+            }
+        }
+
+        private static int parsePositive(String value, String option) {
+            try {
+                int number = Integer.parseInt(value);
+                if (number < 1) throw new NumberFormatException();
+                return number;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+            }
+        }
+    }
+}
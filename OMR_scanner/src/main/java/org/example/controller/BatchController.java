@@ -5,7 +5,6 @@ import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
-import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
@@ -13,8 +12,11 @@ import javafx.scene.control.cell.CheckBoxTableCell;
 import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import org.example.model.AnswerKey;
+import org.example.model.Batch;
 import org.example.model.Scan;
 import org.example.service.AnswerKeyService;
+import org.example.service.BatchProcessingService;
+import org.example.service.BatchService;
 import org.example.service.ExportService;
 import org.example.service.ScanService;
 
@@ -86,8 +88,7 @@ public class BatchController implements Initializable {
     private ObservableList<BatchItem> batchItems;
     private ObservableList<AnswerKey> answerKeys;
     private File sourceFolder;
-    private Task<Void> processingTask;
-    private boolean isPaused = false;
+    private BatchProcessingService batchService;
     private LocalDateTime batchStartTime;
 
     @Override
@@ -95,6 +96,7 @@ public class BatchController implements Initializable {
         scanService = new ScanService();
         answerKeyService = new AnswerKeyService();
         exportService = new ExportService();
+        batchService = new BatchProcessingService(scanService);
         batchItems = FXCollections.observableArrayList();
         answerKeys = FXCollections.observableArrayList();
 
@@ -102,6 +104,9 @@ public class BatchController implements Initializable {
         setupAnswerKeyCombo();
         loadAnswerKeys();
         updateButtonStates();
+
+        // Ask after the screen is shown
+        Platform.runLater(this::offerResume);
     }
 
     // =========================================
@@ -237,95 +242,170 @@ public class BatchController implements Initializable {
             return;
         }
 
-        isPaused = false;
         batchStartTime = LocalDateTime.now();
         
         // Get default answer key (if selected)
         AnswerKey defaultKey = cmbAnswerKey.getValue();
 
-        // Create processing task
-        processingTask = new Task<Void>() {
-            @Override
-            protected Void call() throws Exception {
-                int total = batchItems.size();
-                int processed = 0;
-
-                for (BatchItem item : batchItems) {
-                    // Check if cancelled or paused
-                    if (isCancelled()) break;
-                    while (isPaused && !isCancelled()) {
-                        Thread.sleep(100);
-                    }
+        // Skip items that were already processed
+        List<BatchItem> pendingItems = batchItems.stream()
+            .filter(item -> item.status == BatchStatus.PENDING)
+            .collect(Collectors.toList());
+        List<File> files = pendingItems.stream()
+            .map(item -> item.file)
+            .collect(Collectors.toList());
 
-                    // Skip if already processed
-                    if (item.status != BatchStatus.PENDING) {
-                        processed++;
-                        continue;
-                    }
+        int alreadyProcessed = batchItems.size() - pendingItems.size();
+        int total = batchItems.size();
 
-                    // Update status
-                    updateItemStatus(item, BatchStatus.PROCESSING, "Processing...");
+        batchService.start(files, defaultKey, true, createBatchListener(pendingItems, alreadyProcessed, total));
 
-                    try {
-                        // Process the image
-                        Scan scan = scanService.processImage(item.file, defaultKey, true);
-                        item.scan = scan;
+        updateButtonStates();
+    }
 
-                        // Determine status
-                        if (scan.needsReview()) {
-                            updateItemStatus(item, BatchStatus.REVIEW, "Needs review");
-                        } else {
-                            updateItemStatus(item, BatchStatus.SUCCESS, "");
-                        }
+    /**
+     * Offer to continue a batch that was interrupted (e.g. the application was closed or crashed).
+     */
+    private void offerResume() {
+        Batch batch;
+        try {
+            List<Batch> resumable = batchService.getBatchService().findResumable();
+            if (resumable.isEmpty()) return;
+            batch = resumable.get(0);
+        } catch (SQLException e) {
+            System.err.println("Failed to check for interrupted batches: " + e.getMessage());
+            return;
+        }
 
-                    } catch (Exception e) {
-                        updateItemStatus(item, BatchStatus.FAILED, e.getMessage());
-                    }
+        ButtonType resume = new ButtonType("Resume", ButtonBar.ButtonData.YES);
+        ButtonType discard = new ButtonType("Discard", ButtonBar.ButtonData.NO);
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION, null, resume, discard, ButtonType.CANCEL);
+        alert.setTitle("Resume Batch");
+        alert.setHeaderText("An earlier batch did not finish");
+        alert.setContentText(String.format("%s: %d of %d files were processed. Resume the remaining %d?",
+            batch.getSourcePath(), batch.getProcessedFiles(), batch.getTotalFiles(), batch.getRemainingFiles()));
 
-                    processed++;
-                    final int currentProcessed = processed;
-                    
-                    // Update progress
-                    Platform.runLater(() -> {
-                        double progress = (double) currentProcessed / total;
-                        progressBar.setProgress(progress);
-                        lblProgress.setText(String.format("%.0f%% (%d/%d files)",
-                            progress * 100, currentProcessed, total));
-                        updateStats();
-                        updateElapsedTime();
-                    });
-                }
+        ButtonType choice = alert.showAndWait().orElse(ButtonType.CANCEL);
+        try {
+            if (choice == resume) {
+                resumeBatch(batch);
+            } else if (choice == discard) {
+                batchService.getBatchService().updateStatus(batch.getId(), Batch.BatchStatus.CANCELLED);
+            }
+        } catch (SQLException e) {
+            showError("Resume Failed", e.getMessage());
+        }
+    }
+
+    private void resumeBatch(Batch batch) throws SQLException {
+        List<BatchService.BatchFile> batchFiles = batchService.getBatchService().findFiles(batch.getId());
+        batchItems.setAll(batchFiles.stream().map(batchFile -> new BatchItem(batchFile.file)).toList());
+        if (batch.getSourcePath() != null) {
+            sourceFolder = new File(batch.getSourcePath());
+            txtSourceFolder.setText(batch.getSourcePath());
+        }
+        batchStartTime = LocalDateTime.now();
 
-                return null;
+        List<BatchItem> items = new ArrayList<>(batchItems);
+        batchService.resumeBatch(batch.getId(), createBatchListener(items, 0, items.size()));
+
+        // Show what was already done before the interruption
+        List<BatchProcessingService.BatchResult> results = batchService.getResults();
+        for (int i = 0; i < items.size() && i < results.size(); i++) {
+            BatchProcessingService.BatchResult result = results.get(i);
+            BatchItem item = items.get(i);
+            switch (result.status) {
+                case SUCCESS -> { item.status = BatchStatus.SUCCESS; item.scan = result.scan; }
+                case REVIEW -> { item.status = BatchStatus.REVIEW; item.scan = result.scan; item.issues = "Needs review"; }
+                case FAILED -> { item.status = BatchStatus.FAILED; item.issues = result.error; }
+                default -> { }
+            }
+        }
+        tblFiles.refresh();
+        updateStats();
+        updateButtonStates();
+    }
+
+    /**
+     * Listener that mirrors batch progress into the table.
+     *
+     * @param items The table items, indexed like the files handed to the batch
+     * @param alreadyProcessed Items processed before this run (added to the progress count)
+     */
+    private BatchProcessingService.BatchListener createBatchListener(List<BatchItem> items,
+                                                                     int alreadyProcessed, int total) {
+        return new BatchProcessingService.BatchListener() {
+            @Override
+            public void onItemStarted(int index, File file) {
+                updateItemStatus(items.get(index), BatchStatus.PROCESSING, "Processing...");
             }
-        };
 
-        // Handle completion
-        processingTask.setOnSucceeded(e -> onBatchComplete());
-        processingTask.setOnFailed(e -> onBatchFailed());
-        processingTask.setOnCancelled(e -> onBatchCancelled());
+            @Override
+            public void onItemCompleted(int index, BatchProcessingService.BatchResult result,
+                                        int completed, int batchTotal) {
+                BatchItem item = items.get(index);
+                item.scan = result.scan;
+
+                // Determine status
+                switch (result.status) {
+                    case REVIEW -> updateItemStatus(item, BatchStatus.REVIEW, "Needs review");
+                    case SUCCESS -> updateItemStatus(item, BatchStatus.SUCCESS, "");
+                    default -> updateItemStatus(item, BatchStatus.FAILED, result.error);
+                }
 
-        // Start task in background
-        Thread thread = new Thread(processingTask);
-        thread.setDaemon(true);
-        thread.start();
+                final int currentProcessed = alreadyProcessed + completed;
+                
+                // Update progress
+                Platform.runLater(() -> {
+                    double progress = (double) currentProcessed / total;
+                    progressBar.setProgress(progress);
+                    lblProgress.setText(String.format("%.0f%% (%d/%d files)",
+                        progress * 100, currentProcessed, total));
+                    updateStats();
+                    updateElapsedTime();
+                });
+            }
 
-        updateButtonStates();
+            @Override
+            public void onBatchFinished(boolean stopped) {
+                Platform.runLater(() -> {
+                    // Items interrupted mid-sheet go back to pending
+                    for (BatchItem item : items) {
+                        if (item.status == BatchStatus.PROCESSING) {
+                            item.status = BatchStatus.PENDING;
+                            item.issues = "";
+                        }
+                    }
+                    tblFiles.refresh();
+                    updateStats();
+                    if (btnPause != null) {
+                        btnPause.setText("⏸ Pause");
+                    }
+                    if (stopped) {
+                        onBatchCancelled();
+                    } else {
+                        onBatchComplete();
+                    }
+                });
+            }
+        };
     }
 
     @FXML
     private void pauseBatch() {
-        isPaused = !isPaused;
+        if (batchService.isPaused()) {
+            batchService.resume();
+        } else {
+            batchService.pause();
+        }
         if (btnPause != null) {
-            btnPause.setText(isPaused ? "▶ Resume" : "⏸ Pause");
+            btnPause.setText(batchService.isPaused() ? "▶ Resume" : "⏸ Pause");
         }
     }
 
     @FXML
     private void stopBatch() {
-        if (processingTask != null) {
-            processingTask.cancel();
-        }
+        batchService.stop();
         updateButtonStates();
     }
 
@@ -409,7 +489,7 @@ public class BatchController implements Initializable {
 
     private void updateButtonStates() {
         boolean hasFiles = !batchItems.isEmpty();
-        boolean isRunning = processingTask != null && processingTask.isRunning();
+        boolean isRunning = batchService.isRunning();
 
         if (btnStart != null) btnStart.setDisable(!hasFiles || isRunning);
         if (btnPause != null) btnPause.setDisable(!isRunning);
@@ -421,11 +501,6 @@ public class BatchController implements Initializable {
         updateButtonStates();
     }
 
-    private void onBatchFailed() {
-        showError("Batch Failed", "An error occurred during batch processing.");
-        updateButtonStates();
-    }
-
     private void onBatchCancelled() {
         showInfo("Batch Stopped", "Batch processing was cancelled.");
         updateButtonStates();
@@ -13,6 +13,7 @@ import org.example.model.AnswerKey;
 import org.example.model.Scan;
 import org.example.service.AnswerKeyService;
 import org.example.service.ExportService;
+import org.example.service.ScanPager;
 import org.example.service.ScanService;
 
 import java.io.File;
@@ -23,7 +24,9 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
 import java.util.stream.Collectors;
@@ -86,9 +89,8 @@ public class HistoryController implements Initializable {
     private AnswerKeyService answerKeyService;
     private ExportService exportService;
     private ObservableList<ScanRow> scanRows;
-    private List<Scan> allScans;
-    private int currentPage = 0;
-    private int totalPages = 0;
+    private ScanPager pager;
+    private final Map<Long, String> answerKeyNames = new HashMap<>();
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -96,7 +98,7 @@ public class HistoryController implements Initializable {
         answerKeyService = new AnswerKeyService();
         exportService = new ExportService();
         scanRows = FXCollections.observableArrayList();
-        allScans = new ArrayList<>();
+        pager = new ScanPager(scanService, PAGE_SIZE);
 
         setupTable();
         setupFilters();
@@ -161,14 +163,7 @@ public class HistoryController implements Initializable {
                 if (scan.getAnswerKey() != null) {
                     keyName = scan.getAnswerKey().getName();
                 } else if (scan.getAnswerKeyId() != null) {
-                    try {
-                        Optional<AnswerKey> key = answerKeyService.findById(scan.getAnswerKeyId());
-                        if (key.isPresent()) {
-                            keyName = key.get().getName();
-                        }
-                    } catch (SQLException e) {
-                        // Ignore
-                    }
+                    keyName = answerKeyNames.computeIfAbsent(scan.getAnswerKeyId(), this::findAnswerKeyName);
                 }
                 return new SimpleStringProperty(keyName);
             });
@@ -232,13 +227,7 @@ public class HistoryController implements Initializable {
         if (cmbTestId != null) {
             cmbTestId.getItems().add("All");
             try {
-                List<String> testIds = scanService.findAll().stream()
-                    .map(Scan::getTestId)
-                    .filter(id -> id != null && !id.isEmpty())
-                    .distinct()
-                    .sorted()
-                    .collect(Collectors.toList());
-                cmbTestId.getItems().addAll(testIds);
+                cmbTestId.getItems().addAll(scanService.findTestIds());
                 cmbTestId.setValue("All");
             } catch (SQLException e) {
                 System.err.println("Failed to load test IDs: " + e.getMessage());
@@ -256,10 +245,14 @@ public class HistoryController implements Initializable {
     // Data Loading
     // =========================================
 
+    /**
+     * Load the first page of all scans. Only the visible page is read from
+     * the database (see {@link ScanPager}).
+     */
     private void loadData() {
         try {
-            allScans = scanService.findAll();
-            currentPage = 0;
+            answerKeyNames.clear();
+            pager.setFilter(null);
             updateDisplay();
             updateStatistics();
         } catch (SQLException e) {
@@ -268,33 +261,24 @@ public class HistoryController implements Initializable {
     }
 
     private void updateDisplay() {
-        // Calculate pagination
-        totalPages = (int) Math.ceil((double) allScans.size() / PAGE_SIZE);
-        if (totalPages == 0) totalPages = 1;
-
-        // Get current page scans
-        int start = currentPage * PAGE_SIZE;
-        int end = Math.min(start + PAGE_SIZE, allScans.size());
-        List<Scan> pageScans = allScans.subList(start, end);
-
         // Update table
         scanRows.clear();
-        for (Scan scan : pageScans) {
+        for (Scan scan : pager.getScans()) {
             scanRows.add(new ScanRow(scan));
         }
 
         // Update pagination labels
         if (lblPageInfo != null) {
-            lblPageInfo.setText(String.format("Page %d of %d", currentPage + 1, totalPages));
+            lblPageInfo.setText(String.format("Page %d of %d", pager.getPageIndex() + 1, pager.getPageCount()));
         }
         if (lblResultInfo != null) {
             lblResultInfo.setText(String.format("Showing %d-%d of %d results",
-                start + 1, end, allScans.size()));
+                pager.getFirstRowNumber(), pager.getLastRowNumber(), pager.getTotalCount()));
         }
 
         // Update button states
-        if (btnPrev != null) btnPrev.setDisable(currentPage == 0);
-        if (btnNext != null) btnNext.setDisable(currentPage >= totalPages - 1);
+        if (btnPrev != null) btnPrev.setDisable(!pager.hasPrevious());
+        if (btnNext != null) btnNext.setDisable(!pager.hasNext());
     }
 
     private void updateStatistics() {
@@ -343,8 +327,13 @@ public class HistoryController implements Initializable {
             }
 
             // Search
-            allScans = scanService.search(studentId, testId, status, fromDate, toDate);
-            currentPage = 0;
+            ScanService.ScanFilter filter = new ScanService.ScanFilter();
+            filter.studentId = studentId;
+            filter.testId = testId;
+            filter.status = status;
+            filter.fromDate = fromDate;
+            filter.toDate = toDate;
+            pager.setFilter(filter);
             updateDisplay();
 
         } catch (SQLException e) {
@@ -364,17 +353,21 @@ public class HistoryController implements Initializable {
 
     @FXML
     private void prevPage() {
-        if (currentPage > 0) {
-            currentPage--;
+        try {
+            pager.previous();
             updateDisplay();
+        } catch (SQLException e) {
+            showError("Failed to load page", e.getMessage());
         }
     }
 
     @FXML
     private void nextPage() {
-        if (currentPage < totalPages - 1) {
-            currentPage++;
+        try {
+            pager.next();
             updateDisplay();
+        } catch (SQLException e) {
+            showError("Failed to load page", e.getMessage());
         }
     }
 
@@ -420,7 +413,10 @@ public class HistoryController implements Initializable {
                     .map(row -> row.scan.getId())
                     .collect(Collectors.toList());
                 scanService.deleteMultiple(ids);
-                loadData();
+                // Stay on the current page and filter
+                pager.reload();
+                updateDisplay();
+                updateStatistics();
                 showInfo("Deleted", String.format("Successfully deleted %d scan(s).", selected.size()));
             } catch (SQLException e) {
                 showError("Delete failed", e.getMessage());
@@ -474,6 +470,18 @@ public class HistoryController implements Initializable {
     // Helper Methods
     // =========================================
 
+    private String findAnswerKeyName(long answerKeyId) {
+        try {
+            Optional<AnswerKey> key = answerKeyService.findById(answerKeyId);
+            if (key.isPresent()) {
+                return key.get().getName();
+            }
+        } catch (SQLException e) {
+            // Ignore
+        }
+        return "N/A";
+    }
+
     private void showScanDetails(Scan scan) {
         Alert dialog = new Alert(Alert.AlertType.INFORMATION);
         dialog.setTitle("Scan Details");
@@ -0,0 +1,194 @@
+package org.example.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Represents a batch run over a folder of scans.
+ * Progress counters are kept up to date while the batch runs, so an
+ * interrupted batch can be found and resumed.
+ */
+public class Batch {
+
+    private Long id;
+    private String name;
+    private String sourcePath;
+    private Long answerKeyId;
+    private int totalFiles;
+    private int processedFiles;
+    private int successfulFiles;
+    private int failedFiles;
+    private BatchStatus status;
+    private LocalDateTime startedAt;
+    private LocalDateTime completedAt;
+    private LocalDateTime createdAt;
+
+    // =========================================
+    // Constructors
+    // =========================================
+
+    public Batch() {
+        this.status = BatchStatus.PENDING;
+    }
+
+    public Batch(String name, String sourcePath) {
+        this();
+        this.name = name;
+        this.sourcePath = sourcePath;
+    }
+
+    // =========================================
+    // Getters and Setters
+    // =========================================
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public void setSourcePath(String sourcePath) {
+        this.sourcePath = sourcePath;
+    }
+
+    public Long getAnswerKeyId() {
+        return answerKeyId;
+    }
+
+    public void setAnswerKeyId(Long answerKeyId) {
+        this.answerKeyId = answerKeyId;
+    }
+
+    public int getTotalFiles() {
+        return totalFiles;
+    }
+
+    public void setTotalFiles(int totalFiles) {
+        this.totalFiles = totalFiles;
+    }
+
+    public int getProcessedFiles() {
+        return processedFiles;
+    }
+
+    public void setProcessedFiles(int processedFiles) {
+        this.processedFiles = processedFiles;
+    }
+
+    public int getSuccessfulFiles() {
+        return successfulFiles;
+    }
+
+    public void setSuccessfulFiles(int successfulFiles) {
+        this.successfulFiles = successfulFiles;
+    }
+
+    public int getFailedFiles() {
+        return failedFiles;
+    }
+
+    public void setFailedFiles(int failedFiles) {
+        this.failedFiles = failedFiles;
+    }
+
+    public BatchStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(BatchStatus status) {
+        this.status = status;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    // =========================================
+    // Helper Methods
+    // =========================================
+
+    /**
+     * Number of files not processed yet.
+     */
+    public int getRemainingFiles() {
+        return Math.max(0, totalFiles - processedFiles);
+    }
+
+    /**
+     * Whether the batch stopped before all files were processed
+     * (interrupted by a crash, or paused).
+     */
+    public boolean isResumable() {
+        return (status == BatchStatus.RUNNING || status == BatchStatus.PAUSED) && getRemainingFiles() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Batch[id=%d, source=%s, %d/%d processed, status=%s]",
+            id, sourcePath, processedFiles, totalFiles, status.getValue());
+    }
+
+    // =========================================
+    // Enums
+    // =========================================
+
+    public enum BatchStatus {
+        PENDING("pending"),
+        RUNNING("running"),
+        PAUSED("paused"),
+        COMPLETED("completed"),
+        CANCELLED("cancelled");
+
+        private final String value;
+
+        BatchStatus(String value) {
+            this.value = value;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public static BatchStatus fromValue(String value) {
+            for (BatchStatus status : values()) {
+                if (status.value.equalsIgnoreCase(value)) {
+                    return status;
+                }
+            }
+            return PENDING;
+        }
+    }
+}
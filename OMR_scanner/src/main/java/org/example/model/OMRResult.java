@@ -1,5 +1,6 @@
 package org.example.model;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -138,6 +139,16 @@ public class OMRResult {
         return answers.get(questionNumber - 1);
     }
 
+    /**
+     * Get the wall time of each processing step in milliseconds,
+     * or an empty map if the processor did not record any.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Double> getStageTimings() {
+        Object timings = metadata != null ? metadata.get("stageTimings") : null;
+        return timings instanceof Map ? (Map<String, Double>) timings : Collections.emptyMap();
+    }
+
     /**
      * Get the total number of questions
      */
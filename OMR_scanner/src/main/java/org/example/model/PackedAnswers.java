@@ -0,0 +1,129 @@
+package org.example.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of a scan's answers, stored in {@code scans.answers_packed}.
+ *
+ * Layout (big-endian):
+ * <pre>
+ *   byte 0      format version
+ *   bytes 1-2   number of the first question
+ *   bytes 3-4   question count n
+ *   n x 3 bytes one entry per question, in order:
+ *               byte 0  bits 0-2 detected answer, bits 3-5 key answer, bit 6 correct
+ *               byte 1  bits 0-2 status (7 = no answer stored for this question)
+ *               byte 2  confidence quantized to 0..255
+ * </pre>
+ * Answers are coded 0 = none, 1-4 = A-D, 5 = MULTIPLE. A 60-question scan
+ * takes 185 bytes instead of 60 rows.
+ */
+public final class PackedAnswers {
+
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_BYTES = 5;
+    private static final int ENTRY_BYTES = 3;
+    private static final int NO_ENTRY = 7;
+    private static final String[] ANSWERS = {null, "A", "B", "C", "D", "MULTIPLE"};
+    private static final ScanAnswer.AnswerStatus[] STATUSES = {
+        ScanAnswer.AnswerStatus.CORRECT,
+        ScanAnswer.AnswerStatus.WRONG,
+        ScanAnswer.AnswerStatus.EMPTY,
+        ScanAnswer.AnswerStatus.INVALID,
+        ScanAnswer.AnswerStatus.VALID
+    };
+
+    private PackedAnswers() {
+    }
+
+    /**
+     * Pack answers (in any order; question numbers 1..65535).
+     *
+     * @return The packed form, or null if there are no answers
+     * @throws IllegalArgumentException for an answer other than A-D or MULTIPLE
+     */
+    public static byte[] pack(List<ScanAnswer> answers) {
+        if (answers == null || answers.isEmpty()) return null;
+
+        int first = Integer.MAX_VALUE, last = Integer.MIN_VALUE;
+        for (ScanAnswer answer : answers) {
+            first = Math.min(first, answer.getQuestionNumber());
+            last = Math.max(last, answer.getQuestionNumber());
+        }
+        if (first < 0 || last > 0xFFFF) {
+            throw new IllegalArgumentException("Question number out of range: " + first + ".." + last);
+        }
+        int count = last - first + 1;
+
+        byte[] packed = new byte[HEADER_BYTES + count * ENTRY_BYTES];
+        packed[0] = (byte) FORMAT_VERSION;
+        packed[1] = (byte) (first >> 8);
+        packed[2] = (byte) first;
+        packed[3] = (byte) (count >> 8);
+        packed[4] = (byte) count;
+        for (int i = 0; i < count; i++) {
+            packed[HEADER_BYTES + i * ENTRY_BYTES + 1] = NO_ENTRY;   // Gaps stay empty
+        }
+
+        for (ScanAnswer answer : answers) {
+            int offset = HEADER_BYTES + (answer.getQuestionNumber() - first) * ENTRY_BYTES;
+            packed[offset] = (byte) (answerCode(answer.getDetectedAnswer())
+                | answerCode(answer.getCorrectAnswer()) << 3
+                | (answer.isCorrect() ? 1 << 6 : 0));
+            packed[offset + 1] = (byte) statusCode(answer.getStatus());
+            packed[offset + 2] = (byte) Math.round(Math.max(0, Math.min(1, answer.getConfidence())) * 255);
+        }
+        return packed;
+    }
+
+    /**
+     * Expand packed answers back into ScanAnswer objects, ordered by question number.
+     *
+     * @param scanId Scan the answers belong to (may be null)
+     */
+    public static List<ScanAnswer> unpack(byte[] packed, Long scanId) {
+        List<ScanAnswer> answers = new ArrayList<>();
+        if (packed == null || packed.length < HEADER_BYTES) return answers;
+        if (packed[0] != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Unsupported packed answer format: " + packed[0]);
+        }
+
+        int first = (packed[1] & 0xFF) << 8 | (packed[2] & 0xFF);
+        int count = (packed[3] & 0xFF) << 8 | (packed[4] & 0xFF);
+        count = Math.min(count, (packed.length - HEADER_BYTES) / ENTRY_BYTES);
+        for (int i = 0; i < count; i++) {
+            int offset = HEADER_BYTES + i * ENTRY_BYTES;
+            int status = packed[offset + 1] & 0x07;
+            if (status == NO_ENTRY) continue;
+
+            int codes = packed[offset] & 0xFF;
+            ScanAnswer answer = new ScanAnswer();
+            answer.setScanId(scanId);
+            answer.setQuestionNumber(first + i);
+            answer.setDetectedAnswer(ANSWERS[Math.min(codes & 0x07, ANSWERS.length - 1)]);
+            answer.setCorrectAnswer(ANSWERS[Math.min(codes >> 3 & 0x07, ANSWERS.length - 1)]);
+            answer.setCorrect((codes & 1 << 6) != 0);
+            answer.setStatus(status < STATUSES.length ? STATUSES[status] : ScanAnswer.AnswerStatus.VALID);
+            answer.setConfidence((packed[offset + 2] & 0xFF) / 255.0);
+            answers.add(answer);
+        }
+        return answers;
+    }
+
+    private static int answerCode(String answer) {
+        if (answer == null) return 0;
+        for (int i = 1; i < ANSWERS.length; i++) {
+            if (ANSWERS[i].equalsIgnoreCase(answer)) return i;
+        }
+        throw new IllegalArgumentException("Cannot store answer: " + answer);
+    }
+
+    private static int statusCode(ScanAnswer.AnswerStatus status) {
+        for (int i = 0; i < STATUSES.length; i++) {
+            if (STATUSES[i] == status) return i;
+        }
+        return statusCode(ScanAnswer.AnswerStatus.VALID);
+    }
+}
@@ -2,7 +2,9 @@ package org.example.model;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents a scan result stored in the database.
@@ -28,12 +30,19 @@ public class Scan {
     private long processingTimeMs;
     private String errorMessage;
     
+    // Hash of the image bytes and pipeline version (see ScanService.computeContentHash)
+    private String contentHash;
+    
     // Related data
     private List<ScanAnswer> answers;
+    private byte[] packedAnswers;   // Stored form, expanded on first getAnswers()
     private AnswerKey answerKey;
     
     // Timestamps
     private LocalDateTime createdAt;
+    
+    // Wall time per processing step in milliseconds (see OMRResult.getStageTimings)
+    private Map<String, Double> stageTimings = new LinkedHashMap<>();
 
     // =========================================
     // Constructors
@@ -153,11 +162,24 @@ public class Scan {
     }
 
     public List<ScanAnswer> getAnswers() {
+        if (packedAnswers != null) {
+            answers = PackedAnswers.unpack(packedAnswers, id);
+            packedAnswers = null;
+        }
         return answers;
     }
 
     public void setAnswers(List<ScanAnswer> answers) {
         this.answers = answers;
+        this.packedAnswers = null;
+    }
+
+    /**
+     * Set the answers in their stored form (see {@link PackedAnswers}).
+     * They are only unpacked if {@link #getAnswers()} is called.
+     */
+    public void setPackedAnswers(byte[] packedAnswers) {
+        this.packedAnswers = packedAnswers;
     }
 
     public AnswerKey getAnswerKey() {
@@ -171,6 +193,14 @@ public class Scan {
         }
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -179,6 +209,14 @@ public class Scan {
         this.createdAt = createdAt;
     }
 
+    public Map<String, Double> getStageTimings() {
+        return stageTimings;
+    }
+
+    public void setStageTimings(Map<String, Double> stageTimings) {
+        this.stageTimings = stageTimings != null ? stageTimings : new LinkedHashMap<>();
+    }
+
     // =========================================
     // Helper Methods
     // =========================================
@@ -241,6 +279,7 @@ public class Scan {
         this.studentId = result.getStudentId();
         this.testId = result.getTestId();
         this.processingTimeMs = result.getProcessingTimeMs();
+        this.stageTimings = new LinkedHashMap<>(result.getStageTimings());
         
         if (!result.isSuccessful()) {
             this.status = ScanStatus.FAILED;
@@ -254,6 +293,7 @@ public class Scan {
         this.scoreEmpty = 0;
         this.scoreInvalid = 0;
         this.answers = new ArrayList<>();
+        this.packedAnswers = null;
 
         // Grade each answer
         List<String> detectedAnswers = result.getAnswers();
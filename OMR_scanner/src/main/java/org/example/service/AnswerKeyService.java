@@ -102,8 +102,7 @@ public class AnswerKeyService {
         String sql = "SELECT * FROM answer_keys ORDER BY name";
         List<AnswerKey> keys = new ArrayList<>();
         
-        try (Statement stmt = db.getConnection().createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        try (ResultSet rs = db.executeQuery(sql)) {
             while (rs.next()) {
                 keys.add(mapResultSetToAnswerKey(rs));
             }
@@ -248,17 +247,13 @@ public class AnswerKeyService {
     private void insertItems(long answerKeyId, List<AnswerKeyItem> items) throws SQLException {
         String sql = "INSERT INTO answer_key_items (answer_key_id, question_number, correct_answer) VALUES (?, ?, ?)";
         
-        try (PreparedStatement pstmt = db.getConnection().prepareStatement(sql)) {
-            for (AnswerKeyItem item : items) {
-                if (item.getCorrectAnswer() != null) {
-                    pstmt.setLong(1, answerKeyId);
-                    pstmt.setInt(2, item.getQuestionNumber());
-                    pstmt.setString(3, item.getCorrectAnswer());
-                    pstmt.addBatch();
-                }
+        List<Object[]> rows = new ArrayList<>();
+        for (AnswerKeyItem item : items) {
+            if (item.getCorrectAnswer() != null) {
+                rows.add(new Object[] {answerKeyId, item.getQuestionNumber(), item.getCorrectAnswer()});
             }
-            pstmt.executeBatch();
         }
+        db.executeBatch(sql, rows);
     }
 
     /**
@@ -0,0 +1,463 @@
+package org.example.service;
+
+import org.example.SamplingPlan;
+import org.example.model.AnswerKey;
+import org.example.model.Batch;
+import org.example.model.Scan;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multi-core batch engine for processing many OMR sheets.
+ *
+ * Each batch runs on a {@link StagedScanPipeline}: decoding, the OpenCV
+ * geometry and extraction stages, and grading + saving each have their own
+ * threads, so I/O and database writes overlap with CV work. The CPU stages
+ * are sized to the number of cores by default. Results are stored by input
+ * index, so {@link #getResults()} always follows the order of the submitted files.
+ *
+ * Batches saved to the database are recorded through {@link BatchService}:
+ * each file's outcome is committed together with its scan, and a batch that
+ * was interrupted (e.g. by a crash) can be continued with {@link #resumeBatch}.
+ *
+ * This class has no JavaFX dependency; UI code observes progress through
+ * {@link BatchListener} and is responsible for marshalling onto its own thread.
+ */
+public class BatchProcessingService {
+
+    private final ScanService scanService;
+    private final AnswerKeyService answerKeyService;
+    private final BatchService batchService;
+    private final int threadCount;
+    private volatile boolean forceReprocess = false;
+    private volatile SamplingPlan samplingPlan;   // null = the default layout
+    private volatile int groupCommitSize = ScanWriter.DEFAULT_GROUP_SIZE;
+
+    // Current batch state
+    private volatile StagedScanPipeline pipeline;
+    private volatile Thread feeder;
+    private volatile boolean running = false;
+    private volatile List<BatchResult> results = Collections.emptyList();
+    private volatile Batch currentBatch;
+
+    public BatchProcessingService(ScanService scanService) {
+        this(scanService, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchProcessingService(ScanService scanService, int threadCount) {
+        this.scanService = scanService;
+        this.answerKeyService = new AnswerKeyService();
+        this.batchService = new BatchService(scanService);
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    // =========================================
+    // Batch Control
+    // =========================================
+
+    /**
+     * Start processing a batch of files in the background.
+     * Returns immediately; progress is reported through the listener.
+     *
+     * When saving to the database, the batch and its files are recorded first
+     * and every sheet's progress is persisted with its scan, so an interrupted
+     * batch can later be continued with {@link #resumeBatch}.
+     *
+     * @param files Files to process, in the order results should be reported
+     * @param answerKey Optional answer key for grading (null for auto-detect)
+     * @param saveToDb Whether each scan should be saved to the database
+     * @param listener Progress callbacks (may be null)
+     * @throws IllegalStateException if a batch is already running
+     */
+    public synchronized void start(List<File> files, AnswerKey answerKey, boolean saveToDb,
+                                   BatchListener listener) {
+        if (isRunning()) {
+            throw new IllegalStateException("A batch is already running");
+        }
+
+        List<BatchResult> batchResults = new ArrayList<>(files.size());
+        List<Integer> pending = new ArrayList<>(files.size());
+        for (File file : files) {
+            pending.add(batchResults.size());
+            batchResults.add(new BatchResult(file));
+        }
+
+        Batch batch = null;
+        if (saveToDb && !files.isEmpty()) {
+            Path source = files.get(0).toPath().toAbsolutePath().normalize().getParent();
+            batch = new Batch(source != null ? String.valueOf(source.getFileName()) : null,
+                source != null ? source.toString() : null);
+            batch.setAnswerKeyId(answerKey != null ? answerKey.getId() : null);
+            try {
+                batch = batchService.create(batch, files);
+            } catch (SQLException e) {
+                // Still process the files; the batch just cannot be resumed
+                System.err.println("⚠ Failed to record batch: " + e.getMessage());
+                batch = null;
+            }
+        }
+
+        run(batch, batchResults, pending, answerKey, saveToDb, listener);
+    }
+
+    /**
+     * Continue an interrupted batch. Files already recorded as processed keep
+     * their results (and scans); only the pending files are processed.
+     *
+     * @param batchId A batch from {@link BatchService#findResumable()}
+     * @param listener Progress callbacks (may be null)
+     * @return The number of files left to process
+     * @throws IllegalStateException if a batch is already running
+     */
+    public synchronized int resumeBatch(long batchId, BatchListener listener) throws SQLException {
+        if (isRunning()) {
+            throw new IllegalStateException("A batch is already running");
+        }
+        Batch batch = batchService.findById(batchId)
+            .orElseThrow(() -> new SQLException("Batch not found: " + batchId));
+
+        List<BatchResult> batchResults = new ArrayList<>();
+        List<Integer> pending = new ArrayList<>();
+        for (BatchService.BatchFile batchFile : batchService.findFiles(batchId)) {
+            BatchResult result = new BatchResult(batchFile.file);
+            switch (batchFile.status) {
+                case PENDING -> pending.add(batchResults.size());
+                case FAILED -> {
+                    result.status = BatchResult.Status.FAILED;
+                    result.error = batchFile.error;
+                }
+                default -> {
+                    result.status = batchFile.status == Scan.ScanStatus.REVIEW
+                        ? BatchResult.Status.REVIEW : BatchResult.Status.SUCCESS;
+                    if (batchFile.scanId != null) {
+                        result.scan = scanService.findById(batchFile.scanId).orElse(null);
+                    }
+                }
+            }
+            batchResults.add(result);
+        }
+
+        AnswerKey answerKey = null;
+        if (batch.getAnswerKeyId() != null) {
+            answerKey = answerKeyService.findById(batch.getAnswerKeyId()).orElse(null);
+        }
+        batchService.updateStatus(batchId, Batch.BatchStatus.RUNNING);
+
+        System.out.println("✓ Resuming batch " + batchId + ": " + pending.size() + " of " +
+            batchResults.size() + " files left");
+        run(batch, batchResults, pending, answerKey, true, listener);
+        return pending.size();
+    }
+
+    /**
+     * Run the pending entries of a batch through a new pipeline.
+     *
+     * @param batch The recorded batch, or null when progress is not persisted
+     * @param pending Indexes into batchResults that still need processing
+     */
+    private void run(Batch batch, List<BatchResult> batchResults, List<Integer> pending,
+                     AnswerKey answerKey, boolean saveToDb, BatchListener listener) {
+        BatchListener callbacks = listener != null ? listener : new BatchListener() {};
+        int total = batchResults.size();
+        results = Collections.unmodifiableList(batchResults);
+        currentBatch = batch;
+
+        // Load answer key items once instead of once per sheet
+        AnswerKey gradingKey = loadAnswerKeyItems(answerKey);
+
+        StagedScanPipeline batchPipeline = new StagedScanPipeline(scanService, threadCount);
+        batchPipeline.setForceReprocess(forceReprocess);
+        batchPipeline.setSamplingPlan(samplingPlan);
+        batchPipeline.setGroupCommit(groupCommitSize, ScanWriter.DEFAULT_MAX_DELAY_MILLIS);
+        AtomicInteger completed = new AtomicInteger(total - pending.size());
+        long startTime = System.currentTimeMillis();
+
+        if (batch != null) {
+            // Record each sheet's progress in the same transaction as its scan
+            long batchId = batch.getId();
+            batchPipeline.setScanSaver((job, scan) -> batchService.saveScan(batchId, job.index, scan));
+        }
+
+        batchPipeline.start(gradingKey, saveToDb, new StagedScanPipeline.PipelineListener() {
+            @Override
+            public void onStarted(StagedScanPipeline.Job job) {
+                batchResults.get(job.index).status = BatchResult.Status.PROCESSING;
+                callbacks.onItemStarted(job.index, job.file);
+            }
+
+            @Override
+            public void onCompleted(StagedScanPipeline.Job job) {
+                BatchResult result = batchResults.get(job.index);
+                if (job.isFailed()) {
+                    result.error = job.getError();
+                    result.status = BatchResult.Status.FAILED;
+                    recordFailure(batch, job.index, job.getError());
+                } else {
+                    result.scan = job.getScan();
+                    result.status = result.scan.needsReview()
+                        ? BatchResult.Status.REVIEW : BatchResult.Status.SUCCESS;
+                }
+                callbacks.onItemCompleted(job.index, result, completed.incrementAndGet(), total);
+            }
+
+            @Override
+            public void onFinished(boolean stopped) {
+                // Sheets interrupted mid-pipeline are left as not processed
+                for (BatchResult result : batchResults) {
+                    if (result.status == BatchResult.Status.PROCESSING) {
+                        result.status = BatchResult.Status.PENDING;
+                    }
+                }
+                updateBatchStatus(batch, stopped ? Batch.BatchStatus.CANCELLED : Batch.BatchStatus.COMPLETED);
+                running = false;
+                System.out.println((stopped ? "⚠ Batch stopped: " : "✓ Batch finished: ")
+                    + completed.get() + "/" + total + " files processed ("
+                    + batchPipeline.getCacheHits() + " from cache) in "
+                    + (System.currentTimeMillis() - startTime) + "ms");
+                for (StagedScanPipeline.StageStats stats : batchPipeline.getStageStats()) {
+                    System.out.println("  " + stats);
+                }
+                ScanWriter.WriterStats writerStats = batchPipeline.getWriterStats();
+                if (writerStats != null) {
+                    System.out.println("  " + writerStats);
+                }
+                for (ScanService.StageTimingStats stats : getStageTimingSummary()) {
+                    System.out.println("  " + stats);
+                }
+                callbacks.onBatchFinished(stopped);
+            }
+        });
+        pipeline = batchPipeline;
+        running = true;
+
+        System.out.println("✓ Batch started: " + pending.size() + " files on " + threadCount + " CPU threads");
+
+        // Feed files from a separate thread; submit() blocks when the decode queue is full
+        Thread feederThread = new Thread(() -> {
+            try {
+                for (int index : pending) {
+                    if (batchPipeline.isStopped()) return;
+                    batchPipeline.submit(index, batchResults.get(index).file);
+                }
+                batchPipeline.finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "omr-batch-feeder");
+        feederThread.setDaemon(true);
+        feeder = feederThread;
+        feederThread.start();
+    }
+
+    /**
+     * Suspend the batch. Sheets already in flight finish; no new sheet is started
+     * until {@link #resume()} is called.
+     */
+    public void pause() {
+        StagedScanPipeline current = pipeline;
+        if (current != null) current.pause();
+    }
+
+    /**
+     * Resume a paused batch.
+     */
+    public void resume() {
+        StagedScanPipeline current = pipeline;
+        if (current != null) current.resume();
+    }
+
+    /**
+     * Stop the batch, interrupting work in flight.
+     */
+    public void stop() {
+        StagedScanPipeline current = pipeline;
+        if (current != null) current.stop();
+        Thread feederThread = feeder;
+        if (feederThread != null) feederThread.interrupt();
+    }
+
+    /**
+     * Block until the current batch has finished.
+     *
+     * @return true if the batch finished within the timeout
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        StagedScanPipeline current = pipeline;
+        return current == null || current.awaitCompletion(timeout, unit);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isPaused() {
+        StagedScanPipeline current = pipeline;
+        return current != null && current.isPaused();
+    }
+
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * Reprocess images even if an identical image was saved before
+     * (e.g. after changing the sheet layout). Applies to batches started afterwards.
+     */
+    public void setForceReprocess(boolean forceReprocess) {
+        this.forceReprocess = forceReprocess;
+    }
+
+    /**
+     * Layout the sheets are read with (null for the default layout).
+     * Applies to batches started afterwards.
+     */
+    public void setSamplingPlan(SamplingPlan plan) {
+        this.samplingPlan = plan;
+    }
+
+    /**
+     * Number of sheets saved per transaction (1 commits every sheet on its own).
+     * Larger groups sync the database less often; a sheet is reported
+     * completed once its group is committed. Applies to batches started afterwards.
+     */
+    public void setGroupCommitSize(int groupCommitSize) {
+        this.groupCommitSize = Math.max(1, groupCommitSize);
+    }
+
+    /**
+     * Group commit statistics of the current (or last) batch, or null without group commit.
+     */
+    public ScanWriter.WriterStats getWriterStats() {
+        StagedScanPipeline current = pipeline;
+        return current != null ? current.getWriterStats() : null;
+    }
+
+    /**
+     * Number of sheets of the current (or last) batch reused from earlier scans.
+     */
+    public int getCacheHitCount() {
+        StagedScanPipeline current = pipeline;
+        return current != null ? current.getCacheHits() : 0;
+    }
+
+    /**
+     * Get the recorded batch of the current (or last) run, or null if it was not saved.
+     */
+    public Batch getCurrentBatch() {
+        return currentBatch;
+    }
+
+    public BatchService getBatchService() {
+        return batchService;
+    }
+
+    /**
+     * Get the results of the current (or last) batch, in input order.
+     */
+    public List<BatchResult> getResults() {
+        return results;
+    }
+
+    /**
+     * Get queue depth and throughput for each stage of the current (or last) batch.
+     */
+    public List<StagedScanPipeline.StageStats> getStageStats() {
+        StagedScanPipeline current = pipeline;
+        return current != null ? current.getStageStats() : Collections.emptyList();
+    }
+
+    /**
+     * Get p50/p95/p99 wall time per processing step over the scans of the
+     * current (or last) batch, whether or not they were saved.
+     */
+    public List<ScanService.StageTimingStats> getStageTimingSummary() {
+        Map<String, List<Double>> durations = new LinkedHashMap<>();
+        for (BatchResult result : results) {
+            Scan scan = result.scan;
+            if (scan == null) continue;
+            for (Map.Entry<String, Double> timing : scan.getStageTimings().entrySet()) {
+                durations.computeIfAbsent(timing.getKey(), k -> new ArrayList<>()).add(timing.getValue());
+            }
+        }
+        return ScanService.StageTimingStats.summarize(durations);
+    }
+
+    // =========================================
+    // Private Helper Methods
+    // =========================================
+
+    private void recordFailure(Batch batch, int index, String error) {
+        if (batch == null) return;
+        try {
+            batchService.recordFailure(batch.getId(), index, error);
+        } catch (SQLException e) {
+            System.err.println("Failed to record batch progress: " + e.getMessage());
+        }
+    }
+
+    private void updateBatchStatus(Batch batch, Batch.BatchStatus status) {
+        if (batch == null) return;
+        try {
+            batchService.updateStatus(batch.getId(), status);
+            batch.setStatus(status);
+        } catch (SQLException e) {
+            System.err.println("Failed to update batch status: " + e.getMessage());
+        }
+    }
+
+    private AnswerKey loadAnswerKeyItems(AnswerKey answerKey) {
+        if (answerKey == null || (answerKey.getItems() != null && !answerKey.getItems().isEmpty())) {
+            return answerKey;
+        }
+        try {
+            Optional<AnswerKey> keyWithItems = answerKeyService.findById(answerKey.getId());
+            return keyWithItems.orElse(answerKey);
+        } catch (SQLException e) {
+            System.err.println("Failed to load answer key items: " + e.getMessage());
+            return answerKey;
+        }
+    }
+
+    // =========================================
+    // Inner Classes
+    // =========================================
+
+    /**
+     * Callbacks for batch progress. Invoked on pipeline threads.
+     */
+    public interface BatchListener {
+        default void onItemStarted(int index, File file) {}
+
+        default void onItemCompleted(int index, BatchResult result, int completed, int total) {}
+
+        default void onBatchFinished(boolean stopped) {}
+    }
+
+    /**
+     * Outcome of one file in a batch.
+     */
+    public static class BatchResult {
+        public enum Status {
+            PENDING, PROCESSING, SUCCESS, REVIEW, FAILED
+        }
+
+        public final File file;
+        public volatile Status status = Status.PENDING;
+        public volatile Scan scan;
+        public volatile String error;
+
+        public BatchResult(File file) {
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.example.service;
+
+import org.example.model.Batch;
+import org.example.model.Scan;
+
+import java.io.File;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Service for persisting batch runs and their per-file progress.
+ *
+ * Every file of a batch gets a {@code batch_files} row when the batch is created.
+ * A processed sheet is recorded in the same transaction as its scan insert
+ * ({@link #saveScan}), so after a crash each file is either fully recorded or
+ * still pending, and resuming never inserts a scan twice.
+ */
+public class BatchService {
+
+    private final DatabaseService db;
+    private final ScanService scanService;
+
+    public BatchService(ScanService scanService) {
+        this.db = DatabaseService.getInstance();
+        this.scanService = scanService;
+    }
+
+    // =========================================
+    // CREATE Operations
+    // =========================================
+
+    /**
+     * Create a running batch with one pending entry per file, in input order.
+     *
+     * @return The created batch with ID populated
+     */
+    public Batch create(Batch batch, List<File> files) throws SQLException {
+        String sql = """
+            INSERT INTO batches (name, source_path, answer_key_id, total_files, status, started_at)
+            VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP)
+            """;
+        String fileSql = "INSERT INTO batch_files (batch_id, file_index, file_path) VALUES (?, ?, ?)";
+
+        try {
+            db.beginTransaction();
+
+            batch.setTotalFiles(files.size());
+            batch.setStatus(Batch.BatchStatus.RUNNING);
+            batch.setStartedAt(LocalDateTime.now());
+            long id = db.executeInsert(sql,
+                batch.getName(),
+                batch.getSourcePath(),
+                batch.getAnswerKeyId(),
+                batch.getTotalFiles(),
+                batch.getStatus().getValue());
+            batch.setId(id);
+
+            List<Object[]> rows = new ArrayList<>(files.size());
+            for (int i = 0; i < files.size(); i++) {
+                rows.add(new Object[] {id, i, files.get(i).getAbsolutePath()});
+            }
+            db.executeBatch(fileSql, rows);
+
+            db.commit();
+            return batch;
+
+        } catch (SQLException e) {
+            db.rollback();
+            throw e;
+        }
+    }
+
+    // =========================================
+    // READ Operations
+    // =========================================
+
+    /**
+     * Find a batch by its ID.
+     */
+    public Optional<Batch> findById(long id) throws SQLException {
+        String sql = "SELECT * FROM batches WHERE id = ?";
+
+        try (ResultSet rs = db.executeQuery(sql, id)) {
+            if (rs.next()) {
+                return Optional.of(mapResultSetToBatch(rs));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Find batches that stopped before finishing (crashed while running, or paused),
+     * most recent first.
+     */
+    public List<Batch> findResumable() throws SQLException {
+        String sql = """
+            SELECT * FROM batches
+            WHERE status IN ('running', 'paused') AND processed_files < total_files
+            ORDER BY id DESC
+            """;
+        List<Batch> batches = new ArrayList<>();
+
+        try (ResultSet rs = db.executeQuery(sql)) {
+            while (rs.next()) {
+                batches.add(mapResultSetToBatch(rs));
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * Find the most recent unfinished batch for a source folder.
+     */
+    public Optional<Batch> findResumable(String sourcePath) throws SQLException {
+        for (Batch batch : findResumable()) {
+            if (sourcePath.equals(batch.getSourcePath())) {
+                return Optional.of(batch);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * All files of a batch in input order, with their progress.
+     */
+    public List<BatchFile> findFiles(long batchId) throws SQLException {
+        String sql = "SELECT * FROM batch_files WHERE batch_id = ? ORDER BY file_index";
+        List<BatchFile> files = new ArrayList<>();
+
+        try (ResultSet rs = db.executeQuery(sql, batchId)) {
+            while (rs.next()) {
+                BatchFile file = new BatchFile();
+                file.index = rs.getInt("file_index");
+                file.file = new File(rs.getString("file_path"));
+                file.status = Scan.ScanStatus.fromValue(rs.getString("status"));
+                long scanId = rs.getLong("scan_id");
+                file.scanId = rs.wasNull() ? null : scanId;
+                file.error = rs.getString("error_message");
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    // =========================================
+    // UPDATE Operations
+    // =========================================
+
+    /**
+     * Save a processed sheet's scan and mark its file done, in one transaction.
+     * A scan that is already saved (reused from the result cache) is only linked.
+     */
+    public Scan saveScan(long batchId, int fileIndex, Scan scan) throws SQLException {
+        try {
+            db.beginTransaction();
+
+            if (scan.getId() == null) {
+                scanService.insert(scan);
+            }
+            db.executeUpdate("INSERT OR IGNORE INTO batch_scans (batch_id, scan_id, file_index) VALUES (?, ?, ?)",
+                batchId, scan.getId(), fileIndex);
+            markFile(batchId, fileIndex, scan.getStatus().getValue(), scan.getId(), null);
+
+            long commitStart = System.nanoTime();
+            db.commit();
+            ScanService.recordCommit(scan, (System.nanoTime() - commitStart) / 1_000_000.0);
+            return scan;
+
+        } catch (SQLException e) {
+            db.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Mark a file as failed.
+     */
+    public void recordFailure(long batchId, int fileIndex, String error) throws SQLException {
+        try {
+            db.beginTransaction();
+            markFile(batchId, fileIndex, Scan.ScanStatus.FAILED.getValue(), null, error);
+            db.commit();
+
+        } catch (SQLException e) {
+            db.rollback();
+            throw e;
+        }
+    }
+
+    /**
+     * Change a batch's status. Completing or cancelling it also sets completed_at.
+     */
+    public void updateStatus(long batchId, Batch.BatchStatus status) throws SQLException {
+        boolean finished = status == Batch.BatchStatus.COMPLETED || status == Batch.BatchStatus.CANCELLED;
+        String sql = finished
+            ? "UPDATE batches SET status = ?, completed_at = CURRENT_TIMESTAMP WHERE id = ?"
+            : "UPDATE batches SET status = ?, completed_at = NULL WHERE id = ?";
+        db.executeUpdate(sql, status.getValue(), batchId);
+    }
+
+    // =========================================
+    // DELETE Operations
+    // =========================================
+
+    /**
+     * Delete a batch and its file entries. Its scans are kept.
+     */
+    public boolean delete(long id) throws SQLException {
+        return db.executeUpdate("DELETE FROM batches WHERE id = ?", id) > 0;
+    }
+
+    // =========================================
+    // Private Helper Methods
+    // =========================================
+
+    /**
+     * Set a pending file's outcome and bump the batch counters (inside the caller's transaction).
+     * A file that is already done is left alone, so counters are never counted twice.
+     */
+    private void markFile(long batchId, int fileIndex, String status, Long scanId, String error)
+            throws SQLException {
+        int updated = db.executeUpdate("""
+            UPDATE batch_files SET status = ?, scan_id = ?, error_message = ?
+            WHERE batch_id = ? AND file_index = ? AND status = 'pending'
+            """, status, scanId, error, batchId, fileIndex);
+        if (updated == 0) return;
+
+        boolean failed = Scan.ScanStatus.FAILED.getValue().equals(status);
+        db.executeUpdate("""
+            UPDATE batches SET processed_files = processed_files + 1,
+                successful_files = successful_files + ?, failed_files = failed_files + ?
+            WHERE id = ?
+            """, failed ? 0 : 1, failed ? 1 : 0, batchId);
+    }
+
+    /**
+     * Map a ResultSet row to a Batch object.
+     */
+    private Batch mapResultSetToBatch(ResultSet rs) throws SQLException {
+        Batch batch = new Batch();
+        batch.setId(rs.getLong("id"));
+        batch.setName(rs.getString("name"));
+        batch.setSourcePath(rs.getString("source_path"));
+        long answerKeyId = rs.getLong("answer_key_id");
+        batch.setAnswerKeyId(rs.wasNull() ? null : answerKeyId);
+        batch.setTotalFiles(rs.getInt("total_files"));
+        batch.setProcessedFiles(rs.getInt("processed_files"));
+        batch.setSuccessfulFiles(rs.getInt("successful_files"));
+        batch.setFailedFiles(rs.getInt("failed_files"));
+        batch.setStatus(Batch.BatchStatus.fromValue(rs.getString("status")));
+
+        Timestamp startedAt = rs.getTimestamp("started_at");
+        if (startedAt != null) {
+            batch.setStartedAt(startedAt.toLocalDateTime());
+        }
+
+        Timestamp completedAt = rs.getTimestamp("completed_at");
+        if (completedAt != null) {
+            batch.setCompletedAt(completedAt.toLocalDateTime());
+        }
+
+        Timestamp createdAt = rs.getTimestamp("created_at");
+        if (createdAt != null) {
+            batch.setCreatedAt(createdAt.toLocalDateTime());
+        }
+
+        return batch;
+    }
+
+    // =========================================
+    // Inner Classes
+    // =========================================
+
+    /**
+     * One file of a batch and its outcome.
+     */
+    public static class BatchFile {
+        public int index;
+        public File file;
+        public Scan.ScanStatus status;   // PENDING until processed
+        public Long scanId;
+        public String error;
+
+        public boolean isPending() {
+            return status == Scan.ScanStatus.PENDING;
+        }
+    }
+}
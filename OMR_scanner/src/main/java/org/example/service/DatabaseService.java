@@ -7,9 +7,23 @@ import java.io.InputStreamReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import org.example.model.PackedAnswers;
+import org.example.model.ScanAnswer;
+import org.sqlite.SQLiteConfig;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.*;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 /**
@@ -17,19 +31,46 @@ import java.util.stream.Collectors;
  * 
  * Handles:
  * - Database file creation in DB folder inside application directory (portable)
- * - Connection pooling (single connection for SQLite)
+ * - Connections: one writer plus a small pool of read-only readers (WAL mode)
  * - Schema initialization
  * - Connection lifecycle
+ * 
+ * Services call it from the UI thread, loader threads and batch workers at the
+ * same time. All writes go through the single writer connection, serialized by
+ * a lock: a transaction belongs to the thread that began it and holds the lock
+ * until it commits or rolls back. Queries from other threads run on reader
+ * connections, which in WAL mode see the last committed state and are never
+ * blocked by the writer. A thread inside a transaction reads through the
+ * writer, so it sees its own uncommitted changes.
+ * 
+ * Each connection keeps a cache of prepared statements, so repeated SQL is
+ * compiled once per connection.
  */
 public class DatabaseService {
     
     private static final String DB_FILENAME = "omr_reader.db";
     private static final String SCHEMA_RESOURCE = "/db/schema.sql";
+    private static final int READER_POOL_SIZE = 4;
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    private static final int BUSY_TIMEOUT_MS = 5000;
     
     private static DatabaseService instance;
-    private Connection connection;
+    private Connection connection;       // the writer
+    private StatementCache writerStatements;
     private String dbPath;
     
+    // Serializes writes; held by a thread for the duration of its transaction
+    private final ReentrantLock writeLock = new ReentrantLock();
+    
+    // Nested transactions map onto savepoints (see beginTransaction); guarded by writeLock
+    private int transactionDepth = 0;
+    private final Deque<Savepoint> savepoints = new ArrayDeque<>();
+    
+    // Read-only connections, opened on demand up to READER_POOL_SIZE
+    private final BlockingQueue<Reader> idleReaders = new LinkedBlockingQueue<>();
+    private final List<Reader> readers = new ArrayList<>();
+    private final ThreadLocal<Reader> threadReader = new ThreadLocal<>();
+    
     /**
      * Private constructor for singleton pattern.
      */
@@ -53,25 +94,32 @@ public class DatabaseService {
      * @return true if initialization was successful
      */
     public boolean initialize() {
+        return initialize(getDbPath());
+    }
+    
+    /**
+     * Initialize the database connection and schema using a specific database file.
+     * Any previously open connection is closed first.
+     * 
+     * @param path Path of the SQLite database file (created if missing)
+     * @return true if initialization was successful
+     */
+    public boolean initialize(String path) {
+        writeLock.lock();
         try {
-            // Determine database path
-            dbPath = getDbPath();
+            closeConnections();
+            dbPath = path;
             
             // Ensure parent directory exists
-            Path dbFilePath = Paths.get(dbPath);
+            Path dbFilePath = Paths.get(dbPath).toAbsolutePath();
             Files.createDirectories(dbFilePath.getParent());
             
-            // Create connection
-            String url = "jdbc:sqlite:" + dbPath;
-            connection = DriverManager.getConnection(url);
-            
-            // Enable foreign keys
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute("PRAGMA foreign_keys = ON");
-            }
+            // Create the writer connection (switches the file to WAL)
+            openWriter();
             
             // Initialize schema
             initializeSchema();
+            migrateSchema();
             
             System.out.println("Database initialized at: " + dbPath);
             return true;
@@ -80,25 +128,23 @@ public class DatabaseService {
             System.err.println("Failed to initialize database: " + e.getMessage());
             e.printStackTrace();
             return false;
+        } finally {
+            writeLock.unlock();
         }
     }
     
     /**
-     * Get the database connection.
+     * Get the writer connection.
      * Automatically reconnects if connection was lost.
+     * Only use it inside a transaction ({@link #beginTransaction}), which
+     * keeps other threads off it; prefer the execute methods.
      * 
      * @return Active database connection
      * @throws SQLException if connection cannot be established
      */
     public Connection getConnection() throws SQLException {
         if (connection == null || connection.isClosed()) {
-            String url = "jdbc:sqlite:" + dbPath;
-            connection = DriverManager.getConnection(url);
-            
-            // Enable foreign keys
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute("PRAGMA foreign_keys = ON");
-            }
+            openWriter();
         }
         return connection;
     }
@@ -119,13 +165,14 @@ public class DatabaseService {
      * Call this when the application exits.
      */
     public void close() {
-        if (connection != null) {
-            try {
-                connection.close();
+        writeLock.lock();
+        try {
+            if (connection != null) {
+                closeConnections();
                 System.out.println("Database connection closed.");
-            } catch (SQLException e) {
-                System.err.println("Error closing database: " + e.getMessage());
             }
+        } finally {
+            writeLock.unlock();
         }
     }
     
@@ -176,6 +223,167 @@ public class DatabaseService {
         System.out.println("Database schema initialized successfully.");
     }
     
+    /**
+     * Bring databases created by older versions up to the current schema.
+     * CREATE TABLE IF NOT EXISTS leaves existing tables alone, so new columns
+     * are added here.
+     */
+    private void migrateSchema() throws SQLException {
+        addColumnIfMissing("scans", "content_hash", "TEXT");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_scans_content_hash ON scans(content_hash)");
+        }
+        addColumnIfMissing("scans", "answers_packed", "BLOB");
+        if (tableExists("scan_answers")) {
+            packLegacyAnswers();
+        }
+        rebuildScoreStatsIfEmpty();
+    }
+    
+    /**
+     * Fill the trigger-maintained score aggregates (score_stats, score_values)
+     * from the scans table, for databases that had scans before the triggers existed.
+     */
+    private void rebuildScoreStatsIfEmpty() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT EXISTS (SELECT 1 FROM score_stats)")) {
+                if (rs.next() && rs.getBoolean(1)) return;
+            }
+            
+            connection.setAutoCommit(false);
+            try {
+                stmt.execute("""
+                    INSERT INTO score_stats (test_id, scan_count, score_sum)
+                    SELECT '', COUNT(*), SUM(score_percentage) FROM scans
+                    WHERE status != 'failed' HAVING COUNT(*) > 0
+                    UNION ALL
+                    SELECT test_id, COUNT(*), SUM(score_percentage) FROM scans
+                    WHERE status != 'failed' AND test_id != '' GROUP BY test_id
+                    """);
+                stmt.execute("""
+                    INSERT INTO score_values (test_id, score_percentage, scan_count)
+                    SELECT '', score_percentage, COUNT(*) FROM scans
+                    WHERE status != 'failed' GROUP BY score_percentage
+                    UNION ALL
+                    SELECT test_id, score_percentage, COUNT(*) FROM scans
+                    WHERE status != 'failed' AND test_id != '' GROUP BY test_id, score_percentage
+                    """);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        }
+    }
+    
+    /**
+     * Move answers from the old one-row-per-question scan_answers table into
+     * scans.answers_packed, then drop the table and compact the file.
+     * The old rows did not keep the correct/wrong status, so it is rebuilt
+     * from is_correct and the detected answer the way Scan grades it.
+     */
+    private void packLegacyAnswers() throws SQLException {
+        String selectSql = "SELECT * FROM scan_answers ORDER BY scan_id, question_number";
+        String updateSql = "UPDATE scans SET answers_packed = ? WHERE id = ? AND answers_packed IS NULL";
+        int packed = 0;
+        
+        connection.setAutoCommit(false);
+        try (Statement select = connection.createStatement();
+             ResultSet rs = select.executeQuery(selectSql);
+             PreparedStatement update = connection.prepareStatement(updateSql)) {
+            long scanId = -1;
+            List<ScanAnswer> answers = new ArrayList<>();
+            while (true) {
+                boolean more = rs.next();
+                long nextScanId = more ? rs.getLong("scan_id") : -1;
+                if (nextScanId != scanId && !answers.isEmpty()) {
+                    update.setBytes(1, PackedAnswers.pack(answers));
+                    update.setLong(2, scanId);
+                    update.addBatch();
+                    answers.clear();
+                    if (++packed % 500 == 0) update.executeBatch();
+                }
+                if (!more) break;
+                
+                scanId = nextScanId;
+                answers.add(mapLegacyAnswer(rs));
+            }
+            update.executeBatch();
+            
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("DROP TABLE scan_answers");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        
+        if (packed > 0) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("VACUUM");
+            }
+        }
+        System.out.println("✓ Packed answers of " + packed + " scans into scans.answers_packed");
+    }
+    
+    private ScanAnswer mapLegacyAnswer(ResultSet rs) throws SQLException {
+        ScanAnswer answer = new ScanAnswer();
+        answer.setScanId(rs.getLong("scan_id"));
+        answer.setQuestionNumber(rs.getInt("question_number"));
+        answer.setDetectedAnswer(rs.getString("detected_answer"));
+        answer.setCorrectAnswer(rs.getString("correct_answer"));
+        answer.setConfidence(rs.getDouble("confidence"));
+        answer.setCorrect(rs.getInt("is_correct") == 1);
+        
+        String status = rs.getString("status");
+        if (answer.isCorrect()) {
+            answer.setStatus(ScanAnswer.AnswerStatus.CORRECT);
+        } else if ("multiple".equals(status) || "error".equals(status)) {
+            answer.setStatus(ScanAnswer.AnswerStatus.INVALID);
+        } else if ("empty".equals(status) || answer.getDetectedAnswer() == null) {
+            answer.setStatus(ScanAnswer.AnswerStatus.EMPTY);
+        } else {
+            answer.setStatus(ScanAnswer.AnswerStatus.WRONG);
+        }
+        return answer;
+    }
+    
+    private boolean tableExists(String table) throws SQLException {
+        try (PreparedStatement pstmt = connection.prepareStatement(
+                "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
+    /**
+     * Add a column to a table unless it already exists.
+     * 
+     * @return true if the column was added
+     */
+    public boolean addColumnIfMissing(String table, String column, String definition) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return false;
+                }
+            }
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+        System.out.println("Added column " + table + "." + column);
+        return true;
+    }
+    
     /**
      * Parse SQL statements handling BEGIN...END blocks for triggers.
      */
@@ -260,21 +468,39 @@ public class DatabaseService {
     
     /**
      * Execute a query and return the result set.
-     * Caller is responsible for closing the ResultSet.
+     * Caller is responsible for closing the ResultSet; closing it also releases
+     * the statement and the connection it ran on.
      */
     public ResultSet executeQuery(String sql, Object... params) throws SQLException {
-        PreparedStatement pstmt = getConnection().prepareStatement(sql);
-        setParameters(pstmt, params);
-        return pstmt.executeQuery();
+        if (writeLock.isHeldByCurrentThread()) {
+            // Inside this thread's transaction: read through the writer to see its changes
+            return query(writerStatements(), sql, params, null);
+        }
+        Reader reader = acquireReader();
+        try {
+            return query(reader.statements, sql, params, reader);
+        } catch (SQLException | RuntimeException e) {
+            releaseReader(reader);
+            throw e;
+        }
     }
     
     /**
      * Execute an update (INSERT, UPDATE, DELETE) and return affected row count.
      */
     public int executeUpdate(String sql, Object... params) throws SQLException {
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql)) {
-            setParameters(pstmt, params);
-            return pstmt.executeUpdate();
+        writeLock.lock();
+        try {
+            StatementCache statements = writerStatements();
+            PreparedStatement pstmt = statements.acquire(sql, false);
+            try {
+                setParameters(pstmt, params);
+                return pstmt.executeUpdate();
+            } finally {
+                statements.release(pstmt);
+            }
+        } finally {
+            writeLock.unlock();
         }
     }
     
@@ -282,17 +508,50 @@ public class DatabaseService {
      * Execute an INSERT and return the generated key.
      */
     public long executeInsert(String sql, Object... params) throws SQLException {
-        try (PreparedStatement pstmt = getConnection().prepareStatement(sql, 
-                Statement.RETURN_GENERATED_KEYS)) {
-            setParameters(pstmt, params);
-            pstmt.executeUpdate();
-            
-            try (ResultSet keys = pstmt.getGeneratedKeys()) {
-                if (keys.next()) {
-                    return keys.getLong(1);
+        writeLock.lock();
+        try {
+            StatementCache statements = writerStatements();
+            PreparedStatement pstmt = statements.acquire(sql, true);
+            try {
+                setParameters(pstmt, params);
+                pstmt.executeUpdate();
+                
+                try (ResultSet keys = pstmt.getGeneratedKeys()) {
+                    if (keys.next()) {
+                        return keys.getLong(1);
+                    }
+                }
+                return -1;
+            } finally {
+                statements.release(pstmt);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Execute the same INSERT/UPDATE once per row as a JDBC batch.
+     * 
+     * @param rows Parameters for each execution
+     */
+    public int[] executeBatch(String sql, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) return new int[0];
+        writeLock.lock();
+        try {
+            StatementCache statements = writerStatements();
+            PreparedStatement pstmt = statements.acquire(sql, false);
+            try {
+                for (Object[] row : rows) {
+                    setParameters(pstmt, row);
+                    pstmt.addBatch();
                 }
+                return pstmt.executeBatch();
+            } finally {
+                statements.release(pstmt);
             }
-            return -1;
+        } finally {
+            writeLock.unlock();
         }
     }
     
@@ -323,35 +582,303 @@ public class DatabaseService {
     }
     
     /**
-     * Begin a transaction.
+     * Begin a transaction owned by the calling thread.
+     * Blocks while another thread has a transaction open; every call must be
+     * matched by {@link #commit} or {@link #rollback} on the same thread.
+     * Inside an open transaction this starts a nested one (a savepoint), so
+     * services that manage their own transaction can run inside a larger one
+     * (e.g. a {@link ScanWriter} group) and still roll back only their own work.
      */
     public void beginTransaction() throws SQLException {
-        getConnection().setAutoCommit(false);
+        writeLock.lock();
+        try {
+            Connection conn = getConnection();
+            if (transactionDepth == 0) {
+                conn.setAutoCommit(false);
+            } else {
+                savepoints.push(conn.setSavepoint());
+            }
+            transactionDepth++;
+        } catch (SQLException e) {
+            writeLock.unlock();
+            throw e;
+        }
     }
     
     /**
-     * Commit the current transaction.
+     * Commit the calling thread's transaction.
+     * A nested transaction is folded into the enclosing one. If the commit
+     * fails the transaction stays open, so the caller's {@link #rollback} can end it.
      */
     public void commit() throws SQLException {
+        if (!inTransaction()) return;
         Connection conn = getConnection();
-        if (!conn.getAutoCommit()) {
+        if (transactionDepth > 1) {
+            conn.releaseSavepoint(savepoints.peek());
+            savepoints.pop();
+        } else {
             conn.commit();
             conn.setAutoCommit(true);
         }
+        transactionDepth--;
+        writeLock.unlock();
     }
     
     /**
-     * Rollback the current transaction.
+     * Rollback the calling thread's transaction.
+     * A nested transaction only undoes the work done since it began.
      */
     public void rollback() {
+        if (!inTransaction()) return;
         try {
-            if (connection != null && !connection.getAutoCommit()) {
+            if (transactionDepth > 1) {
+                Savepoint savepoint = savepoints.pop();
+                connection.rollback(savepoint);
+                connection.releaseSavepoint(savepoint);
+            } else {
                 connection.rollback();
                 connection.setAutoCommit(true);
             }
         } catch (SQLException e) {
             System.err.println("Rollback failed: " + e.getMessage());
+        } finally {
+            transactionDepth--;
+            writeLock.unlock();
         }
     }
-}
+    
+    /**
+     * Whether the calling thread has a transaction open.
+     */
+    public boolean inTransaction() {
+        return writeLock.isHeldByCurrentThread() && transactionDepth > 0;
+    }
+    
+    // =========================================
+    // Connections
+    // =========================================
+    
+    private void openWriter() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        // In WAL mode NORMAL still survives application crashes; only a power loss can drop the last commits
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.enforceForeignKeys(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        connection = DriverManager.getConnection("jdbc:sqlite:" + dbPath, config.toProperties());
+        writerStatements = new StatementCache(connection);
+        transactionDepth = 0;
+        savepoints.clear();
+    }
+    
+    private StatementCache writerStatements() throws SQLException {
+        if (connection == null || connection.isClosed()) {
+            openWriter();
+        }
+        return writerStatements;
+    }
+    
+    /**
+     * Borrow a reader for the calling thread. Nested queries on the same thread
+     * (e.g. loading answers while iterating scans) share one reader.
+     */
+    private Reader acquireReader() throws SQLException {
+        Reader reader = threadReader.get();
+        if (reader != null) {
+            reader.leases.incrementAndGet();
+            return reader;
+        }
+        
+        reader = idleReaders.poll();
+        if (reader == null) {
+            synchronized (readers) {
+                if (readers.size() < READER_POOL_SIZE) {
+                    reader = openReader();
+                    readers.add(reader);
+                }
+            }
+        }
+        if (reader == null) {
+            try {
+                reader = idleReaders.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for a database connection", e);
+            }
+        }
+        reader.leases.set(1);
+        threadReader.set(reader);
+        return reader;
+    }
+    
+    private void releaseReader(Reader reader) {
+        if (reader.leases.decrementAndGet() == 0) {
+            threadReader.remove();
+            idleReaders.offer(reader);
+        }
+    }
+    
+    private Reader openReader() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MS);
+        Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath, config.toProperties());
+        return new Reader(conn);
+    }
+    
+    private void closeConnections() {
+        synchronized (readers) {
+            for (Reader reader : readers) {
+                reader.statements.close();
+                closeQuietly(reader.connection);
+            }
+            readers.clear();
+            idleReaders.clear();
+        }
+        if (writerStatements != null) {
+            writerStatements.close();
+            writerStatements = null;
+        }
+        closeQuietly(connection);
+        connection = null;
+        transactionDepth = 0;
+        savepoints.clear();
+    }
+    
+    private static void closeQuietly(Connection conn) {
+        if (conn == null) return;
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Run a query on a cached statement. The returned ResultSet gives the
+     * statement (and reader, if any) back when it is closed.
+     */
+    private ResultSet query(StatementCache statements, String sql, Object[] params, Reader reader)
+            throws SQLException {
+        PreparedStatement pstmt = statements.acquire(sql, false);
+        ResultSet rs;
+        try {
+            setParameters(pstmt, params);
+            rs = pstmt.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            statements.release(pstmt);
+            throw e;
+        }
+        
+        boolean[] closed = {false};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+            new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                if ("close".equals(method.getName()) && method.getParameterCount() == 0) {
+                    if (!closed[0]) {
+                        closed[0] = true;
+                        try {
+                            rs.close();
+                        } finally {
+                            statements.release(pstmt);
+                            if (reader != null) releaseReader(reader);
+                        }
+                    }
+                    return null;
+                }
+                if ("isClosed".equals(method.getName()) && method.getParameterCount() == 0) {
+                    return closed[0] || rs.isClosed();
+                }
+                try {
+                    return method.invoke(rs, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            });
+    }
 
+    // =========================================
+    // Inner Classes
+    // =========================================
+    
+    /**
+     * A read-only connection with its statement cache.
+     */
+    private static class Reader {
+        final Connection connection;
+        final StatementCache statements;
+        final AtomicInteger leases = new AtomicInteger();
+        
+        Reader(Connection connection) {
+            this.connection = connection;
+            this.statements = new StatementCache(connection);
+        }
+    }
+    
+    /**
+     * Prepared statements of one connection, least recently used evicted first.
+     * Only used by the thread currently holding the connection. A statement
+     * still in use (e.g. an open ResultSet during a nested query with the same
+     * SQL) is not handed out twice; a temporary one is prepared instead.
+     */
+    private static class StatementCache {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> cache =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() <= STATEMENT_CACHE_SIZE) return false;
+                    if (!inUse.contains(eldest.getValue())) closeStatement(eldest.getValue());
+                    return true;
+                }
+            };
+        private final List<PreparedStatement> inUse = new ArrayList<>();
+        
+        StatementCache(Connection connection) {
+            this.connection = connection;
+        }
+        
+        PreparedStatement acquire(String sql, boolean returnKeys) throws SQLException {
+            String key = returnKeys ? "K:" + sql : sql;
+            PreparedStatement pstmt = cache.get(key);
+            if (pstmt == null || pstmt.isClosed()) {
+                pstmt = prepare(sql, returnKeys);
+                cache.put(key, pstmt);
+            } else if (inUse.contains(pstmt)) {
+                pstmt = prepare(sql, returnKeys);   // Temporary, closed on release
+            } else {
+                pstmt.clearParameters();
+            }
+            inUse.add(pstmt);
+            return pstmt;
+        }
+        
+        void release(PreparedStatement pstmt) {
+            inUse.remove(pstmt);
+            if (!cache.containsValue(pstmt)) {
+                closeStatement(pstmt);
+            }
+        }
+        
+        void close() {
+            for (PreparedStatement pstmt : cache.values()) {
+                closeStatement(pstmt);
+            }
+            cache.clear();
+            inUse.clear();
+        }
+        
+        private PreparedStatement prepare(String sql, boolean returnKeys) throws SQLException {
+            return returnKeys
+                ? connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)
+                : connection.prepareStatement(sql);
+        }
+        
+        private static void closeStatement(PreparedStatement pstmt) {
+            try {
+                pstmt.close();
+            } catch (SQLException e) {
+                // Already unusable
+            }
+        }
+    }
+}
@@ -22,7 +22,8 @@ public class ExportService {
     /**
      * Export a single scan result to CSV.
      * 
-     * Format: Student ID, Test ID, Answer Key, Date, Score, Correct, Wrong, Empty, Invalid, Q1-Q60
+     * Format: Student ID, Test ID, Answer Key, Date, Score, Correct, Wrong, Empty, Invalid, Q1-Qn
+     * (n = the number of questions on the scan)
      * 
      * @param scan The scan to export
      * @param outputFile The output CSV file
@@ -30,20 +31,17 @@ public class ExportService {
      */
     public void exportScan(Scan scan, File outputFile) throws IOException {
         try (PrintWriter writer = new PrintWriter(new FileWriter(outputFile))) {
-            // Write header
-            writer.print("Student ID,Test ID,Answer Key,Date,Score (%),Correct,Wrong,Empty,Invalid");
-            for (int i = 1; i <= 60; i++) {
-                writer.print(",Q" + i);
-            }
-            writer.println();
+            int questions = questionCount(List.of(scan));
+            writeHeader(writer, questions);
             
             // Write data
-            writeScanRow(writer, scan);
+            writeScanRow(writer, scan, questions);
         }
     }
 
     /**
-     * Export multiple scan results to CSV.
+     * Export multiple scan results to CSV, with one column per question up to
+     * the largest question count among the scans (blank for scans with fewer).
      * 
      * @param scans List of scans to export
      * @param outputFile The output CSV file
@@ -55,16 +53,12 @@ public class ExportService {
         }
         
         try (PrintWriter writer = new PrintWriter(new FileWriter(outputFile))) {
-            // Write header
-            writer.print("Student ID,Test ID,Answer Key,Date,Score (%),Correct,Wrong,Empty,Invalid");
-            for (int i = 1; i <= 60; i++) {
-                writer.print(",Q" + i);
-            }
-            writer.println();
+            int questions = questionCount(scans);
+            writeHeader(writer, questions);
             
             // Write each scan
             for (Scan scan : scans) {
-                writeScanRow(writer, scan);
+                writeScanRow(writer, scan, questions);
             }
         }
     }
@@ -91,10 +85,33 @@ public class ExportService {
         }
     }
 
+    /**
+     * Largest number of answers among the scans.
+     */
+    private static int questionCount(List<Scan> scans) {
+        int questions = 0;
+        for (Scan scan : scans) {
+            List<ScanAnswer> answers = scan.getAnswers();
+            if (answers != null) questions = Math.max(questions, answers.size());
+        }
+        return questions;
+    }
+
+    /**
+     * Write the CSV header with question columns Q1 to Q{questions}.
+     */
+    private void writeHeader(PrintWriter writer, int questions) {
+        writer.print("Student ID,Test ID,Answer Key,Date,Score (%),Correct,Wrong,Empty,Invalid");
+        for (int i = 1; i <= questions; i++) {
+            writer.print(",Q" + i);
+        }
+        writer.println();
+    }
+
     /**
      * Write a single scan row to CSV.
      */
-    private void writeScanRow(PrintWriter writer, Scan scan) {
+    private void writeScanRow(PrintWriter writer, Scan scan, int questions) {
         // Basic info
         writer.print(csvEscape(scan.getStudentId()));
         writer.print(",");
@@ -114,9 +131,9 @@ public class ExportService {
         writer.print(",");
         writer.print(scan.getScoreInvalid());
         
-        // Answers (Q1-Q60)
+        // Answers (Q1 to Q{questions})
         List<ScanAnswer> answers = scan.getAnswers();
-        for (int i = 1; i <= 60; i++) {
+        for (int i = 1; i <= questions; i++) {
             writer.print(",");
             if (answers != null && i <= answers.size()) {
                 ScanAnswer ans = answers.get(i - 1);
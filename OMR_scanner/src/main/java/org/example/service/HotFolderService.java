@@ -0,0 +1,403 @@
+package org.example.service;
+
+import org.example.SamplingPlan;
+import org.example.model.AnswerKey;
+import org.example.model.Scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watch-folder ingestion: picks up images as scanners write them into a
+ * folder and runs them through a long-lived {@link StagedScanPipeline}.
+ *
+ * A new file is submitted only once its size and modification time have not
+ * changed for {@link #setStableMillis stableMillis} and it can be opened for
+ * reading, so half-written files are never decoded. Each scan is saved with
+ * {@link ScanService#save} (a file identical to an earlier one reuses that
+ * scan, see {@link StagedScanPipeline}); afterwards the image is moved into
+ * {@value #DONE_FOLDER}/ or {@value #FAILED_FOLDER}/ (with a {@code .error.txt}
+ * note) and the saved scan is pointed at the new path.
+ *
+ * Change events come from a {@link WatchService}. Network shares often do not
+ * deliver them, so the folder is also rescanned every {@link #setRescanMillis rescanMillis}.
+ * Images already in the folder when the service starts are processed too.
+ *
+ * Like {@link BatchProcessingService} this class has no JavaFX dependency;
+ * callbacks arrive on pipeline or watcher threads.
+ */
+public class HotFolderService {
+
+    public static final String DONE_FOLDER = "processed";
+    public static final String FAILED_FOLDER = "failed";
+
+    private static final long POLL_MILLIS = 250;
+
+    private final ScanService scanService;
+    private final File folder;
+    private final int threadCount;
+
+    private long stableMillis = 2000;
+    private long rescanMillis = 5000;
+    private boolean forceReprocess = false;
+    private SamplingPlan samplingPlan;   // null = the default layout
+
+    private volatile StagedScanPipeline pipeline;
+    private volatile Thread watcher;
+    private volatile WatchService watchService;
+    private volatile boolean running = false;
+
+    // Files waiting to settle (updated by the watcher thread) and files handed to the pipeline
+    private final Map<Path, PendingFile> pending = new ConcurrentHashMap<>();
+    private final Set<Path> inFlight = ConcurrentHashMap.newKeySet();
+    // Processed files that could not be moved out, with their size and timestamp
+    // then; skipped until they change so they are not reprocessed on every rescan
+    private final Map<Path, PendingFile> unmovable = new ConcurrentHashMap<>();
+
+    private final AtomicInteger submitted = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+
+    public HotFolderService(ScanService scanService, File folder) {
+        this(scanService, folder, Runtime.getRuntime().availableProcessors());
+    }
+
+    public HotFolderService(ScanService scanService, File folder, int threadCount) {
+        this.scanService = scanService;
+        this.folder = folder;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    // =========================================
+    // Lifecycle
+    // =========================================
+
+    /**
+     * Start watching the folder. Returns immediately.
+     *
+     * @param answerKey Answer key for grading (null for auto-detect)
+     * @param listener Callbacks (may be null)
+     * @throws IOException if the folder or its subfolders cannot be set up
+     * @throws IllegalStateException if the service is already running
+     */
+    public synchronized void start(AnswerKey answerKey, HotFolderListener listener) throws IOException {
+        if (running) {
+            throw new IllegalStateException("Hot folder is already running");
+        }
+        if (!folder.isDirectory()) {
+            throw new IOException("Not a directory: " + folder);
+        }
+        Files.createDirectories(folder.toPath().resolve(DONE_FOLDER));
+        Files.createDirectories(folder.toPath().resolve(FAILED_FOLDER));
+
+        HotFolderListener callbacks = listener != null ? listener : new HotFolderListener() {};
+        // Load answer key items once instead of once per sheet
+        AnswerKey gradingKey = loadAnswerKeyItems(answerKey);
+
+        WatchService service = FileSystems.getDefault().newWatchService();
+        folder.toPath().register(service, ENTRY_CREATE, ENTRY_MODIFY);
+        watchService = service;
+
+        StagedScanPipeline hotPipeline = new StagedScanPipeline(scanService, threadCount);
+        hotPipeline.setForceReprocess(forceReprocess);
+        hotPipeline.setSamplingPlan(samplingPlan);
+        hotPipeline.start(gradingKey, true, new StagedScanPipeline.PipelineListener() {
+            @Override
+            public void onCompleted(StagedScanPipeline.Job job) {
+                // Runs on the persistence thread, so the path update shares its connection use
+                File movedTo = moveCompleted(job);
+                inFlight.remove(job.file.toPath());
+                if (job.isFailed()) {
+                    failed.incrementAndGet();
+                } else {
+                    completed.incrementAndGet();
+                }
+                callbacks.onFileCompleted(job.file, movedTo, job.getScan(), job.getError());
+            }
+        });
+        pipeline = hotPipeline;
+        running = true;
+
+        Thread watcherThread = new Thread(() -> watch(callbacks), "omr-hot-folder");
+        watcherThread.setDaemon(true);
+        watcher = watcherThread;
+        watcherThread.start();
+
+        System.out.println("✓ Watching " + folder.getAbsolutePath() + " on " + threadCount + " CPU threads");
+    }
+
+    /**
+     * Stop watching. Sheets already submitted are finished first
+     * (up to the timeout); files that were still settling stay in the folder.
+     */
+    public void stop(long timeout, TimeUnit unit) throws InterruptedException {
+        StagedScanPipeline current;
+        synchronized (this) {
+            if (!running) return;
+            running = false;
+            current = pipeline;
+        }
+
+        Thread watcherThread = watcher;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            // Closing only wakes the watcher thread
+        }
+        if (watcherThread != null) watcherThread.join();
+
+        current.finish();
+        if (!current.awaitCompletion(timeout, unit)) {
+            System.err.println("⚠ Hot folder stopped with sheets still in progress");
+            current.stop();
+        }
+        System.out.println("✓ Hot folder stopped: " + completed.get() + " processed, " +
+            failed.get() + " failed");
+    }
+
+    public boolean isRunning() { return running; }
+    public File getFolder() { return folder; }
+    public int getSubmittedCount() { return submitted.get(); }
+    public int getCompletedCount() { return completed.get(); }
+    public int getFailedCount() { return failed.get(); }
+    public int getPendingCount() { return pending.size() + inFlight.size(); }
+
+    /**
+     * Time a file must stay unchanged before it is considered fully written.
+     */
+    public void setStableMillis(long stableMillis) { this.stableMillis = Math.max(0, stableMillis); }
+
+    /**
+     * Interval between full rescans of the folder (for file systems without change events).
+     */
+    public void setRescanMillis(long rescanMillis) { this.rescanMillis = Math.max(POLL_MILLIS, rescanMillis); }
+
+    /**
+     * Reprocess images even if an identical image was saved before. Must be set before {@link #start}.
+     */
+    public void setForceReprocess(boolean forceReprocess) { this.forceReprocess = forceReprocess; }
+
+    /**
+     * Layout the sheets are read with (null for the default layout). Must be set before {@link #start}.
+     */
+    public void setSamplingPlan(SamplingPlan plan) { this.samplingPlan = plan; }
+
+    // =========================================
+    // Watching
+    // =========================================
+
+    private void watch(HotFolderListener callbacks) {
+        long nextRescan = 0;
+        try {
+            while (running) {
+                long now = System.currentTimeMillis();
+                if (now >= nextRescan) {
+                    rescan();
+                    nextRescan = now + rescanMillis;
+                }
+
+                WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            nextRescan = 0;
+                        } else {
+                            track(folder.toPath().resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+
+                submitSettledFiles(callbacks);
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Stopped
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void rescan() {
+        unmovable.keySet().removeIf(path -> !Files.exists(path));
+        File[] files = folder.listFiles(File::isFile);
+        if (files == null) return;
+        for (File file : files) {
+            track(file.toPath());
+        }
+    }
+
+    private void track(Path path) {
+        if (inFlight.contains(path) || pending.containsKey(path)) return;
+        File file = path.toFile();
+        if (file.getName().startsWith(".") || !scanService.getProcessor().isValidImageFile(file)) return;
+        PendingFile stuck = unmovable.get(path);
+        if (stuck != null) {
+            if (file.length() == stuck.size && file.lastModified() == stuck.modified) return;
+            unmovable.remove(path);  // Replaced or rewritten since, so process it again
+        }
+        pending.put(path, new PendingFile());
+    }
+
+    /**
+     * Submit every pending file whose size and timestamp have settled.
+     */
+    private void submitSettledFiles(HotFolderListener callbacks) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, PendingFile>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = iterator.next();
+            Path path = entry.getKey();
+            PendingFile state = entry.getValue();
+            File file = path.toFile();
+
+            if (!file.isFile()) {
+                iterator.remove();  // Deleted or renamed before it settled
+                continue;
+            }
+
+            long size = file.length();
+            long modified = file.lastModified();
+            if (size != state.size || modified != state.modified) {
+                state.size = size;
+                state.modified = modified;
+                state.changedAt = now;
+                continue;
+            }
+            if (size == 0 || now - state.changedAt < stableMillis || !isReadable(path)) {
+                continue;
+            }
+
+            iterator.remove();
+            inFlight.add(path);
+            callbacks.onFileDetected(file);
+            pipeline.submit(submitted.getAndIncrement(), file);
+        }
+    }
+
+    /**
+     * Whether the file can be opened; fails while a writer still holds it exclusively (Windows shares).
+     */
+    private static boolean isReadable(Path path) {
+        try {
+            Files.newInputStream(path).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // =========================================
+    // Completion
+    // =========================================
+
+    private AnswerKey loadAnswerKeyItems(AnswerKey answerKey) {
+        if (answerKey == null || (answerKey.getItems() != null && !answerKey.getItems().isEmpty())) {
+            return answerKey;
+        }
+        try {
+            Optional<AnswerKey> keyWithItems = new AnswerKeyService().findById(answerKey.getId());
+            return keyWithItems.orElse(answerKey);
+        } catch (SQLException e) {
+            System.err.println("Failed to load answer key items: " + e.getMessage());
+            return answerKey;
+        }
+    }
+
+    /**
+     * Move a finished image into the done or failed folder. An image that
+     * cannot be moved (e.g. a share still holds it, or the folder is read-only)
+     * is remembered, so later rescans skip it until it changes.
+     *
+     * @return The new location, or the original file if it could not be moved
+     */
+    private File moveCompleted(StagedScanPipeline.Job job) {
+        Path source = job.file.toPath();
+        Path targetDir = folder.toPath().resolve(job.isFailed() ? FAILED_FOLDER : DONE_FOLDER);
+        try {
+            Path target = uniqueTarget(targetDir, source.getFileName().toString());
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                PendingFile stuck = new PendingFile();
+                stuck.size = job.file.length();
+                stuck.modified = job.file.lastModified();
+                unmovable.put(source, stuck);
+                throw e;
+            }
+
+            if (job.isFailed()) {
+                Files.writeString(targetDir.resolve(target.getFileName() + ".error.txt"),
+                    String.valueOf(job.getError()) + System.lineSeparator());
+            } else {
+                Scan scan = job.getScan();
+                if (scan != null && scan.getId() != null) {
+                    scan.setImagePath(target.toString());
+                    scanService.updateImagePath(scan.getId(), target.toString());
+                }
+            }
+            return target.toFile();
+        } catch (Exception e) {
+            System.err.println("⚠ Could not move " + source.getFileName() + ": " + e.getMessage());
+            return job.file;
+        }
+    }
+
+    /**
+     * A path in the target folder that does not overwrite an earlier file of the same name.
+     */
+    private static Path uniqueTarget(Path dir, String fileName) {
+        Path target = dir.resolve(fileName);
+        int dot = fileName.lastIndexOf('.');
+        String base = dot > 0 ? fileName.substring(0, dot) : fileName;
+        String extension = dot > 0 ? fileName.substring(dot) : "";
+        for (int i = 1; Files.exists(target); i++) {
+            target = dir.resolve(base + "_" + i + extension);
+        }
+        return target;
+    }
+
+    // =========================================
+    // Inner Classes
+    // =========================================
+
+    /**
+     * Callbacks from the hot folder. Invoked on the watcher and pipeline threads.
+     */
+    public interface HotFolderListener {
+        /** A file has settled and was submitted for processing. */
+        default void onFileDetected(File file) {}
+
+        /**
+         * A file has been processed and moved.
+         *
+         * @param scan The saved scan, or null if processing failed
+         * @param error The failure reason, or null on success
+         */
+        default void onFileCompleted(File original, File movedTo, Scan scan, String error) {}
+    }
+
+    private static class PendingFile {
+        long size = -1;
+        long modified = -1;
+        long changedAt;
+    }
+}
@@ -3,6 +3,9 @@ package org.example.service;
 import org.example.model.OMRResult;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Interface for OMR (Optical Mark Recognition) processing.
@@ -40,6 +43,33 @@ public interface IOMRProcessor {
      */
     OMRResult processImage(byte[] imageBytes, String fileName);
     
+    /**
+     * Process a single OMR sheet from a buffer of encoded image data.
+     * The bytes between the buffer's position and limit are used; the
+     * position is not changed. Direct and memory-mapped buffers are read
+     * in place, so large scans can be passed without copying.
+     * 
+     * @param imageData Encoded image data (JPG, PNG, TIFF, etc.)
+     * @param fileName Original filename (for logging/metadata)
+     * @return OMRResult containing extracted data or error information
+     */
+    OMRResult processImage(ByteBuffer imageData, String fileName);
+    
+    /**
+     * Process a single OMR sheet stored in a region of a file channel.
+     * The region is memory-mapped read-only and decoded in place.
+     * 
+     * @param channel Channel opened for reading
+     * @param position Start of the encoded image within the channel
+     * @param size Length of the encoded image in bytes
+     * @param fileName Original filename (for logging/metadata)
+     * @return OMRResult containing extracted data or error information
+     */
+    default OMRResult processImage(FileChannel channel, long position, long size, String fileName)
+            throws IOException {
+        return processImage(channel.map(FileChannel.MapMode.READ_ONLY, position, size), fileName);
+    }
+    
     /**
      * Validate if the given file is a supported image format.
      * 
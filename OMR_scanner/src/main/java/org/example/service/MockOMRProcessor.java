@@ -4,6 +4,7 @@ import org.example.model.OMRResult;
 import org.example.model.OMRResult.AnswerStatus;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -74,6 +75,15 @@ public class MockOMRProcessor implements IOMRProcessor {
         return generateMockResult(fileName);
     }
 
+    @Override
+    public OMRResult processImage(ByteBuffer imageData, String fileName) {
+        if (imageData == null || !imageData.hasRemaining()) {
+            return createErrorResult("Image data is empty");
+        }
+
+        return generateMockResult(fileName);
+    }
+
     @Override
     public boolean isValidImageFile(File file) {
         if (file == null || !file.exists() || !file.isFile()) {
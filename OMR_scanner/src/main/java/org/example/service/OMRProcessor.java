@@ -3,8 +3,10 @@ package org.example.service;
 import org.example.model.OMRResult;
 import org.example.model.OMRResult.AnswerStatus;
 import org.example.OMRSheetProcessor;
+import org.example.OMRSheetProcessorPool;
 
 import java.io.File;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -19,6 +21,23 @@ public class OMRProcessor implements IOMRProcessor {
         ".jpg", ".jpeg", ".png", ".bmp", ".tiff", ".tif"
     );
 
+    private final OMRSheetProcessorPool pool;
+
+    public OMRProcessor() {
+        this(OMRSheetProcessorPool.getInstance());
+    }
+
+    public OMRProcessor(OMRSheetProcessorPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Get the processor pool backing this OMRProcessor.
+     */
+    public OMRSheetProcessorPool getPool() {
+        return pool;
+    }
+
     @Override
     public OMRResult processImage(File imageFile) {
         if (imageFile == null) {
@@ -36,66 +55,13 @@ public class OMRProcessor implements IOMRProcessor {
         long startTime = System.currentTimeMillis();
         
         try {
-            // Disable debug image saving for production
-            OMRSheetProcessor processor = new OMRSheetProcessor();
-            processor.setSaveDebugImages(false);
-            
-            // Use the OMR processor to extract answers
-            OMRSheetProcessor.ProcessResult result = processor.process(imageFile);
-            
-            if (!result.success) {
-                return createErrorResult(result.errorMessage != null ? result.errorMessage : "Processing failed");
-            }
-            
-            // Convert to OMRResult
-            OMRResult omrResult = new OMRResult();
-            omrResult.setSuccessful(true);
-            
-            // Skip ID extraction - return null for manual input
-            omrResult.setStudentId(null);
-            omrResult.setTestId(null);
-            
-            // Convert answers array to list
-            List<String> answers = new ArrayList<>();
-            List<Double> confidences = new ArrayList<>();
-            List<AnswerStatus> statuses = new ArrayList<>();
-            
-            for (int i = 0; i < result.answers.length; i++) {
-                String answer = result.answers[i];
-                double confidence = (i < result.confidences.length) ? result.confidences[i] : 0.0;
-                
-                answers.add(answer);
-                confidences.add(confidence);
-                
-                // Map answer to status
-                if (answer == null || answer.isEmpty()) {
-                    statuses.add(AnswerStatus.EMPTY);
-                } else if ("MULTIPLE".equals(answer)) {
-                    statuses.add(AnswerStatus.MULTIPLE);
-                } else if (confidence < 0.7) {
-                    statuses.add(AnswerStatus.UNCERTAIN);
-                } else {
-                    statuses.add(AnswerStatus.VALID);
-                }
-            }
-            
-            omrResult.setAnswers(answers);
-            omrResult.setConfidenceScores(confidences);
-            omrResult.setAnswerStatuses(statuses);
-            
-            // Add metadata
-            Map<String, Object> metadata = new HashMap<>();
-            metadata.put("fileName", imageFile.getName());
-            metadata.put("processor", PROCESSOR_NAME);
-            metadata.put("timestamp", System.currentTimeMillis());
-            metadata.put("lFiducialsFound", result.lFiducialsFound);
-            metadata.put("rectFiducialsFound", result.rectFiducialsFound);
-            omrResult.setMetadata(metadata);
-            
-            omrResult.setProcessingTimeMs(System.currentTimeMillis() - startTime);
-            
-            return omrResult;
+            // Use a pooled OMR processor (debug images are off after reset)
+            OMRSheetProcessor.ProcessResult result = pool.process(imageFile);
+            return toOMRResult(result, imageFile.getName(), startTime);
             
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return createErrorResult("Processing interrupted");
         } catch (Exception e) {
             e.printStackTrace();  // Print full stack trace for debugging
             return createErrorResult("Processing error: " + e.getMessage() + 
@@ -103,17 +69,97 @@ public class OMRProcessor implements IOMRProcessor {
         }
     }
 
+    /**
+     * Convert a raw sheet processing result into an OMRResult.
+     * 
+     * @param result The result from OMRSheetProcessor
+     * @param fileName Source file name for metadata
+     * @param startTime When processing of this sheet started (epoch millis)
+     */
+    OMRResult toOMRResult(OMRSheetProcessor.ProcessResult result, String fileName, long startTime) {
+        if (!result.success) {
+            return createErrorResult(result.errorMessage != null ? result.errorMessage : "Processing failed");
+        }
+        
+        // Convert to OMRResult
+        OMRResult omrResult = new OMRResult();
+        omrResult.setSuccessful(true);
+        
+        // Skip ID extraction - return null for manual input
+        omrResult.setStudentId(null);
+        omrResult.setTestId(null);
+        
+        // Convert answers array to list
+        List<String> answers = new ArrayList<>();
+        List<Double> confidences = new ArrayList<>();
+        List<AnswerStatus> statuses = new ArrayList<>();
+        
+        for (int i = 0; i < result.answers.length; i++) {
+            String answer = result.answers[i];
+            double confidence = (i < result.confidences.length) ? result.confidences[i] : 0.0;
+            
+            answers.add(answer);
+            confidences.add(confidence);
+            
+            // Map answer to status
+            if (answer == null || answer.isEmpty()) {
+                statuses.add(AnswerStatus.EMPTY);
+            } else if ("MULTIPLE".equals(answer)) {
+                statuses.add(AnswerStatus.MULTIPLE);
+            } else if (confidence < 0.7) {
+                statuses.add(AnswerStatus.UNCERTAIN);
+            } else {
+                statuses.add(AnswerStatus.VALID);
+            }
+        }
+        
+        omrResult.setAnswers(answers);
+        omrResult.setConfidenceScores(confidences);
+        omrResult.setAnswerStatuses(statuses);
+        
+        // Add metadata
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("fileName", fileName);
+        metadata.put("processor", PROCESSOR_NAME);
+        metadata.put("timestamp", System.currentTimeMillis());
+        metadata.put("lFiducialsFound", result.lFiducialsFound);
+        metadata.put("rectFiducialsFound", result.rectFiducialsFound);
+        metadata.put("escalatedQuestions", result.escalatedQuestions);
+        metadata.put("nativeBytesAllocated", result.nativeBytesAllocated);
+        metadata.put("nativeBytesLeaked", result.nativeBytesLeaked);
+        metadata.put("stageTimings", new LinkedHashMap<>(result.stageTimings));
+        omrResult.setMetadata(metadata);
+        
+        omrResult.setProcessingTimeMs(System.currentTimeMillis() - startTime);
+        
+        return omrResult;
+    }
+
     @Override
     public OMRResult processImage(byte[] imageBytes, String fileName) {
-        // For now, save to temp file and process
-        // TODO: Process directly from bytes if needed
+        if (imageBytes == null || imageBytes.length == 0) {
+            return createErrorResult("Image data is empty");
+        }
+        return processImage(ByteBuffer.wrap(imageBytes), fileName);
+    }
+
+    @Override
+    public OMRResult processImage(ByteBuffer imageData, String fileName) {
+        if (imageData == null || !imageData.hasRemaining()) {
+            return createErrorResult("Image data is empty");
+        }
+
+        long startTime = System.currentTimeMillis();
+        
         try {
-            java.nio.file.Path tempFile = java.nio.file.Files.createTempFile("omr_", ".jpg");
-            java.nio.file.Files.write(tempFile, imageBytes);
-            File file = tempFile.toFile();
-            OMRResult result = processImage(file);
-            file.delete(); // Clean up temp file
-            return result;
+            // Decode straight from memory, no temp file
+            OMRSheetProcessor.SheetContext context = OMRSheetProcessor.decode(imageData, fileName);
+            OMRSheetProcessor.ProcessResult result = pool.process(context);
+            return toOMRResult(result, fileName, startTime);
+            
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return createErrorResult("Processing interrupted");
         } catch (Exception e) {
             return createErrorResult("Error processing image bytes: " + e.getMessage());
         }
@@ -0,0 +1,127 @@
+package org.example.service;
+
+import org.example.model.Scan;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through the scans matching a filter, newest first, holding only the
+ * current page in memory.
+ *
+ * Pages are fetched with keyset queries ({@link ScanService#findPage}). The
+ * start cursors of the pages up to the current one are kept, so going back
+ * re-reads a page without scanning the ones before it. The total count comes from a
+ * separate COUNT query and is refreshed with the filter or on {@link #reload}.
+ */
+public class ScanPager {
+
+    private final ScanService scanService;
+    private final int pageSize;
+
+    private ScanService.ScanFilter filter;
+    private final List<ScanService.PageCursor> pageStarts = new ArrayList<>();   // null for the first page
+    private ScanService.ScanPage page = new ScanService.ScanPage();
+    private int pageIndex = 0;
+    private int totalCount = 0;
+
+    public ScanPager(ScanService scanService, int pageSize) {
+        this.scanService = scanService;
+        this.pageSize = pageSize;
+    }
+
+    // =========================================
+    // Navigation
+    // =========================================
+
+    /**
+     * Apply a filter (null for all scans) and load its first page.
+     */
+    public void setFilter(ScanService.ScanFilter filter) throws SQLException {
+        this.filter = filter;
+        pageStarts.clear();
+        pageStarts.add(null);
+        totalCount = scanService.count(filter);
+        load(0);
+    }
+
+    /**
+     * Re-read the count and the current page, e.g. after scans were deleted.
+     * Falls back to the previous page if the current one became empty.
+     */
+    public void reload() throws SQLException {
+        if (pageStarts.isEmpty()) {
+            setFilter(filter);
+            return;
+        }
+        totalCount = scanService.count(filter);
+        load(pageIndex);
+        while (page.scans.isEmpty() && pageIndex > 0) {
+            load(pageIndex - 1);
+        }
+    }
+
+    public void next() throws SQLException {
+        if (!hasNext()) return;
+        if (pageStarts.size() == pageIndex + 1) {
+            pageStarts.add(page.next);
+        }
+        load(pageIndex + 1);
+    }
+
+    public void previous() throws SQLException {
+        if (!hasPrevious()) return;
+        load(pageIndex - 1);
+    }
+
+    public boolean hasNext() {
+        return page.hasNext();
+    }
+
+    public boolean hasPrevious() {
+        return pageIndex > 0;
+    }
+
+    // =========================================
+    // Current Page
+    // =========================================
+
+    public List<Scan> getScans() {
+        return page.scans;
+    }
+
+    public int getPageIndex() {
+        return pageIndex;
+    }
+
+    public int getPageCount() {
+        return Math.max(1, (int) Math.ceil((double) totalCount / pageSize));
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 1-based position of the first scan on the page (0 if the page is empty).
+     */
+    public int getFirstRowNumber() {
+        return page.scans.isEmpty() ? 0 : pageIndex * pageSize + 1;
+    }
+
+    public int getLastRowNumber() {
+        return pageIndex * pageSize + page.scans.size();
+    }
+
+    // =========================================
+    // Private Helper Methods
+    // =========================================
+
+    private void load(int index) throws SQLException {
+        page = scanService.findPage(filter, pageStarts.get(index), pageSize);
+        pageIndex = index;
+        // Pages after this one may have shifted (deletes, new scans)
+        pageStarts.subList(index + 1, pageStarts.size()).clear();
+    }
+}
@@ -1,12 +1,25 @@
 package org.example.service;
 
+import org.example.OMRSheetProcessor;
+import org.example.SamplingPlan;
+import org.example.SheetLayouts;
 import org.example.model.*;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -15,6 +28,9 @@ import java.util.Optional;
  */
 public class ScanService {
     
+    // Format of created_at as written by CURRENT_TIMESTAMP
+    private static final DateTimeFormatter CREATED_AT_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    
     private final DatabaseService db;
     private final AnswerKeyService answerKeyService;
     private IOMRProcessor processor;
@@ -70,6 +86,28 @@ public class ScanService {
         // Process the image
         OMRResult result = processor.processImage(imageFile);
         
+        // Grade against the answer key
+        Scan scan = grade(imageFile, result, answerKey);
+        
+        // Save to database if requested
+        if (saveToDb) {
+            scan = save(scan);
+        }
+        
+        return scan;
+    }
+
+    /**
+     * Build a graded Scan from an already processed OMR result.
+     * Kept separate from {@link #processImage(File, AnswerKey, boolean)} so the
+     * OpenCV work can run on worker threads while grading stays with the caller.
+     * 
+     * @param imageFile The source image file
+     * @param result The OMR processing result
+     * @param answerKey Optional answer key for grading (null for auto-detect)
+     * @return The graded (unsaved) Scan
+     */
+    public Scan grade(File imageFile, OMRResult result, AnswerKey answerKey) throws SQLException {
         // Check if processing failed
         if (!result.isSuccessful()) {
             throw new RuntimeException("OMR processing failed: " + 
@@ -103,11 +141,6 @@ public class ScanService {
         // Populate from result and grade
         scan.populateFromResult(result, answerKey);
         
-        // Save to database if requested
-        if (saveToDb) {
-            scan = save(scan);
-        }
-        
         return scan;
     }
 
@@ -118,47 +151,70 @@ public class ScanService {
         return processImage(imageFile, null, true);
     }
 
+    /**
+     * Content hash of an image read with the default layout.
+     */
+    public String computeContentHash(File imageFile) throws IOException {
+        return computeContentHash(imageFile, SheetLayouts.getInstance().getDefaultPlan());
+    }
+
+    /**
+     * SHA-256 of the image bytes combined with the processor, its pipeline version
+     * and the sheet layout. Identical files give the same hash until the extraction
+     * code (see {@link OMRSheetProcessor#PIPELINE_VERSION}) or the layout changes,
+     * so the hash identifies a reusable result.
+     */
+    public String computeContentHash(File imageFile, SamplingPlan plan) throws IOException {
+        MessageDigest digest = newContentDigest(plan);
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(imageFile.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Content hash of an image already read into memory, equal to the hash of
+     * the file it was read from.
+     */
+    public String computeContentHash(byte[] imageBytes, SamplingPlan plan) {
+        MessageDigest digest = newContentDigest(plan);
+        digest.update(imageBytes);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private MessageDigest newContentDigest(SamplingPlan plan) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        String version = processor.getClass().getSimpleName() + ":" + OMRSheetProcessor.PIPELINE_VERSION + ":" +
+            plan.getFingerprint() + ":";
+        digest.update(version.getBytes(StandardCharsets.UTF_8));
+        return digest;
+    }
+
     // =========================================
     // CREATE Operations
     // =========================================
 
     /**
-     * Save a scan with its answers.
+     * Save a scan with its answers and stage timings.
+     * The time spent inserting the scan is recorded as the "save" stage, and
+     * the commit that makes it durable as the "commit" stage (see {@link #recordCommit}).
      */
     public Scan save(Scan scan) throws SQLException {
-        String sql = """
-            INSERT INTO scans (student_id, test_id, answer_key_id, image_path, 
-                score_correct, score_wrong, score_empty, score_invalid, 
-                score_percentage, status, processing_time_ms, error_message)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-            """;
-        
         try {
             db.beginTransaction();
-            
-            // Insert scan
-            long id = db.executeInsert(sql,
-                scan.getStudentId(),
-                scan.getTestId(),
-                scan.getAnswerKeyId(),
-                scan.getImagePath(),
-                scan.getScoreCorrect(),
-                scan.getScoreWrong(),
-                scan.getScoreEmpty(),
-                scan.getScoreInvalid(),
-                scan.getScorePercentage(),
-                scan.getStatus().getValue(),
-                scan.getProcessingTimeMs(),
-                scan.getErrorMessage());
-            
-            scan.setId(id);
-            
-            // Insert scan answers
-            if (scan.getAnswers() != null && !scan.getAnswers().isEmpty()) {
-                insertAnswers(id, scan.getAnswers());
-            }
-            
+            insert(scan);
+            long commitStart = System.nanoTime();
             db.commit();
+            recordCommit(scan, (System.nanoTime() - commitStart) / 1_000_000.0);
             return scan;
             
         } catch (SQLException e) {
@@ -167,28 +223,80 @@ public class ScanService {
         }
     }
 
+    /**
+     * Insert a scan with its answers and stage timings inside the caller's
+     * transaction (see {@link BatchService#saveScan}). The answers are stored
+     * packed in the scan row (see {@link PackedAnswers}).
+     */
+    void insert(Scan scan) throws SQLException {
+        String sql = """
+            INSERT INTO scans (student_id, test_id, answer_key_id, image_path, 
+                score_correct, score_wrong, score_empty, score_invalid, 
+                score_percentage, status, processing_time_ms, error_message, content_hash, answers_packed)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        
+        long saveStart = System.nanoTime();
+        
+        // Insert scan with its packed answers
+        long id = db.executeInsert(sql,
+            scan.getStudentId(),
+            scan.getTestId(),
+            scan.getAnswerKeyId(),
+            scan.getImagePath(),
+            scan.getScoreCorrect(),
+            scan.getScoreWrong(),
+            scan.getScoreEmpty(),
+            scan.getScoreInvalid(),
+            scan.getScorePercentage(),
+            scan.getStatus().getValue(),
+            scan.getProcessingTimeMs(),
+            scan.getErrorMessage(),
+            scan.getContentHash(),
+            PackedAnswers.pack(scan.getAnswers()));
+        
+        scan.setId(id);
+        if (scan.getAnswers() != null) {
+            for (ScanAnswer answer : scan.getAnswers()) {
+                answer.setScanId(id);
+            }
+        }
+        
+        // Insert stage timings, including this save
+        scan.getStageTimings().put("save", (System.nanoTime() - saveStart) / 1_000_000.0);
+        insertStageTimings(id, scan.getStageTimings());
+    }
+
+    /**
+     * Add the time of the commit that made a scan durable to its stage timings
+     * as the "commit" stage. The stored timings are written inside the
+     * transaction, so they end with "save"; the commit time is only kept with
+     * the scan in memory, e.g. for {@link BatchProcessingService#getStageTimingSummary}.
+     */
+    static void recordCommit(Scan scan, double millis) {
+        scan.getStageTimings().put("commit", millis);
+    }
+
     // =========================================
     // READ Operations
     // =========================================
 
     /**
-     * Find a scan by its ID.
+     * Find a scan by its ID, with its answers.
      */
     public Optional<Scan> findById(long id) throws SQLException {
         String sql = "SELECT * FROM scans WHERE id = ?";
         
         try (ResultSet rs = db.executeQuery(sql, id)) {
             if (rs.next()) {
-                Scan scan = mapResultSetToScan(rs);
-                scan.setAnswers(findAnswersByScanId(id));
-                return Optional.of(scan);
+                return Optional.of(mapResultSetToScan(rs));
             }
         }
         return Optional.empty();
     }
 
     /**
-     * Get all scans (without answers for performance).
+     * Get all scans. Answers are unpacked only when a scan's answers are read.
      */
     public List<Scan> findAll() throws SQLException {
         String sql = "SELECT * FROM scans ORDER BY created_at DESC";
@@ -221,19 +329,41 @@ public class ScanService {
     }
 
     /**
-     * Get scans with pagination.
+     * Get one page of scans matching a filter, newest first.
+     * Pages are addressed by keyset on (created_at, id) rather than OFFSET, so
+     * every page costs one index seek plus pageSize rows, however deep it is.
+     * 
+     * @param filter Filters to apply (null for all scans)
+     * @param after Cursor returned with the previous page (null for the first page)
+     * @param pageSize Maximum number of scans to return
      */
-    public List<Scan> findPage(int page, int pageSize) throws SQLException {
-        String sql = "SELECT * FROM scans ORDER BY created_at DESC LIMIT ? OFFSET ?";
-        List<Scan> scans = new ArrayList<>();
-        
-        int offset = page * pageSize;
-        try (ResultSet rs = db.executeQuery(sql, pageSize, offset)) {
+    public ScanPage findPage(ScanFilter filter, PageCursor after, int pageSize) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("SELECT * FROM scans WHERE 1=1");
+        appendFilter(sql, params, filter);
+        if (after != null) {
+            sql.append(" AND (created_at, id) < (?, ?)");
+            params.add(after.createdAt);
+            params.add(after.id);
+        }
+        // One extra row tells whether there is a next page
+        sql.append(" ORDER BY created_at DESC, id DESC LIMIT ?");
+        params.add(pageSize + 1);
+        
+        ScanPage page = new ScanPage();
+        String lastCreatedAt = null;
+        try (ResultSet rs = db.executeQuery(sql.toString(), params.toArray())) {
             while (rs.next()) {
-                scans.add(mapResultSetToScan(rs));
+                if (page.scans.size() == pageSize) {
+                    Scan last = page.scans.get(pageSize - 1);
+                    page.next = new PageCursor(lastCreatedAt, last.getId());
+                    break;
+                }
+                lastCreatedAt = rs.getString("created_at");
+                page.scans.add(mapResultSetToScan(rs));
             }
         }
-        return scans;
+        return page;
     }
 
     /**
@@ -286,30 +416,16 @@ public class ScanService {
      */
     public List<Scan> search(String studentId, String testId, Scan.ScanStatus status,
                              LocalDateTime fromDate, LocalDateTime toDate) throws SQLException {
+        ScanFilter filter = new ScanFilter();
+        filter.studentId = studentId;
+        filter.testId = testId;
+        filter.status = status;
+        filter.fromDate = fromDate;
+        filter.toDate = toDate;
+        
         StringBuilder sql = new StringBuilder("SELECT * FROM scans WHERE 1=1");
         List<Object> params = new ArrayList<>();
-        
-        if (studentId != null && !studentId.isEmpty()) {
-            sql.append(" AND student_id LIKE ?");
-            params.add("%" + studentId + "%");
-        }
-        if (testId != null && !testId.isEmpty()) {
-            sql.append(" AND test_id = ?");
-            params.add(testId);
-        }
-        if (status != null) {
-            sql.append(" AND status = ?");
-            params.add(status.getValue());
-        }
-        if (fromDate != null) {
-            sql.append(" AND created_at >= ?");
-            params.add(Timestamp.valueOf(fromDate));
-        }
-        if (toDate != null) {
-            sql.append(" AND created_at <= ?");
-            params.add(Timestamp.valueOf(toDate));
-        }
-        
+        appendFilter(sql, params, filter);
         sql.append(" ORDER BY created_at DESC");
         
         List<Scan> scans = new ArrayList<>();
@@ -325,8 +441,18 @@ public class ScanService {
      * Get total count of scans.
      */
     public int count() throws SQLException {
-        String sql = "SELECT COUNT(*) FROM scans";
-        try (ResultSet rs = db.executeQuery(sql)) {
+        return count(null);
+    }
+
+    /**
+     * Count the scans matching a filter (see {@link #findPage}).
+     */
+    public int count(ScanFilter filter) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT COUNT(*) FROM scans WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        appendFilter(sql, params, filter);
+        
+        try (ResultSet rs = db.executeQuery(sql.toString(), params.toArray())) {
             if (rs.next()) {
                 return rs.getInt(1);
             }
@@ -334,6 +460,21 @@ public class ScanService {
         return 0;
     }
 
+    /**
+     * Distinct test IDs of all scans, sorted.
+     */
+    public List<String> findTestIds() throws SQLException {
+        String sql = "SELECT DISTINCT test_id FROM scans WHERE test_id IS NOT NULL AND test_id != '' ORDER BY test_id";
+        List<String> testIds = new ArrayList<>();
+        
+        try (ResultSet rs = db.executeQuery(sql)) {
+            while (rs.next()) {
+                testIds.add(rs.getString(1));
+            }
+        }
+        return testIds;
+    }
+
     /**
      * Get statistics for scans.
      */
@@ -343,38 +484,122 @@ public class ScanService {
 
     /**
      * Get statistics for scans filtered by test ID.
+     * Reads the aggregates that triggers keep up to date on every insert,
+     * delete and regrade (see schema.sql), so the cost does not grow with the
+     * number of scans. Min, max and the histogram look at the distinct scores only.
      */
     public ScanStatistics getStatistics(String testId) throws SQLException {
-        String sql;
-        Object[] params;
-        
-        if (testId != null && !testId.isEmpty()) {
-            sql = """
-                SELECT COUNT(*) as total, AVG(score_percentage) as avg_score,
-                       MAX(score_percentage) as max_score, MIN(score_percentage) as min_score
-                FROM scans WHERE test_id = ? AND status != 'failed'
-                """;
-            params = new Object[]{testId};
-        } else {
-            sql = """
-                SELECT COUNT(*) as total, AVG(score_percentage) as avg_score,
-                       MAX(score_percentage) as max_score, MIN(score_percentage) as min_score
-                FROM scans WHERE status != 'failed'
-                """;
-            params = new Object[]{};
-        }
-        
-        try (ResultSet rs = db.executeQuery(sql, params)) {
-            if (rs.next()) {
-                ScanStatistics stats = new ScanStatistics();
-                stats.totalScans = rs.getInt("total");
-                stats.averageScore = rs.getDouble("avg_score");
-                stats.highestScore = rs.getDouble("max_score");
-                stats.lowestScore = rs.getDouble("min_score");
+        String scope = testId != null ? testId : "";
+        String sql = """
+            SELECT scan_count, score_sum,
+                   (SELECT MIN(score_percentage) FROM score_values v WHERE v.test_id = s.test_id) AS min_score,
+                   (SELECT MAX(score_percentage) FROM score_values v WHERE v.test_id = s.test_id) AS max_score
+            FROM score_stats s WHERE s.test_id = ?
+            """;
+        String histogramSql = """
+            SELECT MIN(CAST(score_percentage / 10 AS INTEGER), 9) AS bucket, SUM(scan_count) AS scans
+            FROM score_values WHERE test_id = ? GROUP BY bucket
+            """;
+        
+        ScanStatistics stats = new ScanStatistics();
+        try (ResultSet rs = db.executeQuery(sql, scope)) {
+            if (!rs.next()) {
                 return stats;
             }
+            stats.totalScans = rs.getInt("scan_count");
+            stats.averageScore = stats.totalScans > 0 ? rs.getDouble("score_sum") / stats.totalScans : 0;
+            stats.highestScore = rs.getDouble("max_score");
+            stats.lowestScore = rs.getDouble("min_score");
+        }
+        try (ResultSet rs = db.executeQuery(histogramSql, scope)) {
+            while (rs.next()) {
+                stats.histogram[Math.max(0, rs.getInt("bucket"))] = rs.getInt("scans");
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * The most recent saved scan of an image with the given content hash, for
+     * skipping images that were already processed. Failed scans are not reused.
+     */
+    public Optional<CachedScan> findCachedScan(String contentHash) throws SQLException {
+        String sql = """
+            SELECT id, answer_key_id FROM scans
+            WHERE content_hash = ? AND status != 'failed'
+            ORDER BY id DESC LIMIT 1
+            """;
+
+        try (ResultSet rs = db.executeQuery(sql, contentHash)) {
+            if (!rs.next()) {
+                return Optional.empty();
+            }
+            long answerKeyId = rs.getLong("answer_key_id");
+            return Optional.of(new CachedScan(rs.getLong("id"), rs.wasNull() ? null : answerKeyId));
+        }
+    }
+
+    /**
+     * Get the recorded wall time of each processing step for a scan.
+     */
+    public Map<String, Double> findStageTimings(long scanId) throws SQLException {
+        String sql = "SELECT stage, duration_ms FROM scan_stage_timings WHERE scan_id = ? ORDER BY rowid";
+        Map<String, Double> timings = new LinkedHashMap<>();
+        
+        try (ResultSet rs = db.executeQuery(sql, scanId)) {
+            while (rs.next()) {
+                timings.put(rs.getString("stage"), rs.getDouble("duration_ms"));
+            }
+        }
+        return timings;
+    }
+
+    /**
+     * Get p50/p95/p99 per processing step over all saved scans, by stage name.
+     * Every percentile is a single lookup on the (stage, duration_ms) index,
+     * so no timing rows are loaded.
+     */
+    public List<StageTimingStats> getStageTimingStats() throws SQLException {
+        String sql = "SELECT stage, COUNT(*) AS n, MAX(duration_ms) AS max_ms FROM scan_stage_timings GROUP BY stage";
+        List<StageTimingStats> summary = new ArrayList<>();
+        
+        try (ResultSet rs = db.executeQuery(sql)) {
+            while (rs.next()) {
+                StageTimingStats stats = new StageTimingStats();
+                stats.stage = rs.getString("stage");
+                stats.count = rs.getInt("n");
+                stats.max = rs.getDouble("max_ms");
+                summary.add(stats);
+            }
+        }
+        for (StageTimingStats stats : summary) {
+            stats.p50 = findDurationAtRank(stats.stage, StageTimingStats.rank(stats.count, 50));
+            stats.p95 = findDurationAtRank(stats.stage, StageTimingStats.rank(stats.count, 95));
+            stats.p99 = findDurationAtRank(stats.stage, StageTimingStats.rank(stats.count, 99));
         }
-        return new ScanStatistics();
+        return summary;
+    }
+
+    /**
+     * The rank-th shortest duration recorded for a stage (1 = shortest).
+     */
+    private double findDurationAtRank(String stage, int rank) throws SQLException {
+        String sql = "SELECT duration_ms FROM scan_stage_timings WHERE stage = ? ORDER BY duration_ms LIMIT 1 OFFSET ?";
+        try (ResultSet rs = db.executeQuery(sql, stage, rank - 1)) {
+            return rs.next() ? rs.getDouble("duration_ms") : 0;
+        }
+    }
+
+    // =========================================
+    // UPDATE Operations
+    // =========================================
+
+    /**
+     * Point a saved scan at the new location of its image (after the file was moved).
+     */
+    public boolean updateImagePath(long id, String imagePath) throws SQLException {
+        String sql = "UPDATE scans SET image_path = ? WHERE id = ?";
+        return db.executeUpdate(sql, imagePath, id) > 0;
     }
 
     // =========================================
@@ -407,101 +632,47 @@ public class ScanService {
     // =========================================
 
     /**
-     * Find all answers for a scan.
+     * Append the WHERE conditions of a filter.
+     * Dates are bound as text in the stored CURRENT_TIMESTAMP format so they
+     * compare correctly with created_at.
      */
-    private List<ScanAnswer> findAnswersByScanId(long scanId) throws SQLException {
-        String sql = "SELECT * FROM scan_answers WHERE scan_id = ? ORDER BY question_number";
-        List<ScanAnswer> answers = new ArrayList<>();
+    private void appendFilter(StringBuilder sql, List<Object> params, ScanFilter filter) {
+        if (filter == null) return;
         
-        try (ResultSet rs = db.executeQuery(sql, scanId)) {
-            while (rs.next()) {
-                ScanAnswer ans = new ScanAnswer();
-                ans.setId(rs.getLong("id"));
-                ans.setScanId(rs.getLong("scan_id"));
-                ans.setQuestionNumber(rs.getInt("question_number"));
-                ans.setDetectedAnswer(rs.getString("detected_answer"));
-                ans.setCorrectAnswer(rs.getString("correct_answer"));
-                ans.setStatus(ScanAnswer.AnswerStatus.fromValue(rs.getString("status")));
-                ans.setConfidence(rs.getDouble("confidence"));
-                ans.setCorrect(rs.getInt("is_correct") == 1);
-                answers.add(ans);
-            }
+        if (filter.studentId != null && !filter.studentId.isEmpty()) {
+            sql.append(" AND student_id LIKE ?");
+            params.add("%" + filter.studentId + "%");
         }
-        return answers;
-    }
-
-    /**
-     * Map ScanAnswer.AnswerStatus to database constraint values.
-     * Database expects: 'valid', 'empty', 'multiple', 'uncertain', 'error'
-     */
-    private String mapStatusToDatabase(ScanAnswer.AnswerStatus status, String detectedAnswer, double confidence) {
-        if (status == null) {
-            return "valid";
+        if (filter.testId != null && !filter.testId.isEmpty()) {
+            sql.append(" AND test_id = ?");
+            params.add(filter.testId);
         }
-        
-        // Check if detected answer is "MULTIPLE" (from OMRResult)
-        if ("MULTIPLE".equals(detectedAnswer)) {
-            return "multiple";
+        if (filter.status != null) {
+            sql.append(" AND status = ?");
+            params.add(filter.status.getValue());
         }
-        
-        switch (status) {
-            case CORRECT:
-            case WRONG:
-                // Check if confidence is low - map to 'uncertain'
-                if (confidence < 0.7) {
-                    return "uncertain";
-                }
-                // Graded answers with high confidence are considered 'valid' in the database
-                return "valid";
-            case EMPTY:
-                return "empty";
-            case INVALID:
-                // INVALID status - map to 'error' for database
-                return "error";
-            case VALID:
-                // Check if confidence is low - map to 'uncertain'
-                if (confidence < 0.7) {
-                    return "uncertain";
-                }
-                return "valid";
-            default:
-                return "valid";
+        if (filter.fromDate != null) {
+            sql.append(" AND created_at >= ?");
+            params.add(filter.fromDate.format(CREATED_AT_FORMAT));
+        }
+        if (filter.toDate != null) {
+            sql.append(" AND created_at <= ?");
+            params.add(filter.toDate.format(CREATED_AT_FORMAT));
         }
     }
-    
+
     /**
-     * Insert scan answers.
+     * Insert the stage timings of a scan.
      */
-    private void insertAnswers(long scanId, List<ScanAnswer> answers) throws SQLException {
-        String sql = """
-            INSERT INTO scan_answers (scan_id, question_number, detected_answer, 
-                correct_answer, status, confidence, is_correct)
-            VALUES (?, ?, ?, ?, ?, ?, ?)
-            """;
+    private void insertStageTimings(long scanId, Map<String, Double> timings) throws SQLException {
+        if (timings == null || timings.isEmpty()) return;
+        String sql = "INSERT INTO scan_stage_timings (scan_id, stage, duration_ms) VALUES (?, ?, ?)";
         
-        try (PreparedStatement pstmt = db.getConnection().prepareStatement(sql)) {
-            for (ScanAnswer ans : answers) {
-                // Ensure status is never null
-                ScanAnswer.AnswerStatus status = ans.getStatus();
-                if (status == null) {
-                    status = ScanAnswer.AnswerStatus.VALID;
-                }
-                
-                // Map ScanAnswer.AnswerStatus to database constraint values
-                // Database expects: 'valid', 'empty', 'multiple', 'uncertain', 'error'
-                String statusValue = mapStatusToDatabase(status, ans.getDetectedAnswer(), ans.getConfidence());
-                
-                pstmt.setLong(1, scanId);
-                pstmt.setInt(2, ans.getQuestionNumber());
-                pstmt.setString(3, ans.getDetectedAnswer());
-                pstmt.setString(4, ans.getCorrectAnswer());
-                pstmt.setString(5, statusValue);
-                pstmt.setDouble(6, ans.getConfidence());
-                pstmt.setInt(7, ans.isCorrect() ? 1 : 0);
-                pstmt.addBatch();
-            }
-            pstmt.executeBatch();
+        List<Object[]> rows = new ArrayList<>(timings.size());
+        for (Map.Entry<String, Double> timing : timings.entrySet()) {
+            rows.add(new Object[] {scanId, timing.getKey(), timing.getValue()});
         }
+        db.executeBatch(sql, rows);
     }
 
     /**
@@ -527,6 +698,8 @@ public class ScanService {
         scan.setStatus(Scan.ScanStatus.fromValue(rs.getString("status")));
         scan.setProcessingTimeMs(rs.getLong("processing_time_ms"));
         scan.setErrorMessage(rs.getString("error_message"));
+        scan.setContentHash(rs.getString("content_hash"));
+        scan.setPackedAnswers(rs.getBytes("answers_packed"));
         
         Timestamp createdAt = rs.getTimestamp("created_at");
         if (createdAt != null) {
@@ -536,6 +709,62 @@ public class ScanService {
         return scan;
     }
 
+    /**
+     * Filters for browsing scans. Unset (null or empty) fields match everything.
+     */
+    public static class ScanFilter {
+        public String studentId;   // Matches any part of the student ID
+        public String testId;
+        public Scan.ScanStatus status;
+        public LocalDateTime fromDate;
+        public LocalDateTime toDate;
+    }
+
+    /**
+     * Position just after the last scan of a page in (created_at, id) order.
+     */
+    public static class PageCursor {
+        public final String createdAt;   // Stored created_at text
+        public final long id;
+
+        public PageCursor(String createdAt, long id) {
+            this.createdAt = createdAt;
+            this.id = id;
+        }
+    }
+
+    /**
+     * One page of scans and the cursor of the page after it.
+     */
+    public static class ScanPage {
+        public final List<Scan> scans = new ArrayList<>();
+        public PageCursor next;   // null on the last page
+
+        public boolean hasNext() {
+            return next != null;
+        }
+    }
+
+    /**
+     * A saved scan that can stand in for reprocessing an identical image.
+     */
+    public static class CachedScan {
+        public final long scanId;
+        public final Long answerKeyId;
+
+        public CachedScan(long scanId, Long answerKeyId) {
+            this.scanId = scanId;
+            this.answerKeyId = answerKeyId;
+        }
+
+        /**
+         * Whether the scan was graded with the given key (any key when auto-detecting).
+         */
+        public boolean matches(AnswerKey answerKey) {
+            return answerKey == null || answerKey.getId() == null || answerKey.getId().equals(answerKeyId);
+        }
+    }
+
     /**
      * Statistics container class.
      */
@@ -544,6 +773,7 @@ public class ScanService {
         public double averageScore;
         public double highestScore;
         public double lowestScore;
+        public int[] histogram = new int[10];   // Scans per 10-point bucket; the last includes 100%
         
         public String getAverageDisplay() {
             return String.format("%.1f%%", averageScore);
@@ -557,5 +787,52 @@ public class ScanService {
             return String.format("%.1f%%", lowestScore);
         }
     }
+
+    /**
+     * Percentiles of one processing step's wall time, in milliseconds.
+     */
+    public static class StageTimingStats {
+        public String stage;
+        public int count;
+        public double p50;
+        public double p95;
+        public double p99;
+        public double max;
+        
+        /**
+         * Summarize the durations recorded for each stage (nearest-rank percentiles).
+         * Stages are returned in the order they first appear.
+         */
+        public static List<StageTimingStats> summarize(Map<String, List<Double>> durationsByStage) {
+            List<StageTimingStats> summary = new ArrayList<>();
+            for (Map.Entry<String, List<Double>> entry : durationsByStage.entrySet()) {
+                double[] sorted = entry.getValue().stream().mapToDouble(Double::doubleValue).sorted().toArray();
+                if (sorted.length == 0) continue;
+                
+                StageTimingStats stats = new StageTimingStats();
+                stats.stage = entry.getKey();
+                stats.count = sorted.length;
+                stats.p50 = sorted[rank(sorted.length, 50) - 1];
+                stats.p95 = sorted[rank(sorted.length, 95) - 1];
+                stats.p99 = sorted[rank(sorted.length, 99) - 1];
+                stats.max = sorted[sorted.length - 1];
+                summary.add(stats);
+            }
+            return summary;
+        }
+        
+        /**
+         * Nearest rank (1 = smallest) of a percentile among count values.
+         */
+        static int rank(int count, int percent) {
+            return Math.max(1, (int) Math.ceil(percent / 100.0 * count));
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%-16s n=%-5d p50=%8.2fms p95=%8.2fms p99=%8.2fms max=%8.2fms",
+                stage, count, p50, p95, p99, max);
+        }
+    }
 }
 
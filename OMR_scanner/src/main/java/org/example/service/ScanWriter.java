@@ -0,0 +1,331 @@
+package org.example.service;
+
+import org.example.model.Scan;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single writer thread that saves scans in group commits.
+ *
+ * Callers hand over scans (or write tasks) and get a future back. The writer
+ * collects them into one transaction until {@link #getGroupSize groupSize}
+ * writes are waiting or {@link #getMaxDelayMillis maxDelayMillis} have passed
+ * since the first one, then commits, so SQLite syncs once per group instead of
+ * once per sheet.
+ *
+ * Each write runs in its own nested transaction (a savepoint) inside the group:
+ * a failing write is rolled back alone and only its future fails. Futures
+ * complete after the group is committed, never before, so a caller that
+ * records progress when its future completes never reports a scan that a crash
+ * could still lose. Completion callbacks run on the writer thread.
+ *
+ * An open group holds the {@link DatabaseService} write lock, so writes from
+ * other threads wait for the commit; reads are not affected.
+ */
+public class ScanWriter implements AutoCloseable {
+
+    public static final int DEFAULT_GROUP_SIZE = 32;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 250;
+
+    private final DatabaseService db;
+    private final ScanService scanService;
+    private final int groupSize;
+    private final long maxDelayMillis;
+    private final BlockingQueue<Write> queue;
+
+    private volatile Thread thread;
+    private volatile boolean closed = false;
+
+    // Statistics
+    private final AtomicLong groups = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong commitNanos = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+
+    public ScanWriter(ScanService scanService) {
+        this(scanService, DEFAULT_GROUP_SIZE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param groupSize Most writes per transaction (1 commits every scan on its own)
+     * @param maxDelayMillis Longest a write waits for its group to fill
+     */
+    public ScanWriter(ScanService scanService, int groupSize, long maxDelayMillis) {
+        this.db = DatabaseService.getInstance();
+        this.scanService = scanService;
+        this.groupSize = Math.max(1, groupSize);
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        // Submitters block once a few groups are waiting
+        this.queue = new ArrayBlockingQueue<>(this.groupSize * 4);
+    }
+
+    // =========================================
+    // Lifecycle
+    // =========================================
+
+    /**
+     * Start the writer thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Writer already started");
+        }
+        Thread writerThread = new Thread(this::run, "omr-scan-writer");
+        writerThread.setDaemon(true);
+        thread = writerThread;
+        writerThread.start();
+    }
+
+    /**
+     * Insert a graded scan (with its answers and stage timings).
+     *
+     * @return Completes with the scan, its ID set, once the insert is committed
+     */
+    public CompletableFuture<Scan> submit(Scan scan) throws InterruptedException {
+        return submit(() -> {
+            scanService.insert(scan);
+            return scan;
+        });
+    }
+
+    /**
+     * Run a database write on the writer thread as part of the next group commit.
+     * The task may open its own (nested) transactions.
+     *
+     * @return Completes with the task's result once the group is committed
+     */
+    public CompletableFuture<Scan> submit(WriteTask task) throws InterruptedException {
+        if (thread == null || closed) {
+            throw new IllegalStateException("Writer is not running");
+        }
+        Write write = new Write(task);
+        queue.put(write);
+        return write.future;
+    }
+
+    /**
+     * Commit everything submitted so far and wait for it, including completion callbacks.
+     */
+    public void flush() throws InterruptedException {
+        if (thread == null || !thread.isAlive()) return;
+        Write barrier = new Write(null);
+        queue.put(barrier);
+        try {
+            barrier.future.get();
+        } catch (ExecutionException e) {
+            // Barriers do not fail
+        }
+    }
+
+    /**
+     * Commit what is queued and stop the writer thread.
+     * If the caller is interrupted while waiting, this returns early with the
+     * thread's interrupt flag set.
+     */
+    @Override
+    public void close() {
+        Thread writerThread;
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            writerThread = thread;
+        }
+        if (writerThread == null) return;
+        try {
+            queue.put(Write.END);
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getGroupSize() { return groupSize; }
+    public long getMaxDelayMillis() { return maxDelayMillis; }
+
+    // =========================================
+    // Writer Thread
+    // =========================================
+
+    private void run() {
+        try {
+            boolean end = false;
+            while (!end) {
+                Write first = queue.take();
+                if (first == Write.END) break;
+
+                List<Write> group = new ArrayList<>(groupSize);
+                group.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+
+                // A barrier ends the group early; it completes after the commit
+                while (!first.isBarrier() && group.size() < groupSize) {
+                    Write next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    if (next == Write.END) {
+                        end = true;
+                        break;
+                    }
+                    group.add(next);
+                    if (next.isBarrier()) break;
+                }
+                writeGroup(group);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Anything left after an interrupt is not written
+            Write write;
+            while ((write = queue.poll()) != null) {
+                if (write != Write.END) {
+                    write.future.completeExceptionally(new IllegalStateException("Scan writer stopped"));
+                }
+            }
+        }
+    }
+
+    private void writeGroup(List<Write> group) {
+        long start = System.nanoTime();
+        List<Scan> results = new ArrayList<>(group.size());
+        List<Exception> errors = new ArrayList<>(group.size());
+        int writes = 0;
+        Exception commitError = null;
+
+        try {
+            db.beginTransaction();
+            for (Write write : group) {
+                Scan result = null;
+                Exception error = null;
+                if (!write.isBarrier()) {
+                    writes++;
+                    try {
+                        db.beginTransaction();
+                        result = write.task.write();
+                        db.commit();
+                    } catch (Exception e) {
+                        db.rollback();
+                        error = e;
+                    }
+                }
+                results.add(result);
+                errors.add(error);
+            }
+
+            long commitStart = System.nanoTime();
+            db.commit();
+            long commitTime = System.nanoTime() - commitStart;
+            commitNanos.addAndGet(commitTime);
+            // Every sheet of the group waited for this commit
+            for (Scan result : results) {
+                if (result != null) ScanService.recordCommit(result, commitTime / 1_000_000.0);
+            }
+        } catch (Exception e) {
+            db.rollback();
+            commitError = e;
+        }
+
+        if (writes > 0) {
+            groups.incrementAndGet();
+            busyNanos.addAndGet(System.nanoTime() - start);
+        }
+
+        // Complete in submission order, only now that the group is durable
+        for (int i = 0; i < group.size(); i++) {
+            Write write = group.get(i);
+            if (write.isBarrier()) {
+                write.future.complete(null);
+                continue;
+            }
+            Exception error = commitError != null ? commitError : errors.get(i);
+            if (error != null) {
+                failed.incrementAndGet();
+                write.future.completeExceptionally(error);
+            } else {
+                written.incrementAndGet();
+                write.future.complete(results.get(i));
+            }
+        }
+    }
+
+    // =========================================
+    // Statistics
+    // =========================================
+
+    /**
+     * Snapshot of how many groups were committed and what they cost.
+     */
+    public WriterStats getStats() {
+        WriterStats stats = new WriterStats();
+        stats.groupSize = groupSize;
+        stats.groups = groups.get();
+        stats.written = written.get();
+        stats.failed = failed.get();
+        stats.commitMillis = commitNanos.get() / 1_000_000.0;
+        stats.busyMillis = busyNanos.get() / 1_000_000.0;
+        return stats;
+    }
+
+    // =========================================
+    // Inner Classes
+    // =========================================
+
+    /**
+     * A write executed on the writer thread inside a group transaction.
+     */
+    public interface WriteTask {
+        Scan write() throws Exception;
+    }
+
+    private static class Write {
+        static final Write END = new Write(null);
+
+        final WriteTask task;
+        final CompletableFuture<Scan> future = new CompletableFuture<>();
+
+        Write(WriteTask task) {
+            this.task = task;
+        }
+
+        boolean isBarrier() {
+            return task == null;
+        }
+    }
+
+    /**
+     * Point-in-time writer statistics.
+     */
+    public static class WriterStats {
+        public int groupSize;
+        public long groups;
+        public long written;
+        public long failed;
+        public double commitMillis;
+        public double busyMillis;
+
+        public double getAverageGroupSize() {
+            return groups > 0 ? (double) (written + failed) / groups : 0;
+        }
+
+        /**
+         * Writer thread time per saved scan, including its share of the commit.
+         */
+        public double getMillisPerScan() {
+            long total = written + failed;
+            return total > 0 ? busyMillis / total : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Writer      group size %d: %d scans in %d commits (avg %.1f), " +
+                    "%.2f ms/scan, %.0f ms committing, %d failed",
+                groupSize, written, groups, getAverageGroupSize(), getMillisPerScan(), commitMillis, failed);
+        }
+    }
+}
@@ -0,0 +1,717 @@
+package org.example.service;
+
+import org.example.OMRSheetProcessor;
+import org.example.OMRSheetProcessorPool;
+import org.example.SamplingPlan;
+import org.example.SheetLayouts;
+import org.example.model.AnswerKey;
+import org.example.model.OMRResult;
+import org.example.model.Scan;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scan pipeline split into stages connected by bounded queues:
+ *
+ * <pre>
+ *   DECODE -> GEOMETRY -> EXTRACTION -> PERSISTENCE
+ *   (imread)  (fiducials,   (row-based     (grading +
+ *              deskew)       answers)       SQLite insert)
+ * </pre>
+ *
+ * Each stage has its own worker threads, so decoding the next sheet and
+ * saving the previous one overlap with the OpenCV work on the current one.
+ * The bounded queues apply back-pressure: {@link #submit} blocks when the
+ * decode queue is full, which also caps how many decoded images are in memory.
+ * Persistence always runs on a single thread because SQLite has a single
+ * writer (see {@link DatabaseService}). With {@link #setGroupCommit} the persistence stage hands each sheet
+ * to a {@link ScanWriter}, which does all of the stage's database work and
+ * commits sheets in groups; a sheet is reported completed once its group is
+ * committed.
+ *
+ * When saving, the decode stage reads each image into memory once, hashes
+ * those bytes and decodes them. An image that was saved before (same bytes,
+ * same pipeline version and layout, same answer key) skips the OpenCV stages
+ * and its stored scan is reused instead of inserting a new one; the lookup is
+ * one indexed query per image, so scans saved by other processes are found
+ * too. {@link #setForceReprocess} turns this off.
+ *
+ * A pipeline runs one batch: {@link #start}, {@link #submit} each file,
+ * then {@link #finish}. Queue depth and throughput per stage are available
+ * from {@link #getStageStats()} while it runs.
+ */
+public class StagedScanPipeline {
+
+    public enum Stage {
+        DECODE, GEOMETRY, EXTRACTION, PERSISTENCE
+    }
+
+    private static final Job POISON = new Job(-1, null);
+
+    private final ScanService scanService;
+    private final IOMRProcessor processor;
+    private final OMRProcessor omrProcessor;      // null when running on a mock processor
+    private final OMRSheetProcessorPool pool;     // null when running on a mock processor
+    private final StageWorkers[] stages;
+
+    private AnswerKey answerKey;
+    private boolean saveToDb;
+    private PipelineListener listener;
+    private ScanSaver saver;
+    private boolean forceReprocess = false;
+    private SamplingPlan samplingPlan;                    // null = the default layout
+    private int groupSize = 1;
+    private long groupDelayMillis = ScanWriter.DEFAULT_MAX_DELAY_MILLIS;
+    private ScanWriter writer;                            // null without group commit
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    // Pause gate (checked before a sheet enters the pipeline)
+    private final ReentrantLock pauseLock = new ReentrantLock();
+    private final Condition resumed = pauseLock.newCondition();
+    private boolean paused = false;
+
+    private final AtomicInteger liveThreads = new AtomicInteger();
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private volatile boolean started = false;
+    private volatile boolean stopped = false;
+
+    /**
+     * Create a pipeline with stage pools sized to the available cores.
+     */
+    public StagedScanPipeline(ScanService scanService) {
+        this(scanService, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a pipeline sized around the given number of CPU threads.
+     */
+    public StagedScanPipeline(ScanService scanService, int cpuThreads) {
+        this(scanService, 2, cpuThreads, Math.max(1, cpuThreads / 2), Math.max(4, cpuThreads * 2));
+    }
+
+    /**
+     * Create a pipeline with explicit stage sizes.
+     *
+     * @param decodeThreads Threads reading and decoding images
+     * @param geometryThreads Threads running fiducial detection and deskewing
+     * @param extractionThreads Threads running answer extraction
+     * @param queueCapacity Capacity of each queue between stages
+     */
+    public StagedScanPipeline(ScanService scanService, int decodeThreads, int geometryThreads,
+                              int extractionThreads, int queueCapacity) {
+        this.scanService = scanService;
+        this.processor = scanService.getProcessor();
+        if (processor instanceof OMRProcessor real) {
+            this.omrProcessor = real;
+            this.pool = real.getPool();
+        } else {
+            this.omrProcessor = null;
+            this.pool = null;
+        }
+
+        int capacity = Math.max(1, queueCapacity);
+        stages = new StageWorkers[] {
+            new StageWorkers(Stage.DECODE, decodeThreads, capacity),
+            new StageWorkers(Stage.GEOMETRY, geometryThreads, capacity),
+            new StageWorkers(Stage.EXTRACTION, extractionThreads, capacity),
+            new StageWorkers(Stage.PERSISTENCE, 1, capacity)
+        };
+        for (int i = 0; i < stages.length - 1; i++) {
+            stages[i].next = stages[i + 1];
+        }
+        if (pool != null) {
+            // Every geometry and extraction thread holds a processor while it works
+            pool.ensureCapacity(stages[1].threadCount + stages[2].threadCount);
+        }
+    }
+
+    // =========================================
+    // Lifecycle
+    // =========================================
+
+    /**
+     * Start the stage worker threads.
+     *
+     * @param answerKey Answer key for grading (null for auto-detect)
+     * @param saveToDb Whether scans are saved in the persistence stage
+     * @param listener Progress callbacks, invoked on pipeline threads (may be null)
+     */
+    public synchronized void start(AnswerKey answerKey, boolean saveToDb, PipelineListener listener) {
+        if (started) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        this.answerKey = answerKey;
+        this.saveToDb = saveToDb;
+        if (samplingPlan == null) {
+            samplingPlan = SheetLayouts.getInstance().getDefaultPlan();
+        }
+        this.listener = listener != null ? listener : new PipelineListener() {};
+        if (saveToDb && groupSize > 1) {
+            writer = new ScanWriter(scanService, groupSize, groupDelayMillis);
+            writer.start();
+        }
+        started = true;
+
+        for (StageWorkers stage : stages) {
+            liveThreads.addAndGet(stage.threadCount);
+        }
+        for (StageWorkers stage : stages) {
+            stage.startThreads();
+        }
+    }
+
+    /**
+     * Replace {@link ScanService#save} in the persistence stage, e.g. to record
+     * batch progress in the same transaction. Must be set before {@link #start}.
+     */
+    public void setScanSaver(ScanSaver saver) {
+        this.saver = saver;
+    }
+
+    /**
+     * Process every image even if an identical one was saved before.
+     * Must be set before {@link #start}.
+     */
+    public void setForceReprocess(boolean forceReprocess) {
+        this.forceReprocess = forceReprocess;
+    }
+
+    /**
+     * Layout every sheet of this pipeline is read with (null for the default
+     * layout at {@link #start}). Must be set before {@link #start}.
+     */
+    public void setSamplingPlan(SamplingPlan plan) {
+        this.samplingPlan = plan;
+    }
+
+    /**
+     * Commit saved sheets in groups of up to groupSize, waiting at most
+     * maxDelayMillis for a group to fill (see {@link ScanWriter}).
+     * A group size of 1 saves every sheet in its own transaction.
+     * Must be set before {@link #start}.
+     */
+    public void setGroupCommit(int groupSize, long maxDelayMillis) {
+        this.groupSize = Math.max(1, groupSize);
+        this.groupDelayMillis = Math.max(0, maxDelayMillis);
+    }
+
+    /**
+     * Queue a file for processing. Blocks while the decode queue is full.
+     *
+     * @param index Position of the file in the batch, reported back in the Job
+     */
+    public void submit(int index, File file) throws InterruptedException {
+        if (!started) {
+            throw new IllegalStateException("Pipeline not started");
+        }
+        if (stopped) return;
+        stages[0].queue.put(new Job(index, file));
+    }
+
+    /**
+     * Signal that no more files will be submitted. The pipeline drains and
+     * then reports {@link PipelineListener#onFinished(boolean)}.
+     */
+    public void finish() throws InterruptedException {
+        if (stopped) return;
+        stages[0].queue.put(POISON);
+    }
+
+    /**
+     * Stop all stages, interrupting work in flight. Queued sheets are dropped.
+     */
+    public void stop() {
+        stopped = true;
+        setPaused(false);
+        for (StageWorkers stage : stages) {
+            stage.interruptThreads();
+        }
+    }
+
+    public void pause() {
+        setPaused(true);
+    }
+
+    public void resume() {
+        setPaused(false);
+    }
+
+    public boolean isPaused() {
+        pauseLock.lock();
+        try {
+            return paused;
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Group commit statistics, or null when sheets are saved one by one.
+     */
+    public ScanWriter.WriterStats getWriterStats() {
+        ScanWriter current = writer;
+        return current != null ? current.getStats() : null;
+    }
+
+    /**
+     * Number of sheets answered from previously saved scans.
+     */
+    public int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * Wait until every stage thread has exited.
+     *
+     * @return true if the pipeline finished within the timeout
+     */
+    public boolean awaitCompletion(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    // =========================================
+    // Statistics
+    // =========================================
+
+    /**
+     * Snapshot of queue depth and throughput for every stage.
+     */
+    public List<StageStats> getStageStats() {
+        List<StageStats> stats = new ArrayList<>();
+        for (StageWorkers stage : stages) {
+            stats.add(stage.snapshot());
+        }
+        return stats;
+    }
+
+    // =========================================
+    // Stage Handlers
+    // =========================================
+
+    private void handle(Stage stage, Job job) throws Exception {
+        switch (stage) {
+            case DECODE -> decode(job);
+            case GEOMETRY -> geometry(job);
+            case EXTRACTION -> extraction(job);
+            case PERSISTENCE -> persistence(job);
+        }
+    }
+
+    private void decode(Job job) throws IOException {
+        byte[] bytes = null;   // The file read once for both the hash and the decoder
+        if (saveToDb && job.file.isFile()) {
+            bytes = Files.readAllBytes(job.file.toPath());
+            job.contentHash = scanService.computeContentHash(bytes, samplingPlan);
+            ScanService.CachedScan hit = forceReprocess ? null : findCached(job.contentHash);
+            if (hit != null) {
+                job.cachedScanId = hit.scanId;
+                return;
+            }
+        }
+        if (pool == null) return;  // Mock processor decodes on its own
+
+        if (!job.file.exists()) {
+            job.fail("File does not exist: " + job.file.getName());
+            return;
+        }
+        if (!processor.isValidImageFile(job.file)) {
+            job.fail("Unsupported file format: " + job.file.getName());
+            return;
+        }
+
+        job.context = bytes != null
+            ? OMRSheetProcessor.decode(ByteBuffer.wrap(bytes), job.file.getName())
+            : OMRSheetProcessor.decode(job.file);
+        job.context.setSamplingPlan(samplingPlan);
+        if (job.context.isFailed()) {
+            job.fail(job.context.result.errorMessage);
+        }
+    }
+
+    private void geometry(Job job) throws InterruptedException {
+        if (pool == null || job.isCached()) return;
+
+        OMRSheetProcessor sheetProcessor = pool.acquire();
+        try {
+            sheetProcessor.runGeometryStage(job.context);
+        } finally {
+            pool.release(sheetProcessor);
+        }
+        if (job.context.isFailed()) {
+            job.fail(job.context.result.errorMessage);
+        }
+    }
+
+    private void extraction(Job job) throws InterruptedException {
+        if (job.isCached()) return;
+        if (pool == null) {
+            job.omrResult = processor.processImage(job.file);
+            return;
+        }
+
+        OMRSheetProcessor sheetProcessor = pool.acquire();
+        try {
+            sheetProcessor.runExtractionStage(job.context);
+        } finally {
+            pool.release(sheetProcessor);
+        }
+        job.omrResult = omrProcessor.toOMRResult(job.context.result, job.file.getName(),
+            job.context.startTime);
+        job.context = null;
+    }
+
+    private void persistence(Job job) throws Exception {
+        if (writer == null) {
+            job.scan = persist(job);
+            if (job.isCached()) cacheHits.incrementAndGet();
+            return;
+        }
+
+        // Completed by the writer thread once the sheet's group is committed
+        job.deferred = true;
+        CompletableFuture<Scan> saved;
+        try {
+            saved = writer.submit(() -> persist(job));
+        } catch (RuntimeException e) {
+            job.deferred = false;
+            throw e;
+        }
+        saved.whenComplete((scan, error) -> {
+            if (error != null) {
+                job.fail(error.getMessage());
+            } else {
+                job.scan = scan;
+                if (job.isCached()) cacheHits.incrementAndGet();
+            }
+            if (!stopped) listener.onCompleted(job);
+        });
+    }
+
+    /**
+     * Grade and save a sheet, or load the scan it was answered from.
+     */
+    private Scan persist(Job job) throws Exception {
+        if (job.isCached()) {
+            long scanId = job.cachedScanId;
+            Scan cached = scanService.findById(scanId)
+                .orElseThrow(() -> new SQLException("Cached scan " + scanId + " no longer exists, reprocess the file"));
+            return saver != null ? saver.save(job, cached) : cached;
+        }
+
+        Scan scan = scanService.grade(job.file, job.omrResult, answerKey);
+        scan.setContentHash(job.contentHash);
+        if (saveToDb) {
+            scan = saver != null ? saver.save(job, scan) : scanService.save(scan);
+        }
+        return scan;
+    }
+
+    // =========================================
+    // Private Helper Methods
+    // =========================================
+
+    /**
+     * Report a sheet that did not go through the scan writer (e.g. it failed to decode).
+     * With group commit the callback still runs on the writer thread, after the
+     * open group is committed, so its own writes neither wait on nor join that group.
+     */
+    private void complete(Job job) throws InterruptedException {
+        if (writer == null) {
+            listener.onCompleted(job);
+            return;
+        }
+        writer.submit(() -> null).whenComplete((scan, error) -> {
+            if (!stopped) listener.onCompleted(job);
+        });
+    }
+
+    /**
+     * A saved scan of an identical image graded with this pipeline's key, or null.
+     * Lookup errors only cost the reuse, so the sheet is processed normally.
+     */
+    private ScanService.CachedScan findCached(String contentHash) {
+        try {
+            return scanService.findCachedScan(contentHash)
+                .filter(hit -> hit.matches(answerKey))
+                .orElse(null);
+        } catch (SQLException e) {
+            System.err.println("⚠ Result cache unavailable: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void setPaused(boolean value) {
+        pauseLock.lock();
+        try {
+            paused = value;
+            if (!value) {
+                resumed.signalAll();
+            }
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+    private void awaitResumed() throws InterruptedException {
+        pauseLock.lock();
+        try {
+            while (paused && !stopped) {
+                resumed.await();
+            }
+        } finally {
+            pauseLock.unlock();
+        }
+    }
+
+    private void onThreadExit() {
+        if (liveThreads.decrementAndGet() == 0) {
+            // Sheets still waiting for their group commit complete first
+            if (writer != null) {
+                boolean interrupted = Thread.interrupted();  // Set after a stop
+                writer.close();
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+            // Release anything left behind by a stop
+            for (StageWorkers stage : stages) {
+                Job job;
+                while ((job = stage.queue.poll()) != null) {
+                    if (job != POISON) job.release();
+                }
+            }
+            listener.onFinished(stopped);
+            finished.countDown();
+        }
+    }
+
+    /**
+     * Worker threads and input queue for one stage.
+     */
+    private class StageWorkers {
+        final Stage stage;
+        final int threadCount;
+        final BlockingQueue<Job> queue;
+        StageWorkers next;
+
+        final List<Thread> threads = new ArrayList<>();
+        final AtomicInteger activeWorkers;
+        final AtomicLong processed = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong busyNanos = new AtomicLong();
+        volatile long firstStartNanos = 0;
+        volatile long lastEndNanos = 0;
+
+        StageWorkers(Stage stage, int threadCount, int queueCapacity) {
+            this.stage = stage;
+            this.threadCount = Math.max(1, threadCount);
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.activeWorkers = new AtomicInteger(this.threadCount);
+        }
+
+        void startThreads() {
+            for (int i = 0; i < threadCount; i++) {
+                Thread thread = new Thread(this::runWorker,
+                    "omr-" + stage.name().toLowerCase() + "-" + (i + 1));
+                thread.setDaemon(true);
+                threads.add(thread);
+                thread.start();
+            }
+        }
+
+        void interruptThreads() {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+
+        void runWorker() {
+            try {
+                while (!stopped) {
+                    Job job = queue.take();
+                    if (job == POISON) {
+                        if (activeWorkers.decrementAndGet() == 0) {
+                            // Last worker of this stage passes the end marker on
+                            if (next != null) next.queue.put(POISON);
+                        } else {
+                            queue.put(POISON);
+                        }
+                        return;
+                    }
+
+                    if (stage == Stage.DECODE) {
+                        awaitResumed();
+                        if (stopped) {
+                            job.release();
+                            return;
+                        }
+                        listener.onStarted(job);
+                    }
+
+                    long start = System.nanoTime();
+                    if (firstStartNanos == 0) firstStartNanos = start;
+
+                    if (!job.failed) {
+                        try {
+                            handle(stage, job);
+                        } catch (InterruptedException e) {
+                            job.release();
+                            throw e;
+                        } catch (Exception e) {
+                            job.fail(e.getMessage());
+                        }
+                        if (job.failed) failed.incrementAndGet();
+                    }
+
+                    long end = System.nanoTime();
+                    busyNanos.addAndGet(end - start);
+                    lastEndNanos = end;
+                    processed.incrementAndGet();
+
+                    if (next != null) {
+                        next.queue.put(job);
+                    } else if (!stopped && !job.deferred) {
+                        complete(job);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                onThreadExit();
+            }
+        }
+
+        StageStats snapshot() {
+            StageStats stats = new StageStats();
+            stats.stage = stage;
+            stats.threads = threadCount;
+            stats.queueDepth = queue.size();
+            stats.queueCapacity = queue.size() + queue.remainingCapacity();
+            stats.processed = processed.get();
+            stats.failed = failed.get();
+            stats.busyMillis = TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+            long first = firstStartNanos;
+            long last = lastEndNanos;
+            stats.elapsedMillis = first == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(last - first);
+            return stats;
+        }
+    }
+
+    // =========================================
+    // Inner Classes
+    // =========================================
+
+    /**
+     * Saves a graded scan in the persistence stage.
+     */
+    public interface ScanSaver {
+        Scan save(Job job, Scan scan) throws Exception;
+    }
+
+    /**
+     * Callbacks from the pipeline. Invoked on pipeline threads.
+     */
+    public interface PipelineListener {
+        /** A sheet has left the pause gate and entered the decode stage. */
+        default void onStarted(Job job) {}
+
+        /** A sheet has passed every stage (or failed in one of them). */
+        default void onCompleted(Job job) {}
+
+        /** All stage threads have exited. */
+        default void onFinished(boolean stopped) {}
+    }
+
+    /**
+     * One sheet moving through the pipeline.
+     */
+    public static class Job {
+        public final int index;
+        public final File file;
+
+        volatile OMRSheetProcessor.SheetContext context;
+        volatile OMRResult omrResult;
+        volatile Scan scan;
+        volatile String error;
+        volatile boolean failed = false;
+        volatile String contentHash;
+        volatile Long cachedScanId;     // set when a saved scan is reused
+        volatile boolean deferred = false;  // completion reported by the scan writer
+
+        Job(int index, File file) {
+            this.index = index;
+            this.file = file;
+        }
+
+        public Scan getScan() { return scan; }
+        public String getError() { return error; }
+        public boolean isFailed() { return failed; }
+        public boolean isCached() { return cachedScanId != null; }
+
+        void fail(String message) {
+            failed = true;
+            error = message;
+            release();
+        }
+
+        void release() {
+            OMRSheetProcessor.SheetContext ctx = context;
+            if (ctx != null) {
+                ctx.release();
+                context = null;
+            }
+        }
+    }
+
+    /**
+     * Point-in-time statistics for one stage.
+     */
+    public static class StageStats {
+        public Stage stage;
+        public int threads;
+        public int queueDepth;
+        public int queueCapacity;
+        public long processed;
+        public long failed;
+        public long busyMillis;
+        public long elapsedMillis;
+
+        /**
+         * Sheets per second completed by this stage since its first sheet.
+         */
+        public double getThroughputPerSecond() {
+            return elapsedMillis > 0 ? processed * 1000.0 / elapsedMillis : 0;
+        }
+
+        /**
+         * Fraction of the stage's thread time spent working (0..1).
+         */
+        public double getUtilization() {
+            return elapsedMillis > 0 ? Math.min(1.0, (double) busyMillis / (elapsedMillis * threads)) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-11s %2d threads, queue %d/%d, %d done (%d failed), %.1f/s, %.0f%% busy",
+                stage, threads, queueDepth, queueCapacity, processed, failed,
+                getThroughputPerSecond(), getUtilization() * 100);
+        }
+    }
+}
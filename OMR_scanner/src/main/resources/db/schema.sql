@@ -79,35 +79,51 @@ CREATE TABLE IF NOT EXISTS scans (
     status TEXT NOT NULL DEFAULT 'pending' CHECK(status IN ('pending', 'success', 'review', 'failed')),
     processing_time_ms INTEGER,
     error_message TEXT,
+    content_hash TEXT,  -- SHA-256 of image bytes + pipeline version (result cache)
+    answers_packed BLOB,  -- per-question answers, see PackedAnswers (3 bytes per question)
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (answer_key_id) REFERENCES answer_keys(id)
 );
 
--- Indexes for scan lookups
+-- Indexes for scan lookups (idx_scans_content_hash is created by DatabaseService.migrateSchema)
 CREATE INDEX IF NOT EXISTS idx_scans_student_id ON scans(student_id);
 CREATE INDEX IF NOT EXISTS idx_scans_test_id ON scans(test_id);
 CREATE INDEX IF NOT EXISTS idx_scans_status ON scans(status);
 CREATE INDEX IF NOT EXISTS idx_scans_created_at ON scans(created_at);
 
 -- ============================================
--- SCAN ANSWERS (Individual question results)
+-- SCAN STAGE TIMINGS (Wall time per processing step)
 -- ============================================
 
-CREATE TABLE IF NOT EXISTS scan_answers (
-    id INTEGER PRIMARY KEY AUTOINCREMENT,
+CREATE TABLE IF NOT EXISTS scan_stage_timings (
     scan_id INTEGER NOT NULL,
-    question_number INTEGER NOT NULL,
-    detected_answer TEXT CHECK(detected_answer IN ('A', 'B', 'C', 'D') OR detected_answer IS NULL),
-    correct_answer TEXT CHECK(correct_answer IN ('A', 'B', 'C', 'D') OR correct_answer IS NULL),
-    status TEXT NOT NULL DEFAULT 'valid' CHECK(status IN ('valid', 'empty', 'multiple', 'uncertain', 'error')),
-    confidence REAL DEFAULT 1.0,
-    is_correct INTEGER DEFAULT 0,
-    FOREIGN KEY (scan_id) REFERENCES scans(id) ON DELETE CASCADE,
-    UNIQUE(scan_id, question_number)
+    stage TEXT NOT NULL,
+    duration_ms REAL NOT NULL,
+    PRIMARY KEY (scan_id, stage),
+    FOREIGN KEY (scan_id) REFERENCES scans(id) ON DELETE CASCADE
+);
+
+-- Index for per-stage percentile queries
+CREATE INDEX IF NOT EXISTS idx_scan_stage_timings_stage ON scan_stage_timings(stage, duration_ms);
+
+-- ============================================
+-- SCORE AGGREGATES (Maintained by triggers on scans)
+-- ============================================
+
+-- Count and score sum of non-failed scans; test_id '' holds all scans
+CREATE TABLE IF NOT EXISTS score_stats (
+    test_id TEXT PRIMARY KEY,
+    scan_count INTEGER NOT NULL DEFAULT 0,
+    score_sum REAL NOT NULL DEFAULT 0.0
 );
 
--- Index for faster lookups
-CREATE INDEX IF NOT EXISTS idx_scan_answers_scan_id ON scan_answers(scan_id);
+-- Number of scans per distinct score, for exact min/max after deletes and histograms
+CREATE TABLE IF NOT EXISTS score_values (
+    test_id TEXT NOT NULL,
+    score_percentage REAL NOT NULL,
+    scan_count INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (test_id, score_percentage)
+) WITHOUT ROWID;
 
 -- ============================================
 -- BATCH PROCESSING
@@ -139,6 +155,21 @@ CREATE TABLE IF NOT EXISTS batch_scans (
     FOREIGN KEY (scan_id) REFERENCES scans(id) ON DELETE CASCADE
 );
 
+-- Batch membership and per-file progress (lets an interrupted batch resume)
+CREATE TABLE IF NOT EXISTS batch_files (
+    batch_id INTEGER NOT NULL,
+    file_index INTEGER NOT NULL,
+    file_path TEXT NOT NULL,
+    status TEXT NOT NULL DEFAULT 'pending' CHECK(status IN ('pending', 'success', 'review', 'failed')),
+    scan_id INTEGER,
+    error_message TEXT,
+    PRIMARY KEY (batch_id, file_index),
+    FOREIGN KEY (batch_id) REFERENCES batches(id) ON DELETE CASCADE,
+    FOREIGN KEY (scan_id) REFERENCES scans(id) ON DELETE SET NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_batches_status ON batches(status);
+
 -- ============================================
 -- SETTINGS (Application configuration)
 -- ============================================
@@ -174,3 +205,65 @@ BEGIN
     UPDATE settings SET updated_at = CURRENT_TIMESTAMP WHERE key = NEW.key;
 END;
 
+-- Score aggregates: add a scan to the all-scans row ('') and its test's row
+CREATE TRIGGER IF NOT EXISTS score_stats_insert
+AFTER INSERT ON scans
+WHEN NEW.status != 'failed'
+BEGIN
+    INSERT INTO score_stats (test_id, scan_count, score_sum)
+    SELECT scope, 1, NEW.score_percentage
+    FROM (SELECT '' AS scope UNION ALL SELECT NEW.test_id WHERE NEW.test_id != '')
+    WHERE true
+    ON CONFLICT(test_id) DO UPDATE SET scan_count = scan_count + 1, score_sum = score_sum + excluded.score_sum;
+    INSERT INTO score_values (test_id, score_percentage, scan_count)
+    SELECT scope, NEW.score_percentage, 1
+    FROM (SELECT '' AS scope UNION ALL SELECT NEW.test_id WHERE NEW.test_id != '')
+    WHERE true
+    ON CONFLICT(test_id, score_percentage) DO UPDATE SET scan_count = scan_count + 1;
+END;
+
+-- Score aggregates: remove a scan, dropping rows that reach zero
+CREATE TRIGGER IF NOT EXISTS score_stats_delete
+AFTER DELETE ON scans
+WHEN OLD.status != 'failed'
+BEGIN
+    UPDATE score_stats SET scan_count = scan_count - 1, score_sum = score_sum - OLD.score_percentage
+    WHERE test_id = '' OR test_id = OLD.test_id;
+    DELETE FROM score_stats WHERE (test_id = '' OR test_id = OLD.test_id) AND scan_count <= 0;
+    UPDATE score_values SET scan_count = scan_count - 1
+    WHERE (test_id = '' OR test_id = OLD.test_id) AND score_percentage = OLD.score_percentage;
+    DELETE FROM score_values
+    WHERE (test_id = '' OR test_id = OLD.test_id) AND score_percentage = OLD.score_percentage AND scan_count <= 0;
+END;
+
+-- Score aggregates on regrade: remove the old values...
+CREATE TRIGGER IF NOT EXISTS score_stats_update_remove
+AFTER UPDATE OF score_percentage, status, test_id ON scans
+WHEN OLD.status != 'failed'
+BEGIN
+    UPDATE score_stats SET scan_count = scan_count - 1, score_sum = score_sum - OLD.score_percentage
+    WHERE test_id = '' OR test_id = OLD.test_id;
+    DELETE FROM score_stats WHERE (test_id = '' OR test_id = OLD.test_id) AND scan_count <= 0;
+    UPDATE score_values SET scan_count = scan_count - 1
+    WHERE (test_id = '' OR test_id = OLD.test_id) AND score_percentage = OLD.score_percentage;
+    DELETE FROM score_values
+    WHERE (test_id = '' OR test_id = OLD.test_id) AND score_percentage = OLD.score_percentage AND scan_count <= 0;
+END;
+
+-- ...and add the new ones
+CREATE TRIGGER IF NOT EXISTS score_stats_update_add
+AFTER UPDATE OF score_percentage, status, test_id ON scans
+WHEN NEW.status != 'failed'
+BEGIN
+    INSERT INTO score_stats (test_id, scan_count, score_sum)
+    SELECT scope, 1, NEW.score_percentage
+    FROM (SELECT '' AS scope UNION ALL SELECT NEW.test_id WHERE NEW.test_id != '')
+    WHERE true
+    ON CONFLICT(test_id) DO UPDATE SET scan_count = scan_count + 1, score_sum = score_sum + excluded.score_sum;
+    INSERT INTO score_values (test_id, score_percentage, scan_count)
+    SELECT scope, NEW.score_percentage, 1
+    FROM (SELECT '' AS scope UNION ALL SELECT NEW.test_id WHERE NEW.test_id != '')
+    WHERE true
+    ON CONFLICT(test_id, score_percentage) DO UPDATE SET scan_count = scan_count + 1;
+END;
+